@@ -0,0 +1,60 @@
+package com.inflearn.stock.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * 요청할 상품을 고른다. uniform은 모든 상품을 같은 확률로, zipf는 소수의 상품에 요청이 몰리도록 고른다.
+ * 누적 분포를 미리 계산해두므로 요청마다 객체를 만들지 않는다.
+ */
+public class KeyDistribution {
+
+	private final double[] cumulative;
+
+	private KeyDistribution(double[] weights) {
+		this.cumulative = new double[weights.length];
+		double total = 0;
+		
+		for(double weight : weights) {
+			total += weight;
+		}
+		
+		double sum = 0;
+		
+		for(int i=0; i<weights.length; i++) {
+			sum += weights[i];
+			cumulative[i] = sum / total;
+		}
+	}
+	
+	public static KeyDistribution of(String name, int size) {
+		double[] weights = new double[size];
+		
+		for(int i=0; i<size; i++) {
+			weights[i] = switch(name) {
+				case "uniform" -> 1.0;
+				case "zipf" -> 1.0 / Math.pow(i + 1, 0.99); // 순위가 i인 상품은 1 / i^s 의 비율로 요청된다.
+				default -> throw new IllegalArgumentException("지원하지 않는 분포입니다. name=" + name);
+			};
+		}
+		
+		return new KeyDistribution(weights);
+	}
+	
+	public int next(SplittableRandom random) {
+		double value = random.nextDouble();
+		int low = 0;
+		int high = cumulative.length - 1;
+		
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			
+			if(cumulative[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		return low;
+	}
+}
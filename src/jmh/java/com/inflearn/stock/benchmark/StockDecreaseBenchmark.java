@@ -0,0 +1,115 @@
+package com.inflearn.stock.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.inflearn.stock.InflearnStockApplication;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+import com.inflearn.stock.strategy.StockDecreaseStrategyRegistry;
+
+import redis.embedded.RedisServer;
+
+/**
+ * 재고 감소 방식별 처리량과 지연 시간을 비교한다.
+ * DB는 H2 in-memory, Redis는 embedded-redis로 띄운 로컬 서버를 사용한다.
+ * 스레드 수는 -PjmhThreads로 지정한다. (JMH의 스레드 수는 @Param으로 바꿀 수 없다)
+ * named-lock은 H2에 get_lock이 없으므로 제외한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StockDecreaseBenchmark {
+
+	private static final long INITIAL_QUANTITY = Long.MAX_VALUE / 4; // 측정 도중 재고가 바닥나지 않도록 충분히 넣어둔다.
+	
+	@Param({"plain", "pessimistic", "optimistic", "atomic-update", "coalescing", "lettuce-lock", "redisson-lock", "redis-inventory", "reactive", "adaptive", "hot-key"})
+	private String strategy;
+	
+	@Param({"1", "100"})
+	private int products;
+	
+	@Param({"uniform", "zipf"})
+	private String distribution;
+	
+	@Param({"1", "5"})
+	private long quantity;
+	
+	private RedisServer redisServer;
+	
+	private ConfigurableApplicationContext context;
+	
+	private StockDecreaseStrategy target;
+	
+	private long[] stockIds;
+	
+	private KeyDistribution keyDistribution;
+	
+	@State(Scope.Thread)
+	public static class ThreadState {
+		
+		private final SplittableRandom random = new SplittableRandom();
+	}
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		int redisPort = findFreePort();
+		redisServer = new RedisServer(redisPort);
+		redisServer.start();
+		
+		context = new SpringApplicationBuilder(InflearnStockApplication.class)
+				.web(WebApplicationType.NONE)
+				.properties(
+						"spring.data.redis.port=" + redisPort,
+						"spring.datasource.hikari.jdbc-url=jdbc:h2:mem:benchmark",
+						"stock.redis-inventory.enabled=true",
+						"spring.jpa.properties.hibernate.show-sql=false",
+						"logging.level.org.hibernate.SQL=WARN",
+						"logging.level.org.hibernate.type.descriptor.sql=WARN")
+				.run();
+		
+		StockRepository stockRepository = context.getBean(StockRepository.class);
+		stockIds = new long[products];
+		
+		for(int i=0; i<products; i++) {
+			stockIds[i] = stockRepository.saveAndFlush(new Stock((long) i, INITIAL_QUANTITY)).getId();
+		}
+		
+		target = context.getBean(StockDecreaseStrategyRegistry.class).get(strategy);
+		keyDistribution = KeyDistribution.of(distribution, products);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		context.close();
+		redisServer.stop();
+	}
+	
+	@Benchmark
+	public void decrease(ThreadState threadState) throws InterruptedException {
+		target.decrease(stockIds[keyDistribution.next(threadState.random)], quantity);
+	}
+	
+	private static int findFreePort() throws IOException {
+		try(ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
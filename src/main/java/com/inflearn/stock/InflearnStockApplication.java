@@ -2,8 +2,11 @@ package com.inflearn.stock;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
-@SpringBootApplication
+@EnableScheduling
+@SpringBootApplication(exclude = R2dbcTransactionManagerAutoConfiguration.class) // R2DBC의 TransactionManager는 R2dbcConfig에서 직접 만든다.
 public class InflearnStockApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,52 @@
+package com.inflearn.stock.bulk;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * [key(long), quantity(long)]가 반복되는 binary 파일을 읽는다. StockEngine의 snapshot과 같은 big-endian 형식이다.
+ */
+final class BinaryStockRecordReader implements StockRecordReader {
+
+	private final DataInputStream input;
+	
+	private long recordNo;
+	
+	BinaryStockRecordReader(Path file) throws IOException {
+		this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+	}
+	
+	@Override
+	public int read(long[] keys, long[] quantities) throws IOException {
+		int size = 0;
+		
+		while(size < keys.length) {
+			try {
+				keys[size] = input.readLong();
+			} catch(EOFException e) {
+				break;
+			}
+			
+			// key를 읽은 뒤에 파일이 끝났다면 잘린 파일이므로 EOFException을 그대로 던진다.
+			quantities[size] = input.readLong();
+			recordNo++;
+			
+			if(quantities[size] < 0) {
+				throw new IllegalArgumentException("수량은 0 이상이어야 합니다. record=" + recordNo);
+			}
+			
+			size++;
+		}
+		
+		return size;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+}
@@ -0,0 +1,58 @@
+package com.inflearn.stock.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * "key,quantity" 형식의 CSV를 읽는다. 첫 행이 숫자로 시작하지 않으면 header로 보고 건너뛴다.
+ * 행마다 substring을 만들지 않도록 쉼표 위치를 기준으로 바로 숫자를 읽는다.
+ */
+final class CsvStockRecordReader implements StockRecordReader {
+
+	private final BufferedReader reader;
+	
+	private long lineNo;
+	
+	CsvStockRecordReader(Path file) throws IOException {
+		this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	public int read(long[] keys, long[] quantities) throws IOException {
+		int size = 0;
+		String line;
+		
+		while(size < keys.length && (line = reader.readLine()) != null) {
+			lineNo++;
+			
+			if(line.isBlank() || (lineNo == 1 && !Character.isDigit(line.charAt(0)))) {
+				continue;
+			}
+			
+			int comma = line.indexOf(',');
+			
+			try {
+				keys[size] = Long.parseLong(line, 0, comma, 10);
+				quantities[size] = Long.parseLong(line, comma + 1, line.length(), 10);
+			} catch(NumberFormatException | IndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("잘못된 행입니다. line=" + lineNo + ", value=" + line, e);
+			}
+			
+			if(quantities[size] < 0) {
+				throw new IllegalArgumentException("수량은 0 이상이어야 합니다. line=" + lineNo);
+			}
+			
+			size++;
+		}
+		
+		return size;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
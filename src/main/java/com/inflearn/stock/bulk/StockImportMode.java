@@ -0,0 +1,38 @@
+package com.inflearn.stock.bulk;
+
+/**
+ * 파일의 각 행이 [key, quantity]일 때 key가 무엇을 가리키고 quantity를 어떻게 반영할지 정한다.
+ */
+public enum StockImportMode {
+
+	/**
+	 * key는 productId이다. 상품의 수량을 덮어쓰고 없는 상품은 새 Stock으로 추가한다. 상품마다 Stock이 하나라고 가정한다.
+	 * 같은 상품은 항상 같은 part에서 순서대로 반영되므로 파일에 여러 번 나와도 Stock은 하나만 만들어지고 마지막 수량이 남는다.
+	 * 같은 상품 목록을 서로 다른 job으로 동시에 적재하면 Stock이 두 개 만들어질 수 있다.
+	 */
+	CATALOG {
+		@Override
+		long merge(long previous, long next) {
+			return next;
+		}
+	},
+	
+	/**
+	 * key는 stockId이다. 수량을 더하고 없는 Stock은 건너뛴다.
+	 */
+	RESTOCK {
+		@Override
+		long merge(long previous, long next) {
+			return previous + next;
+		}
+	};
+	
+	/**
+	 * 같은 chunk에 같은 key가 여러 번 나오면 하나로 합친다.
+	 */
+	abstract long merge(long previous, long next);
+	
+	public static StockImportMode of(String name) {
+		return valueOf(name.trim().toUpperCase().replace('-', '_'));
+	}
+}
@@ -0,0 +1,10 @@
+package com.inflearn.stock.bulk;
+
+/**
+ * @param records 파일에서 읽은 행 수
+ * @param chunks 파일을 나눈 chunk 수
+ * @param skippedChunks 이전 실행에서 이미 반영되어 건너뛴 chunk 수
+ * @param changedStocks 수량을 변경하거나 새로 추가한 Stock 수
+ */
+public record StockImportResult(String job, long records, long chunks, long skippedChunks, long changedStocks, long elapsedMillis) {
+}
@@ -0,0 +1,41 @@
+package com.inflearn.stock.bulk;
+
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * stock.import.file이 설정되어 있으면 서버가 시작될 때 파일을 적재한다.
+ * 적재 중에 종료되었다면 같은 설정으로 다시 시작하면 남은 chunk부터 이어서 적재한다.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.import.file")
+public class StockImportRunner implements ApplicationRunner {
+
+	private final StockImporter stockImporter;
+	
+	private final Path file;
+	
+	private final StockImportMode mode;
+	
+	private final String job;
+	
+	public StockImportRunner(StockImporter stockImporter,
+			@Value("${stock.import.file}") String file,
+			@Value("${stock.import.mode:catalog}") String mode,
+			@Value("${stock.import.job:}") String job) {
+		this.stockImporter = stockImporter;
+		this.file = Path.of(file);
+		this.mode = StockImportMode.of(mode);
+		this.job = job.isEmpty() ? this.mode + ":" + this.file.getFileName() : job;
+	}
+	
+	@Override
+	public void run(ApplicationArguments args) throws Exception {
+		stockImporter.importFile(job, file, mode);
+	}
+}
@@ -0,0 +1,250 @@
+package com.inflearn.stock.bulk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.inflearn.stock.domain.StockAdjustedEvent;
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.domain.StockRestockedEvent;
+import com.inflearn.stock.ledger.StockLedger;
+import com.inflearn.stock.repository.StockBulkRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 파일을 한 스레드가 순서대로 읽고, 행을 key에 따라 parallelism개의 part로 나눈다. part마다 chunk-size 행이 모이면 하나의 트랜잭션에서 JDBC batch로 반영한다.
+ * part마다 하나의 스레드가 chunk를 순서대로 반영하므로 같은 key는 동시에 반영되지 않고, 파일에 여러 번 나오면 나온 순서대로 반영된다.
+ * 반영을 마친 chunk 번호는 같은 트랜잭션에서 기록하므로, 중간에 실패한 적재를 같은 job 이름으로 다시 실행하면 남은 chunk만 반영한다.
+ * 
+ * commit된 chunk마다 StockChangedEvent와 StockRestockedEvent를 발행해서 재고 조회 캐시와 품절 표시를 지운다.
+ * 바뀐 수량은 commit된 뒤 StockLedger에 import-catalog, import-restock으로 기록한다. 늘어난 수량은 음수로 기록한다.
+ * 바뀐 수량은 StockAdjustedEvent로도 발행하므로 이미 적재된 permit, Redis, StockEngine의 재고에도 같은 만큼 반영된다.
+ */
+@Slf4j
+@Component
+public class StockImporter {
+
+	private final StockBulkRepository stockBulkRepository;
+	
+	private final TransactionTemplate transactionTemplate;
+	
+	private final ApplicationEventPublisher eventPublisher;
+	
+	private final StockLedger stockLedger;
+	
+	private final int chunkSize;
+	
+	private final int parallelism;
+	
+	public StockImporter(StockBulkRepository stockBulkRepository, TransactionTemplate transactionTemplate, ApplicationEventPublisher eventPublisher,
+			StockLedger stockLedger,
+			@Value("${stock.import.chunk-size:5000}") int chunkSize,
+			@Value("${stock.import.parallelism:4}") int parallelism) {
+		this.stockBulkRepository = stockBulkRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.eventPublisher = eventPublisher;
+		this.stockLedger = stockLedger;
+		this.chunkSize = chunkSize;
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * job은 다시 실행할 때 이미 반영한 chunk를 찾는 이름이다. 같은 파일을 같은 chunk-size와 parallelism으로 다시 적재할 때만 같은 이름을 사용해야 한다.
+	 * 모든 chunk가 반영되면 job의 기록을 지우므로 이후에는 같은 이름을 다시 사용할 수 있다.
+	 */
+	public StockImportResult importFile(String job, Path file, StockImportMode mode) throws IOException, InterruptedException {
+		long startedAt = System.nanoTime();
+		List<Set<Long>> completedChunks = stockBulkRepository.findCompletedChunks(job, chunkSize, parallelism);
+		
+		// 읽어둔 chunk가 쌓이지 않도록 반영을 기다리는 chunk 수를 제한한다. part마다 하나씩은 미리 읽어둘 수 있다.
+		Semaphore inFlight = new Semaphore(parallelism * 2);
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		LongAdder changedStocks = new LongAdder();
+		Part[] parts = new Part[parallelism];
+		long records = 0;
+		long chunks = 0;
+		long skippedChunks = 0;
+		
+		for(int i=0; i<parallelism; i++) {
+			parts[i] = new Part(i, Executors.newSingleThreadExecutor(Thread.ofVirtual().name("stock-import-" + i).factory()));
+		}
+		
+		try(StockRecordReader reader = StockRecordReader.open(file)) {
+			long[] keys = new long[chunkSize];
+			long[] quantities = new long[chunkSize];
+			int size;
+			boolean eof = false;
+			
+			while(failure.get() == null && !eof) {
+				size = reader.read(keys, quantities);
+				eof = size == 0;
+				records += size;
+				
+				for(int i=0; i<size; i++) {
+					parts[partOf(keys[i], parallelism)].add(keys[i], quantities[i]);
+				}
+				
+				for(Part part : parts) {
+					if(part.size < chunkSize && !(eof && part.size > 0)) {
+						continue;
+					}
+					
+					long chunkNo = part.nextChunkNo++;
+					long[] chunkKeys = part.keys;
+					long[] chunkQuantities = part.quantities;
+					int chunkRecords = part.size;
+					part.reset();
+					chunks++;
+					
+					if(completedChunks.get(part.index).contains(chunkNo)) {
+						skippedChunks++;
+						continue;
+					}
+					
+					inFlight.acquire();
+					part.executor.execute(() -> {
+						try {
+							// 앞의 chunk가 실패했다면 뒤의 chunk는 반영하지 않는다. 다시 실행할 때 나온 순서대로 반영해야 마지막 수량이 남는다.
+							if(failure.get() == null) {
+								changedStocks.add(applyChunk(job, part.index, chunkNo, mode, chunkKeys, chunkQuantities, chunkRecords));
+							}
+						} catch(RuntimeException e) {
+							failure.compareAndSet(null, e);
+						} finally {
+							inFlight.release();
+						}
+					});
+				}
+			}
+		} finally {
+			for(Part part : parts) {
+				part.executor.close(); // 제출한 chunk가 모두 끝날 때까지 기다린다.
+			}
+		}
+		
+		if(failure.get() != null) {
+			throw failure.get();
+		}
+		
+		stockBulkRepository.deleteCompletedChunks(job);
+		
+		StockImportResult result = new StockImportResult(job, records, chunks, skippedChunks, changedStocks.sum(), (System.nanoTime() - startedAt) / 1_000_000);
+		log.info("재고 적재 완료 : {}", result);
+		return result;
+	}
+	
+	/**
+	 * key가 반영될 part 번호이다. 연속된 key도 여러 part에 고르게 나뉘도록 섞는다.
+	 */
+	static int partOf(long key, int parts) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) Math.floorMod(hash ^ (hash >>> 32), (long) parts);
+	}
+	
+	private int applyChunk(String job, int part, long chunkNo, StockImportMode mode, long[] keys, long[] quantities, int size) {
+		// 같은 key를 하나로 합치고 key 순서대로 반영한다.
+		TreeMap<Long, Long> merged = new TreeMap<>();
+		
+		for(int i=0; i<size; i++) {
+			merged.merge(keys[i], quantities[i], mode::merge);
+		}
+		
+		long[] sortedKeys = new long[merged.size()];
+		long[] sortedQuantities = new long[merged.size()];
+		int i = 0;
+		
+		for(Map.Entry<Long, Long> entry : merged.entrySet()) {
+			sortedKeys[i] = entry.getKey();
+			sortedQuantities[i] = entry.getValue();
+			i++;
+		}
+		
+		return transactionTemplate.execute(status -> {
+			// Stock id별로 줄어든 수량이다. 늘어났다면 음수이다.
+			Map<Long, Long> decreased = mode == StockImportMode.CATALOG
+					? stockBulkRepository.upsertByProductId(sortedKeys, sortedQuantities, sortedKeys.length)
+					: restocked(stockBulkRepository.increaseQuantities(sortedKeys, sortedQuantities, sortedKeys.length), merged);
+			List<Long> stockIds = new ArrayList<>(decreased.keySet());
+			
+			stockBulkRepository.completeChunk(job, part, chunkNo, size, chunkSize, parallelism);
+			
+			if(!stockIds.isEmpty()) {
+				eventPublisher.publishEvent(new StockChangedEvent(stockIds));
+				eventPublisher.publishEvent(new StockRestockedEvent(stockIds));
+			}
+			
+			decreased.values().removeIf(quantity -> quantity == 0); // 수량이 그대로인 상품은 기록하지 않는다.
+			stockLedger.recordAllAfterCommit("import-" + mode.name().toLowerCase(), decreased);
+			
+			if(!decreased.isEmpty()) {
+				Map<Long, Long> increases = new HashMap<>(decreased.size() * 2);
+				decreased.forEach((id, quantity) -> increases.put(id, -quantity));
+				eventPublisher.publishEvent(new StockAdjustedEvent(increases));
+			}
+			
+			return stockIds.size();
+		});
+	}
+	
+	private Map<Long, Long> restocked(List<Long> increasedIds, Map<Long, Long> quantities) {
+		Map<Long, Long> decreased = new HashMap<>(increasedIds.size() * 2);
+		
+		for(Long id : increasedIds) {
+			decreased.put(id, -quantities.get(id));
+		}
+		
+		return decreased;
+	}
+	
+	/**
+	 * part 하나가 모으고 있는 행과 다음 chunk 번호이다. 파일을 읽는 스레드만 사용한다.
+	 */
+	private final class Part {
+		
+		private final int index;
+		
+		private final ExecutorService executor;
+		
+		private long[] keys = new long[chunkSize];
+		
+		private long[] quantities = new long[chunkSize];
+		
+		private int size;
+		
+		private long nextChunkNo;
+		
+		private Part(int index, ExecutorService executor) {
+			this.index = index;
+			this.executor = executor;
+		}
+		
+		private void add(long key, long quantity) {
+			keys[size] = key;
+			quantities[size] = quantity;
+			size++;
+		}
+		
+		// 모은 배열은 반영하는 스레드에 넘겼으므로 새 배열로 모은다.
+		private void reset() {
+			keys = new long[chunkSize];
+			quantities = new long[chunkSize];
+			size = 0;
+		}
+	}
+}
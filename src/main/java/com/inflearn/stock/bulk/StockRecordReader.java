@@ -0,0 +1,27 @@
+package com.inflearn.stock.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 적재할 파일을 처음부터 순서대로 [key, quantity] 행 단위로 읽는다. 파일 전체를 메모리에 올리지 않는다.
+ */
+public interface StockRecordReader extends Closeable {
+
+	/**
+	 * 배열의 크기만큼 행을 읽어서 채우고 읽은 행 수를 반환한다. 파일이 끝났으면 0을 반환한다.
+	 */
+	int read(long[] keys, long[] quantities) throws IOException;
+	
+	/**
+	 * .bin 파일은 [key(long), quantity(long)]가 반복되는 binary, 나머지는 "key,quantity" 형식의 CSV로 읽는다.
+	 */
+	static StockRecordReader open(Path file) throws IOException {
+		if(file.getFileName().toString().endsWith(".bin")) {
+			return new BinaryStockRecordReader(file);
+		}
+		
+		return new CsvStockRecordReader(file);
+	}
+}
@@ -0,0 +1,147 @@
+package com.inflearn.stock.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.StockRestockedEvent;
+import com.inflearn.stock.domain.StockSoldOutEvent;
+import com.inflearn.stock.metrics.StockMetrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 품절된 Stock을 기억해두고, Lock을 잡거나 DB를 조회하기 전에 요청을 바로 거절한다.
+ * 품절 이후의 요청은 메모리 조회 한 번으로 끝나므로 Lock 대기열에는 아직 구매할 수 있는 요청만 남는다.
+ * 
+ * 품절과 해제는 Redis pub/sub으로 다른 서버에도 알린다. 메시지 순서가 뒤바뀌거나 유실되어 잘못 남은 품절 표시는
+ * ttl이 지나면 사라지고, 그 뒤의 요청이 다시 DB나 Redis에서 품절을 확인한다.
+ */
+@Slf4j
+@Component
+public class SoldOutRegistry implements MessageListener {
+
+	private static final String CHANNEL = "stock:sold-out";
+	
+	private final RedisTemplate<String, String> redisTemplate;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final long ttlNanos;
+	
+	// key : Stock id, value : 품절 표시가 만료되는 시각 (System.nanoTime)
+	private final ConcurrentHashMap<Long, Long> soldOut = new ConcurrentHashMap<>();
+	
+	public SoldOutRegistry(RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer redisMessageListenerContainer, StockMetrics stockMetrics,
+			@Value("${stock.sold-out.ttl-millis:5000}") long ttlMillis) {
+		this.redisTemplate = redisTemplate;
+		this.stockMetrics = stockMetrics;
+		this.ttlNanos = ttlMillis * 1_000_000;
+		redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+	}
+	
+	public boolean isSoldOut(Long id) {
+		Long expiresAt = soldOut.get(id);
+		
+		if(expiresAt == null) {
+			return false;
+		}
+		
+		if(System.nanoTime() - expiresAt > 0) {
+			soldOut.remove(id, expiresAt);
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * 품절된 Stock이라면 OutOfStockException을 던진다. Lock을 잡기 전에 호출한다.
+	 */
+	public void throwIfSoldOut(String strategy, Long id) {
+		if(isSoldOut(id)) {
+			stockMetrics.incrementOutOfStock(strategy, id);
+			throw new OutOfStockException();
+		}
+	}
+	
+	public void throwIfAnySoldOut(String strategy, Collection<Long> ids) {
+		for(Long id : ids) {
+			throwIfSoldOut(strategy, id);
+		}
+	}
+	
+	/**
+	 * 수량이 0인 것을 확인했을 때 호출한다. 이미 commit된 수량을 보고 호출해야 한다.
+	 */
+	public void markSoldOut(Long id) {
+		if(soldOut.put(id, System.nanoTime() + ttlNanos) == null) {
+			publish("+" + id);
+		}
+	}
+	
+	/**
+	 * 재고가 다시 들어왔을 때 호출한다. 이 서버에 품절로 등록된 Stock만 다른 서버에 알린다.
+	 */
+	public void clear(Collection<Long> ids) {
+		String cleared = ids.stream()
+				.filter(id -> soldOut.remove(id) != null)
+				.map(String::valueOf)
+				.collect(Collectors.joining(","));
+		
+		if(!cleared.isEmpty()) {
+			publish("-" + cleared);
+		}
+	}
+	
+	/**
+	 * 모든 품절 표시를 지운다. 다른 서버에는 알리지 않으므로 서버마다 호출해야 한다.
+	 */
+	public void clearAll() {
+		soldOut.clear();
+	}
+	
+	// rollback된 트랜잭션에서 본 수량으로 품절을 등록하지 않도록 commit된 뒤에 등록한다.
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onSoldOut(StockSoldOutEvent event) {
+		markSoldOut(event.stockId());
+	}
+	
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRestocked(StockRestockedEvent event) {
+		clear(event.stockIds());
+	}
+	
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		String body = new String(message.getBody(), StandardCharsets.UTF_8);
+		
+		for(String id : body.substring(1).split(",")) {
+			if(body.charAt(0) == '+') {
+				soldOut.put(Long.valueOf(id), System.nanoTime() + ttlNanos);
+			} else {
+				soldOut.remove(Long.valueOf(id));
+			}
+		}
+	}
+	
+	private void publish(String message) {
+		try {
+			redisTemplate.convertAndSend(CHANNEL, message);
+		} catch(RuntimeException e) {
+			// 다른 서버는 DB나 Redis에서 직접 품절을 확인하게 되므로 다시 보내지 않는다.
+			log.warn("품절 메시지 전송 실패 : message={}", message, e);
+		}
+	}
+}
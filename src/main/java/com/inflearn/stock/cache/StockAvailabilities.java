@@ -0,0 +1,38 @@
+package com.inflearn.stock.cache;
+
+import java.util.Map;
+
+/**
+ * 여러 상품의 구매 가능 수량이다. 요청한 productIds에서 중복을 제외하고 처음 나온 순서대로 수량을 담는다.
+ * 장바구니처럼 상품이 많아도 상품마다 객체를 만들지 않도록 배열로 전달한다.
+ */
+public record StockAvailabilities(long[] productIds, long[] quantities) {
+
+	public int size() {
+		return productIds.length;
+	}
+	
+	public long quantityOf(long productId) {
+		for(int i=0; i<productIds.length; i++) {
+			if(productIds[i] == productId) {
+				return quantities[i];
+			}
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * 모든 상품이 요청한 수량만큼 남아 있는지 확인한다. requested는 productId별 요청 수량이다.
+	 * 조회할 때 중복된 productId를 합치므로 순서로 맞추지 않고 productId로 찾는다. 조회하지 않은 상품은 재고가 없는 것으로 본다.
+	 */
+	public boolean isAvailable(Map<Long, Long> requested) {
+		for(Map.Entry<Long, Long> entry : requested.entrySet()) {
+			if(quantityOf(entry.getKey()) < entry.getValue()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+}
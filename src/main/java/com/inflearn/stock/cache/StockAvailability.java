@@ -0,0 +1,11 @@
+package com.inflearn.stock.cache;
+
+/**
+ * 상품의 구매 가능 수량이다. 상품에 여러 Stock이 있다면 수량을 합친다.
+ */
+public record StockAvailability(Long productId, long quantity) {
+
+	public boolean isAvailable() {
+		return quantity > 0;
+	}
+}
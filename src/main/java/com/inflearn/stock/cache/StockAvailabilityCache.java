@@ -0,0 +1,79 @@
+package com.inflearn.stock.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * productId별 구매 가능 수량을 서버 메모리에 보관한다.
+ * 크기와 시간으로 제한되므로 무효화 메시지를 놓치더라도 max-staleness가 지나면 DB에서 다시 읽는다.
+ * 재고 변경은 stockId로 전달되므로 조회할 때 stockId -> productId 대응도 함께 보관한다.
+ */
+@Component
+public class StockAvailabilityCache {
+
+	private final Cache<Long, StockAvailability> availabilities;
+	
+	private final Cache<Long, Long> stockProducts;
+	
+	public StockAvailabilityCache(MeterRegistry meterRegistry,
+			@Value("${stock.cache.maximum-size:100000}") long maximumSize,
+			@Value("${stock.cache.max-staleness-millis:1000}") long maxStalenessMillis) {
+		this.availabilities = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(Duration.ofMillis(maxStalenessMillis))
+				.recordStats()
+				.build();
+		this.stockProducts = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.build();
+		
+		CaffeineCacheMetrics.monitor(meterRegistry, availabilities, "stock.availability");
+	}
+	
+	/**
+	 * 캐시에 없으면 loader로 읽어온다. 같은 productId를 동시에 요청하면 한 번만 읽는다.
+	 */
+	public StockAvailability get(Long productId, Function<Long, StockAvailability> loader) {
+		return availabilities.get(productId, loader);
+	}
+	
+	/**
+	 * 캐시에 없는 상품만 모아서 loader로 한 번에 읽어온다.
+	 */
+	public Map<Long, StockAvailability> getAll(Collection<Long> productIds, Function<Set<? extends Long>, Map<Long, StockAvailability>> loader) {
+		return availabilities.getAll(productIds, loader);
+	}
+	
+	public void registerStock(Long stockId, Long productId) {
+		stockProducts.put(stockId, productId);
+	}
+	
+	/**
+	 * 변경된 Stock이 속한 상품의 캐시를 지운다. 이 서버에서 조회한 적이 없는 Stock이면 지울 것이 없다.
+	 */
+	public void invalidateStocks(Collection<Long> stockIds) {
+		for(Long stockId : stockIds) {
+			Long productId = stockProducts.getIfPresent(stockId);
+			
+			if(productId != null) {
+				availabilities.invalidate(productId);
+			}
+		}
+	}
+	
+	public void invalidateAll() {
+		availabilities.invalidateAll();
+	}
+}
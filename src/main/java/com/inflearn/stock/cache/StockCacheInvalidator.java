@@ -0,0 +1,85 @@
+package com.inflearn.stock.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.inflearn.stock.domain.StockChangedEvent;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 재고 변경이 commit되면 이 서버의 캐시를 바로 지우고, 다른 서버에는 Redis pub/sub으로 알린다.
+ * 판매가 몰릴 때 판매마다 PUBLISH 하지 않도록 broadcast-interval 동안 변경된 stockId를 모아서 한 번에 보낸다.
+ */
+@Slf4j
+@Component
+public class StockCacheInvalidator implements MessageListener {
+
+	private static final String CHANNEL = "stock:cache:invalidate";
+	
+	private final StockAvailabilityCache stockAvailabilityCache;
+	
+	private final RedisTemplate<String, String> redisTemplate;
+	
+	private final Set<Long> pendingStockIds = ConcurrentHashMap.newKeySet();
+	
+	public StockCacheInvalidator(StockAvailabilityCache stockAvailabilityCache, RedisTemplate<String, String> redisTemplate,
+			RedisMessageListenerContainer redisMessageListenerContainer) {
+		this.stockAvailabilityCache = stockAvailabilityCache;
+		this.redisTemplate = redisTemplate;
+		redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+	}
+	
+	// commit 전에 지우면 다른 요청이 변경 전의 값을 다시 캐시에 넣을 수 있으므로 commit된 뒤에 지운다.
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onStockChanged(StockChangedEvent event) {
+		stockAvailabilityCache.invalidateStocks(event.stockIds());
+		pendingStockIds.addAll(event.stockIds());
+	}
+	
+	@Scheduled(fixedDelayString = "${stock.cache.broadcast-interval-millis:100}")
+	public void broadcast() {
+		if(pendingStockIds.isEmpty()) {
+			return;
+		}
+		
+		List<Long> stockIds = new ArrayList<>();
+		Iterator<Long> iterator = pendingStockIds.iterator();
+		
+		while(iterator.hasNext()) {
+			stockIds.add(iterator.next());
+			iterator.remove();
+		}
+		
+		try {
+			redisTemplate.convertAndSend(CHANNEL, stockIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+		} catch(RuntimeException e) {
+			// 다른 서버의 캐시는 max-staleness가 지나면 만료되므로 다시 보내지 않는다.
+			log.warn("재고 캐시 무효화 메시지 전송 실패 : stockIds={}", stockIds, e);
+		}
+	}
+	
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		String body = new String(message.getBody(), StandardCharsets.UTF_8);
+		
+		stockAvailabilityCache.invalidateStocks(Arrays.stream(body.split(","))
+				.map(Long::valueOf)
+				.toList());
+	}
+}
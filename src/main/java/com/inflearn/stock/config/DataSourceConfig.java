@@ -0,0 +1,25 @@
+package com.inflearn.stock.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class DataSourceConfig {
+
+	// R2DBC ConnectionFactory가 등록되면 DataSourceAutoConfiguration이 동작하지 않으므로 JPA가 사용할 DataSource를 직접 만든다.
+	// 자동 설정과 같은 방법으로 spring.datasource.*를 읽고 spring.datasource.hikari.*를 덮어쓴다.
+	// replica를 사용하면 ReplicaDataSourceConfig가 primary와 replica를 고르는 DataSource를 대신 만든다.
+	@Bean
+	@ConditionalOnProperty(name = "stock.replica.enabled", havingValue = "false", matchIfMissing = true)
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource dataSource(DataSourceProperties properties) {
+		return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+}
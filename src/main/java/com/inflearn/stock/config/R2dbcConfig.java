@@ -0,0 +1,19 @@
+package com.inflearn.stock.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import io.r2dbc.spi.ConnectionFactory;
+
+@Configuration
+public class R2dbcConfig {
+
+	// JPA의 transactionManager와 함께 Bean으로 등록하면 @Transactional이 사용할 TransactionManager를 하나로 정할 수 없다.
+	// 그래서 R2dbcTransactionManager는 Bean으로 등록하지 않고 TransactionalOperator 안에서만 사용한다.
+	@Bean
+	public TransactionalOperator reactiveTransactionalOperator(ConnectionFactory connectionFactory) {
+		return TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+	}
+}
@@ -0,0 +1,37 @@
+package com.inflearn.stock.controller;
+
+import java.util.List;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.inflearn.stock.cache.StockAvailabilities;
+import com.inflearn.stock.cache.StockAvailability;
+import com.inflearn.stock.service.StockAvailabilityService;
+
+@RestController
+public class StockAvailabilityController {
+
+	private final StockAvailabilityService stockAvailabilityService;
+	
+	public StockAvailabilityController(StockAvailabilityService stockAvailabilityService) {
+		this.stockAvailabilityService = stockAvailabilityService;
+	}
+	
+	@GetMapping("/products/{productId}/availability")
+	public StockAvailability getAvailability(@PathVariable Long productId, @RequestParam(defaultValue = "false") boolean readYourWrites) {
+		return stockAvailabilityService.getAvailability(productId, readYourWrites);
+	}
+	
+	/**
+	 * 장바구니의 상품을 한 번에 조회한다. 요청 본문은 productId 목록이다.
+	 */
+	@PostMapping("/products/availability")
+	public StockAvailabilities getAvailabilities(@RequestBody List<Long> productIds) {
+		return stockAvailabilityService.getAvailability(productIds);
+	}
+}
@@ -0,0 +1,81 @@
+package com.inflearn.stock.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.inflearn.stock.domain.StockQuantity;
+import com.inflearn.stock.hotkey.HotKey;
+import com.inflearn.stock.hotkey.HotKeyDetector;
+import com.inflearn.stock.limiter.StockConcurrencyLimiter;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+import com.inflearn.stock.strategy.StockDecreaseStrategyRegistry;
+
+/**
+ * 재고 감소 요청을 받는다.
+ * spring.threads.virtual.enabled가 켜져 있으면 요청마다 virtual thread에서 실행되므로 Lock이나 재시도를 기다리는 동안 carrier thread를 점유하지 않는다.
+ */
+@RestController
+@RequestMapping("/stocks")
+public class StockController {
+
+	private final StockDecreaseStrategyRegistry strategyRegistry;
+	
+	private final StockConcurrencyLimiter concurrencyLimiter;
+	
+	private final HotKeyDetector hotKeyDetector;
+	
+	private final String defaultStrategy;
+	
+	public StockController(StockDecreaseStrategyRegistry strategyRegistry, StockConcurrencyLimiter concurrencyLimiter, HotKeyDetector hotKeyDetector,
+			@Value("${stock.api.strategy:adaptive}") String defaultStrategy) {
+		this.strategyRegistry = strategyRegistry;
+		this.concurrencyLimiter = concurrencyLimiter;
+		this.hotKeyDetector = hotKeyDetector;
+		this.defaultStrategy = defaultStrategy;
+	}
+	
+	@PostMapping("/{id}/decrease")
+	public ResponseEntity<Void> decrease(@PathVariable Long id, @RequestParam(defaultValue = "1") Long quantity,
+			@RequestParam(required = false) String strategy) throws InterruptedException {
+		StockQuantity.requirePositive(quantity); // 0 이하의 수량은 400으로 거절한다.
+		
+		StockDecreaseStrategy decreaseStrategy = getStrategy(strategy);
+		concurrencyLimiter.execute(id, () -> decreaseStrategy.decrease(id, quantity));
+		return ResponseEntity.noContent().build();
+	}
+	
+	/**
+	 * 여러 상품을 한 번에 감소시킨다. 요청 본문은 { "stockId": quantity } 형식이다.
+	 */
+	@PostMapping("/decrease")
+	public ResponseEntity<Void> decreaseAll(@RequestBody Map<Long, Long> quantities,
+			@RequestParam(required = false) String strategy) throws InterruptedException {
+		StockQuantity.requirePositive(quantities);
+		
+		StockDecreaseStrategy decreaseStrategy = getStrategy(strategy);
+		concurrencyLimiter.execute(quantities.keySet(), () -> decreaseStrategy.decreaseAll(quantities));
+		return ResponseEntity.noContent().build();
+	}
+	
+	/**
+	 * hot-key 방식으로 들어온 요청 중 최근 window 동안 요청이 몰린 Stock을 요청 수가 많은 순서대로 반환한다.
+	 */
+	@GetMapping("/hot-keys")
+	public List<HotKey> getHotKeys() {
+		return hotKeyDetector.getHotKeys();
+	}
+	
+	private StockDecreaseStrategy getStrategy(String name) {
+		return strategyRegistry.get(name == null ? defaultStrategy : name);
+	}
+}
@@ -0,0 +1,61 @@
+package com.inflearn.stock.controller;
+
+import java.util.NoSuchElementException;
+
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.ReservationStateException;
+import com.inflearn.stock.ledger.StockLedgerException;
+import com.inflearn.stock.limiter.ConcurrencyLimitExceededException;
+
+@RestControllerAdvice
+public class StockExceptionHandler {
+
+	@ExceptionHandler(OutOfStockException.class)
+	public ProblemDetail handleOutOfStock(OutOfStockException e) {
+		return ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+	}
+	
+	@ExceptionHandler(NoSuchElementException.class)
+	public ProblemDetail handleNotFound(NoSuchElementException e) {
+		return ProblemDetail.forStatusAndDetail(HttpStatus.NOT_FOUND, "Stock을 찾을 수 없습니다.");
+	}
+	
+	@ExceptionHandler(IllegalArgumentException.class)
+	public ProblemDetail handleIllegalArgument(IllegalArgumentException e) {
+		return ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, e.getMessage());
+	}
+	
+	@ExceptionHandler(ReservationStateException.class)
+	public ProblemDetail handleReservationState(ReservationStateException e) {
+		return ProblemDetail.forStatusAndDetail(HttpStatus.CONFLICT, e.getMessage());
+	}
+	
+	// 재고 감소는 이미 commit되었으므로 실패로 응답하면 클라이언트가 다시 요청해서 두 번 감소한다. 성공으로 응답하고 header로 알린다.
+	@ExceptionHandler(StockLedgerException.class)
+	public ResponseEntity<Void> handleLedgerFailure(StockLedgerException e) {
+		return ResponseEntity.noContent().header("X-Stock-Ledger", "failed").build();
+	}
+	
+	@ExceptionHandler(ConcurrencyLimitExceededException.class)
+	public ProblemDetail handleConcurrencyLimitExceeded(ConcurrencyLimitExceededException e) {
+		return ProblemDetail.forStatusAndDetail(HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+	}
+	
+	@ExceptionHandler(CannotAcquireLockException.class)
+	public ProblemDetail handleCannotAcquireLock(CannotAcquireLockException e) {
+		return ProblemDetail.forStatusAndDetail(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+	}
+	
+	@ExceptionHandler(InterruptedException.class)
+	public ProblemDetail handleInterrupted(InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return ProblemDetail.forStatusAndDetail(HttpStatus.SERVICE_UNAVAILABLE, "요청이 중단되었습니다.");
+	}
+}
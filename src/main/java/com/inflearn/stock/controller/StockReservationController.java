@@ -0,0 +1,51 @@
+package com.inflearn.stock.controller;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.inflearn.stock.domain.StockQuantity;
+import com.inflearn.stock.service.StockReservationService;
+
+@RestController
+public class StockReservationController {
+
+	private final StockReservationService stockReservationService;
+	
+	private final long defaultTtlSeconds;
+	
+	public StockReservationController(StockReservationService stockReservationService,
+			@Value("${stock.reservation.default-ttl-seconds:600}") long defaultTtlSeconds) {
+		this.stockReservationService = stockReservationService;
+		this.defaultTtlSeconds = defaultTtlSeconds;
+	}
+	
+	@PostMapping("/stocks/{id}/reservations")
+	public ResponseEntity<Map<String, Long>> reserve(@PathVariable Long id, @RequestParam(defaultValue = "1") Long quantity,
+			@RequestParam(required = false) Long ttlSeconds) {
+		StockQuantity.requirePositive(quantity); // 0 이하의 수량은 400으로 거절한다.
+		
+		Duration ttl = Duration.ofSeconds(ttlSeconds == null ? defaultTtlSeconds : ttlSeconds);
+		Long reservationId = stockReservationService.reserve(id, quantity, ttl);
+		return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("reservationId", reservationId));
+	}
+	
+	@PostMapping("/reservations/{reservationId}/confirm")
+	public ResponseEntity<Void> confirm(@PathVariable Long reservationId) {
+		stockReservationService.confirm(reservationId);
+		return ResponseEntity.noContent().build();
+	}
+	
+	@PostMapping("/reservations/{reservationId}/release")
+	public ResponseEntity<Void> release(@PathVariable Long reservationId) {
+		stockReservationService.release(reservationId);
+		return ResponseEntity.noContent().build();
+	}
+}
@@ -0,0 +1,127 @@
+package com.inflearn.stock.datasource;
+
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 로컬에서 두 개의 H2 메모리 DB로 replica를 흉내 낸다.
+ * 주기마다 primary의 모든 테이블을 통째로 replica에 복사하므로 복제 지연은 최대 stand-in-interval-millis이다.
+ * replica에 없는 테이블은 primary의 테이블 정의(SCRIPT NODATA)로 먼저 만들므로, JPA 엔티티가 늘어나도 따로 추가하지 않아도 된다.
+ * heartbeat를 가장 먼저 읽으므로 replica의 heartbeat는 복사된 데이터보다 새로운 시각을 가리키지 않는다.
+ */
+@Slf4j
+public class H2ReplicationStandIn {
+
+	private static final String HEARTBEAT_TABLE = "REPLICA_HEARTBEAT";
+	
+	private final JdbcTemplate primary;
+	
+	private final JdbcTemplate replica;
+	
+	private final TransactionTemplate replicaTransaction;
+	
+	private final Set<String> createdTables = new HashSet<>();
+	
+	public H2ReplicationStandIn(DataSource primary, DataSource replica) {
+		this.primary = new JdbcTemplate(primary);
+		this.replica = new JdbcTemplate(replica);
+		this.replicaTransaction = new TransactionTemplate(new DataSourceTransactionManager(replica));
+	}
+	
+	@Scheduled(fixedDelayString = "${stock.replica.stand-in-interval-millis:200}")
+	public synchronized void replicate() {
+		try {
+			List<String> tables = new ArrayList<>(primary.queryForList(
+					"SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_TYPE = 'BASE TABLE'", String.class));
+			
+			if(tables.remove(HEARTBEAT_TABLE)) {
+				tables.add(0, HEARTBEAT_TABLE);
+			}
+			
+			List<TableCopy> copies = new ArrayList<>(tables.size());
+			
+			for(String table : tables) {
+				createIfAbsent(table);
+				copies.add(read(table));
+			}
+			
+			replicaTransaction.executeWithoutResult(status -> copies.forEach(this::write));
+		} catch(DataAccessException e) {
+			// JPA가 primary에 테이블을 만드는 중이라면 다음 주기에 다시 복사한다.
+			log.debug("replica 복제 실패", e);
+		}
+	}
+	
+	private void createIfAbsent(String table) {
+		if(createdTables.contains(table)) {
+			return;
+		}
+		
+		Integer exists = replica.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = ?",
+				Integer.class, table);
+		
+		if(exists == 0) {
+			for(String statement : primary.queryForList("SCRIPT NODATA TABLE \"PUBLIC\".\"" + table + "\"", String.class)) {
+				// 사용자는 이미 있고, 주석은 실행할 수 없다.
+				if(!statement.startsWith("CREATE USER") && !statement.startsWith("--")) {
+					replica.execute(statement);
+				}
+			}
+		}
+		
+		createdTables.add(table);
+	}
+	
+	private TableCopy read(String table) {
+		return primary.query("SELECT * FROM \"" + table + "\"", rs -> {
+			ResultSetMetaData metaData = rs.getMetaData();
+			int columnCount = metaData.getColumnCount();
+			StringJoiner columns = new StringJoiner(", ");
+			StringJoiner parameters = new StringJoiner(", ");
+			
+			for(int i=1; i<=columnCount; i++) {
+				columns.add("\"" + metaData.getColumnName(i) + "\"");
+				parameters.add("?");
+			}
+			
+			List<Object[]> rows = new ArrayList<>();
+			
+			while(rs.next()) {
+				Object[] row = new Object[columnCount];
+				
+				for(int i=0; i<columnCount; i++) {
+					row[i] = rs.getObject(i + 1);
+				}
+				
+				rows.add(row);
+			}
+			
+			return new TableCopy(table, "INSERT INTO \"" + table + "\" (" + columns + ") VALUES (" + parameters + ")", rows);
+		});
+	}
+	
+	private void write(TableCopy copy) {
+		replica.update("DELETE FROM \"" + copy.table() + "\"");
+		
+		if(!copy.rows().isEmpty()) {
+			replica.batchUpdate(copy.insertSql(), copy.rows());
+		}
+	}
+	
+	private record TableCopy(String table, String insertSql, List<Object[]> rows) {
+	}
+}
@@ -0,0 +1,34 @@
+package com.inflearn.stock.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * 방금 변경한 값을 읽어야 하는 호출에서 readOnly 트랜잭션이라도 replica 대신 primary를 사용하게 한다.
+ * 라우팅은 트랜잭션이 처음 SQL을 실행할 때 정해지므로 트랜잭션이 시작되기 전에 감싸야 한다.
+ */
+public final class ReadYourWrites {
+
+	private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+	
+	private ReadYourWrites() {
+	}
+	
+	public static <T> T call(Supplier<T> action) {
+		Boolean previous = ACTIVE.get();
+		ACTIVE.set(Boolean.TRUE);
+		
+		try {
+			return action.get();
+		} finally {
+			if(previous == null) {
+				ACTIVE.remove();
+			} else {
+				ACTIVE.set(previous);
+			}
+		}
+	}
+	
+	public static boolean isActive() {
+		return ACTIVE.get() != null;
+	}
+}
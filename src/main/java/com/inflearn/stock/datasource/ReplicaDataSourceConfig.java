@@ -0,0 +1,61 @@
+package com.inflearn.stock.datasource;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * stock.replica.enabled가 true이면 DataSourceConfig 대신 primary와 replica 두 개의 pool을 만들고
+ * 트랜잭션에 따라 둘 중 하나를 고르는 DataSource를 JPA에 제공한다.
+ */
+@Configuration
+@ConditionalOnProperty(name = "stock.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+		return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+	
+	@Bean
+	@ConfigurationProperties("stock.replica.hikari")
+	public HikariDataSource replicaDataSource(DataSourceProperties properties) {
+		// url은 stock.replica.hikari.jdbc-url로 덮어쓰고, 사용자 정보는 primary와 같은 값을 사용한다.
+		return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+	
+	@Bean
+	public ReplicaLagMonitor replicaLagMonitor(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+			@Qualifier("replicaDataSource") DataSource replicaDataSource, MeterRegistry meterRegistry,
+			@Value("${stock.replica.max-lag-millis:1000}") long maxLagMillis) {
+		return new ReplicaLagMonitor(primaryDataSource, replicaDataSource, maxLagMillis, meterRegistry);
+	}
+	
+	@Bean
+	@ConditionalOnExpression("${stock.replica.stand-in:false}")
+	public H2ReplicationStandIn h2ReplicationStandIn(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+			@Qualifier("replicaDataSource") DataSource replicaDataSource) {
+		return new H2ReplicationStandIn(primaryDataSource, replicaDataSource);
+	}
+	
+	@Bean
+	@Primary
+	public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+			@Qualifier("replicaDataSource") DataSource replicaDataSource, ReplicaLagMonitor replicaLagMonitor) {
+		return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource, replicaLagMonitor));
+	}
+}
@@ -0,0 +1,69 @@
+package com.inflearn.stock.datasource;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * primary의 heartbeat 테이블에 현재 시각을 기록하고, replica에 복제된 시각과 비교해서 복제 지연을 구한다.
+ * 측정한 지연에는 heartbeat 주기만큼의 오차가 있으므로 max-lag-millis는 heartbeat-interval-millis보다 크게 설정한다.
+ * replica를 읽지 못하면 지연을 알 수 없으므로 허용 범위를 벗어난 것으로 본다.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+	private final JdbcTemplate primary;
+	
+	private final JdbcTemplate replica;
+	
+	private final long maxLagMillis;
+	
+	private volatile long lagMillis = Long.MAX_VALUE;
+	
+	public ReplicaLagMonitor(DataSource primary, DataSource replica, long maxLagMillis, MeterRegistry meterRegistry) {
+		this.primary = new JdbcTemplate(primary);
+		this.replica = new JdbcTemplate(replica);
+		this.maxLagMillis = maxLagMillis;
+		
+		this.primary.execute("CREATE TABLE IF NOT EXISTS replica_heartbeat (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)");
+		
+		Gauge.builder("stock.replica.lag", this, ReplicaLagMonitor::getLagMillis)
+				.baseUnit("milliseconds")
+				.register(meterRegistry);
+	}
+	
+	@Scheduled(fixedDelayString = "${stock.replica.heartbeat-interval-millis:500}")
+	public void heartbeat() {
+		long now = System.currentTimeMillis();
+		
+		try {
+			if(primary.update("UPDATE replica_heartbeat SET beat_at = ? WHERE id = 1", now) == 0) {
+				primary.update("INSERT INTO replica_heartbeat (id, beat_at) VALUES (1, ?)", now);
+			}
+		} catch(DataAccessException e) {
+			log.warn("replica heartbeat 기록 실패", e);
+		}
+		
+		try {
+			Long beatAt = replica.queryForObject("SELECT beat_at FROM replica_heartbeat WHERE id = 1", Long.class);
+			lagMillis = beatAt == null ? Long.MAX_VALUE : Math.max(0, now - beatAt);
+		} catch(DataAccessException e) {
+			lagMillis = Long.MAX_VALUE;
+			log.debug("replica heartbeat 조회 실패", e);
+		}
+	}
+	
+	public boolean isWithinTolerance() {
+		return lagMillis <= maxLagMillis;
+	}
+	
+	public long getLagMillis() {
+		return lagMillis;
+	}
+}
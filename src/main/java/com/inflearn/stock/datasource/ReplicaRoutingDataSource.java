@@ -0,0 +1,38 @@
+package com.inflearn.stock.datasource;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * readOnly 트랜잭션은 replica로, 나머지는 primary로 보낸다.
+ * replica가 max-lag-millis보다 늦거나 ReadYourWrites로 감싼 호출이라면 readOnly 트랜잭션도 primary로 보낸다.
+ * 트랜잭션 속성이 정해진 뒤에 connection을 가져오도록 LazyConnectionDataSourceProxy로 감싸서 사용한다.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	private static final String PRIMARY = "primary";
+	
+	private static final String REPLICA = "replica";
+	
+	private final ReplicaLagMonitor replicaLagMonitor;
+	
+	public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor replicaLagMonitor) {
+		this.replicaLagMonitor = replicaLagMonitor;
+		setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+		setDefaultTargetDataSource(primary);
+		afterPropertiesSet();
+	}
+	
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if(TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !ReadYourWrites.isActive() && replicaLagMonitor.isWithinTolerance()) {
+			return REPLICA;
+		}
+		
+		return PRIMARY;
+	}
+}
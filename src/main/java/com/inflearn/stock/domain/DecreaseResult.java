@@ -0,0 +1,12 @@
+package com.inflearn.stock.domain;
+
+/**
+ * ReactiveStockService의 처리 결과이다.
+ * 예외를 던지는 대신 결과로 돌려주므로 호출하는 쪽이 Mono 안에서 바로 분기할 수 있다.
+ */
+public enum DecreaseResult {
+	DECREASED,
+	OUT_OF_STOCK,
+	NOT_FOUND,
+	CONFLICT // 재시도 한도를 넘을 때까지 version 충돌이 계속되었다.
+}
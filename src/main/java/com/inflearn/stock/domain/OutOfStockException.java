@@ -0,0 +1,8 @@
+package com.inflearn.stock.domain;
+
+public class OutOfStockException extends RuntimeException {
+
+	public OutOfStockException() {
+		super("재고는 0개 미만이 될 수 없습니다.");
+	}
+}
@@ -0,0 +1,10 @@
+package com.inflearn.stock.domain;
+
+/**
+ * StockReservationService.expire의 처리 결과이다.
+ */
+public enum ReservationExpireResult {
+	EXPIRED, // 재고를 돌려주었다.
+	NOT_YET, // 만료 시각이 아직 지나지 않았다. 남은 시간만큼 뒤에 다시 만료시켜야 한다.
+	SKIPPED // 없는 예약이거나 이미 확정, 취소, 만료된 예약이다.
+}
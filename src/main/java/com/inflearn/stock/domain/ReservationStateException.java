@@ -0,0 +1,11 @@
+package com.inflearn.stock.domain;
+
+/**
+ * 이미 확정, 취소, 만료된 예약처럼 현재 상태에서는 요청한 처리를 할 수 없는 예약이다.
+ */
+public class ReservationStateException extends RuntimeException {
+
+	public ReservationStateException(String message) {
+		super(message);
+	}
+}
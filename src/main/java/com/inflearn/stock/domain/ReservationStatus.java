@@ -0,0 +1,8 @@
+package com.inflearn.stock.domain;
+
+public enum ReservationStatus {
+	HELD, // 재고를 잡아둔 상태
+	CONFIRMED, // 결제가 끝나 재고 감소가 확정된 상태
+	RELEASED, // 주문이 취소되어 재고를 돌려준 상태
+	EXPIRED // 시간 안에 확정되지 않아 재고를 돌려준 상태
+}
@@ -1,18 +1,25 @@
 package com.inflearn.stock.domain;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import jakarta.persistence.Version;
 import lombok.Getter;
 
 @Entity
+@EntityListeners(StockEntityListener.class) // 수량이 0이 되면 품절로 등록한다.
+@Table(indexes = @Index(columnList = "productId")) // 상품별 재고 조회에서 사용한다.
 public class Stock {
 
+	@Getter
 	@Id @GeneratedValue(strategy = GenerationType.IDENTITY)
 	private Long id;
 	
+	@Getter
 	private Long productId;
 	
 	@Version // javax.persistence.Version 어노테이션 추가한다. (java17 이후로는 jakarta.persistence.Version 추가)
@@ -30,8 +37,10 @@ public class Stock {
 	}
 	
 	public void decrease(Long quantity) {
+		StockQuantity.requirePositive(quantity); // 음수를 감소시키면 재고가 늘어난다.
+		
 		if(this.quantity - quantity < 0) {
-			throw new RuntimeException("재고는 0개 미만이 될 수 없습니다.");
+			throw new OutOfStockException();
 		}
 		
 		this.quantity -= quantity;
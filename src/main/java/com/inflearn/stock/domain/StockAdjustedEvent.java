@@ -0,0 +1,18 @@
+package com.inflearn.stock.domain;
+
+import java.util.Map;
+
+/**
+ * 감소 방식을 거치지 않고 DB의 Stock 수량을 바꾼 트랜잭션(예약, 적재)에서 발행한다.
+ * 값은 Stock id별로 늘어난 수량이고, 줄었다면 음수이다. commit된 뒤 재고를 따로 관리하는 곳에 같은 만큼 반영하는 데 사용한다.
+ */
+public record StockAdjustedEvent(Map<Long, Long> increases) {
+
+	public StockAdjustedEvent {
+		increases = Map.copyOf(increases);
+	}
+	
+	public static StockAdjustedEvent of(Long stockId, Long increase) {
+		return new StockAdjustedEvent(Map.of(stockId, increase));
+	}
+}
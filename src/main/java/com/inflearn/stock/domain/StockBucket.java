@@ -0,0 +1,53 @@
+package com.inflearn.stock.domain;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Getter;
+
+/**
+ * 주문이 몰리는 상품의 재고를 여러 row(bucket)로 나누어 보관한다.
+ * 하나의 row에 Lock이 몰리지 않도록 요청마다 서로 다른 bucket에서 재고를 감소시킨다.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"productId", "bucketNo"}))
+public class StockBucket {
+
+	@Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+	
+	@Getter
+	private Long productId;
+	
+	@Getter
+	private Integer bucketNo;
+	
+	@Getter
+	private Long quantity;
+
+	public StockBucket() {
+	}
+
+	public StockBucket(Long productId, Integer bucketNo, Long quantity) {
+		this.productId = productId;
+		this.bucketNo = bucketNo;
+		this.quantity = quantity;
+	}
+	
+	public void decrease(Long quantity) {
+		StockQuantity.requirePositive(quantity); // 음수를 감소시키면 재고가 늘어난다.
+		
+		if(this.quantity - quantity < 0) {
+			throw new OutOfStockException();
+		}
+		
+		this.quantity -= quantity;
+	}
+	
+	public void changeQuantity(Long quantity) {
+		this.quantity = quantity;
+	}
+}
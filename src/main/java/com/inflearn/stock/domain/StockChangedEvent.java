@@ -0,0 +1,18 @@
+package com.inflearn.stock.domain;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stock의 수량을 변경한 트랜잭션에서 발행한다. commit된 뒤에 캐시를 무효화하는 데 사용한다.
+ */
+public record StockChangedEvent(Collection<Long> stockIds) {
+	
+	public StockChangedEvent {
+		stockIds = List.copyOf(stockIds);
+	}
+	
+	public static StockChangedEvent of(Long stockId) {
+		return new StockChangedEvent(List.of(stockId));
+	}
+}
@@ -0,0 +1,42 @@
+package com.inflearn.stock.domain;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+
+/**
+ * write-behind로 DB에 반영하지 못한 감소량이다.
+ * Redis나 메모리에서는 이미 감소했지만 DB에는 반영되지 않았으므로, 원인을 확인한 뒤 수동으로 맞춰야 한다.
+ */
+@Getter
+@Entity
+@Table(name = "stock_dead_letter", indexes = @Index(columnList = "stockId"))
+public class StockDeadLetter {
+
+	@Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+	
+	private Long stockId;
+	
+	private Long quantity; // 반영하지 못한 감소량
+	
+	private String batchId; // 감소량을 꺼낸 batch. batch 없이 반영한 경우에는 null이다.
+	
+	private Instant createdAt;
+	
+	public StockDeadLetter() {
+	}
+	
+	public StockDeadLetter(Long stockId, Long quantity, String batchId) {
+		this.stockId = stockId;
+		this.quantity = quantity;
+		this.batchId = batchId;
+		this.createdAt = Instant.now();
+	}
+}
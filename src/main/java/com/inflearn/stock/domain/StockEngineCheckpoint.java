@@ -0,0 +1,29 @@
+package com.inflearn.stock.domain;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+
+/**
+ * 재고 엔진 파티션이 DB에 반영을 마친 journal 위치이다.
+ * 감소량과 같은 트랜잭션에 저장하므로, 재시작할 때 이 위치까지의 journal은 DB에 다시 반영하지 않는다.
+ */
+@Getter
+@Entity
+@Table(name = "stock_engine_checkpoint")
+public class StockEngineCheckpoint {
+
+	@Id
+	private Integer partitionNo;
+	
+	private Long seq;
+	
+	public StockEngineCheckpoint() {
+	}
+	
+	public StockEngineCheckpoint(Integer partitionNo, Long seq) {
+		this.partitionNo = partitionNo;
+		this.seq = seq;
+	}
+}
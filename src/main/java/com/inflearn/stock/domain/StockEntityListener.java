@@ -0,0 +1,26 @@
+package com.inflearn.stock.domain;
+
+import org.springframework.context.ApplicationEventPublisher;
+
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Stock 엔티티를 변경해서 수량이 0이 되면 StockSoldOutEvent를 발행한다.
+ * 엔티티를 조회해서 감소시키는 방식(plain, pessimistic, optimistic, named-lock, coalescing 등)은 모두 여기를 거친다.
+ * Hibernate가 Spring Bean으로 만들기 때문에 생성자로 주입받을 수 있다.
+ */
+public class StockEntityListener {
+
+	private final ApplicationEventPublisher eventPublisher;
+	
+	public StockEntityListener(ApplicationEventPublisher eventPublisher) {
+		this.eventPublisher = eventPublisher;
+	}
+	
+	@PostUpdate
+	public void afterUpdate(Stock stock) {
+		if(stock.getQuantity() == 0) {
+			eventPublisher.publishEvent(new StockSoldOutEvent(stock.getId()));
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.inflearn.stock.domain;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+
+/**
+ * 재고 변경 기록이다. StockLedger가 모아서 JDBC batch로 INSERT 하고, 엔티티는 테이블을 만들고 조회할 때 사용한다.
+ */
+@Getter
+@Entity
+@Table(name = "stock_ledger", indexes = @Index(columnList = "stockId")) // Stock별 변경 이력 조회에서 사용한다.
+public class StockLedgerEntry {
+
+	@Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+	
+	private Long stockId;
+	
+	private Long quantity; // 감소시킨 수량. 예약을 취소하거나 만료시켜 돌려준 수량과 적재로 늘어난 수량은 음수이다.
+	
+	private Long resultingQuantity; // 감소시킨 뒤의 수량. 감소 방식이 수량을 조회하지 않는다면 null이다.
+	
+	private String strategy;
+	
+	private String actor;
+	
+	private Instant recordedAt;
+	
+	public StockLedgerEntry() {
+	}
+}
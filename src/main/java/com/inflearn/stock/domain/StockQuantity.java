@@ -0,0 +1,25 @@
+package com.inflearn.stock.domain;
+
+import java.util.Map;
+
+/**
+ * 감소시키거나 잡아둘 수량을 검사한다.
+ * 0 이하의 수량은 재고 부족 검사(조건부 UPDATE, Lua script, 엔진)를 모두 통과하고 오히려 재고를 늘리므로 처리하기 전에 거절한다.
+ */
+public final class StockQuantity {
+
+	private StockQuantity() {
+	}
+	
+	public static void requirePositive(Long quantity) {
+		if(quantity == null || quantity <= 0) {
+			throw new IllegalArgumentException("수량은 1 이상이어야 합니다. quantity=" + quantity);
+		}
+	}
+	
+	public static void requirePositive(Map<Long, Long> quantities) {
+		for(Long quantity : quantities.values()) {
+			requirePositive(quantity);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.inflearn.stock.domain;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+
+/**
+ * 결제가 끝날 때까지 잡아둔 재고이다.
+ * 예약하는 순간 Stock의 수량에서 빠지고, 확정되면 그대로 두고, 취소되거나 만료되면 Stock에 다시 더한다.
+ */
+@Getter
+@Entity
+@Table(indexes = @Index(columnList = "status"))
+public class StockReservation {
+
+	@Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+	
+	private Long stockId;
+	
+	private Long quantity;
+	
+	@Enumerated(EnumType.STRING)
+	private ReservationStatus status;
+	
+	private Instant expiresAt;
+	
+	public StockReservation() {
+	}
+	
+	public StockReservation(Long stockId, Long quantity, Instant expiresAt) {
+		this.stockId = stockId;
+		this.quantity = quantity;
+		this.status = ReservationStatus.HELD;
+		this.expiresAt = expiresAt;
+	}
+}
@@ -0,0 +1,9 @@
+package com.inflearn.stock.domain;
+
+import java.time.Instant;
+
+/**
+ * 재고 예약이 commit된 뒤 만료 시각을 등록하기 위해 발행한다.
+ */
+public record StockReservedEvent(Long reservationId, Instant expiresAt) {
+}
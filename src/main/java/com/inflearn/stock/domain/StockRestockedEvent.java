@@ -0,0 +1,18 @@
+package com.inflearn.stock.domain;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stock의 수량을 늘린 트랜잭션에서 발행한다. commit된 뒤에 품절 등록을 해제하는 데 사용한다.
+ */
+public record StockRestockedEvent(Collection<Long> stockIds) {
+
+	public StockRestockedEvent {
+		stockIds = List.copyOf(stockIds);
+	}
+	
+	public static StockRestockedEvent of(Long stockId) {
+		return new StockRestockedEvent(List.of(stockId));
+	}
+}
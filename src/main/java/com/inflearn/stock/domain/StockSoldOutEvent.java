@@ -0,0 +1,7 @@
+package com.inflearn.stock.domain;
+
+/**
+ * Stock의 수량이 0이 된 트랜잭션에서 발행한다. commit된 뒤에 품절로 등록하는 데 사용한다.
+ */
+public record StockSoldOutEvent(Long stockId) {
+}
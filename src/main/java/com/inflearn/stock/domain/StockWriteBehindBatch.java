@@ -0,0 +1,32 @@
+package com.inflearn.stock.domain;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+
+/**
+ * DB에 반영을 마친 write-behind batch이다.
+ * 감소량과 같은 트랜잭션에 기록하므로, 같은 batch를 다시 반영하려고 하면 이미 반영했는지 알 수 있다.
+ */
+@Getter
+@Entity
+@Table(name = "stock_write_behind_batch", indexes = @Index(columnList = "appliedAt"))
+public class StockWriteBehindBatch {
+
+	@Id
+	private String id;
+	
+	private Instant appliedAt;
+	
+	public StockWriteBehindBatch() {
+	}
+	
+	public StockWriteBehindBatch(String id) {
+		this.id = id;
+		this.appliedAt = Instant.now();
+	}
+}
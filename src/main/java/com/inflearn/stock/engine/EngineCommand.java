@@ -0,0 +1,51 @@
+package com.inflearn.stock.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 파티션 스레드에 전달하는 요청이다. 요청한 스레드는 결과가 나올 때까지 park 상태로 기다린다.
+ */
+final class EngineCommand {
+
+	enum Type {
+		GET, LOAD, DECREASE, INCREASE, ADJUST
+	}
+	
+	final Type type;
+	
+	final long[] ids;
+	
+	final long[] quantities;
+	
+	private final Thread waiter = Thread.currentThread();
+	
+	private volatile boolean done;
+	
+	// done을 쓰기 전에 기록하므로 done을 읽은 뒤에는 최신 값이 보인다.
+	private long result;
+	
+	EngineCommand(Type type, long[] ids, long[] quantities) {
+		this.type = type;
+		this.ids = ids;
+		this.quantities = quantities;
+	}
+	
+	void complete(long result) {
+		this.result = result;
+		this.done = true;
+		LockSupport.unpark(waiter);
+	}
+	
+	long await(StockEnginePartition partition) {
+		while(!done) {
+			if(!partition.isAlive()) {
+				throw new IllegalStateException("재고 엔진이 실행 중이 아닙니다.");
+			}
+			
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+		}
+		
+		return result;
+	}
+}
@@ -0,0 +1,142 @@
+package com.inflearn.stock.engine;
+
+import java.util.Arrays;
+
+/**
+ * long key, long value를 그대로 배열에 저장하는 open addressing 해시맵이다.
+ * Long으로 boxing하지 않으므로 요청마다 객체가 만들어지지 않는다.
+ * 한 스레드에서만 사용해야 한다.
+ */
+public final class LongLongHashMap {
+
+	// Stock id는 IDENTITY로 만들어지므로 음수가 될 수 없다. 비어 있는 칸을 표시하는 데 사용한다.
+	private static final long EMPTY = Long.MIN_VALUE;
+	
+	private long[] keys;
+	
+	private long[] values;
+	
+	private int mask;
+	
+	private int size;
+	
+	private int resizeThreshold;
+	
+	public LongLongHashMap(int expectedSize) {
+		allocate(tableSizeFor(expectedSize));
+	}
+	
+	public long get(long key, long missingValue) {
+		int index = indexOf(key);
+		return index < 0 ? missingValue : values[index];
+	}
+	
+	public boolean containsKey(long key) {
+		return indexOf(key) >= 0;
+	}
+	
+	public void put(long key, long value) {
+		int slot = slot(key);
+		
+		while(keys[slot] != EMPTY) {
+			if(keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		keys[slot] = key;
+		values[slot] = value;
+		
+		if(++size > resizeThreshold) {
+			resize();
+		}
+	}
+	
+	/**
+	 * key의 값에 delta를 더한다. 값이 없다면 0에서 시작한다.
+	 */
+	public void add(long key, long delta) {
+		int index = indexOf(key);
+		
+		if(index >= 0) {
+			values[index] += delta;
+		} else {
+			put(key, delta);
+		}
+	}
+	
+	public void forEach(LongLongConsumer consumer) {
+		for(int i=0; i<keys.length; i++) {
+			if(keys[i] != EMPTY) {
+				consumer.accept(keys[i], values[i]);
+			}
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+	
+	private int indexOf(long key) {
+		int slot = slot(key);
+		
+		while(keys[slot] != EMPTY) {
+			if(keys[slot] == key) {
+				return slot;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return -1;
+	}
+	
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L; // 연속된 id가 이웃한 칸에 몰리지 않도록 섞는다.
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+	
+	private void resize() {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		allocate(oldKeys.length << 1);
+		
+		for(int i=0; i<oldKeys.length; i++) {
+			if(oldKeys[i] != EMPTY) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+	
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+		size = 0;
+		resizeThreshold = capacity / 2; // 탐색 거리가 길어지지 않도록 절반이 차면 늘린다.
+	}
+	
+	private static int tableSizeFor(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+		return Math.max(capacity, 16);
+	}
+	
+	@FunctionalInterface
+	public interface LongLongConsumer {
+		
+		void accept(long key, long value);
+	}
+}
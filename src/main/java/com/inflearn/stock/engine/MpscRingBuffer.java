@@ -0,0 +1,86 @@
+package com.inflearn.stock.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 여러 스레드가 넣고 한 스레드만 꺼내는 고정 크기 ring buffer이다.
+ * 칸마다 sequence를 두어 생산자는 tail을 CAS로 예약한 뒤 값을 쓰고, sequence를 바꿔서 소비자에게 공개한다.
+ * Lock을 사용하지 않으므로 생산자가 서로를 기다리거나 carrier thread에 고정되지 않는다.
+ */
+public final class MpscRingBuffer<E> {
+
+	private final Object[] buffer;
+	
+	private final AtomicLongArray sequences;
+	
+	private final int mask;
+	
+	private final AtomicLong tail = new AtomicLong();
+	
+	// 소비자 스레드만 변경한다.
+	private long head;
+	
+	public MpscRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+		this.buffer = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+		
+		for(int i=0; i<size; i++) {
+			sequences.set(i, i);
+		}
+	}
+	
+	/**
+	 * 빈 칸이 없으면 false를 반환한다.
+	 */
+	public boolean offer(E element) {
+		long position;
+		int index;
+		
+		while(true) {
+			position = tail.get();
+			index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			
+			if(difference == 0) {
+				if(tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+			} else if(difference < 0) {
+				return false; // 소비자가 아직 한 바퀴 전의 값을 꺼내지 않았다.
+			}
+		}
+		
+		buffer[index] = element;
+		sequences.set(index, position + 1); // volatile 쓰기로 값을 소비자에게 공개한다.
+		return true;
+	}
+	
+	/**
+	 * 소비자 스레드에서만 호출해야 한다. 꺼낼 값이 없으면 null을 반환한다.
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		int index = (int) head & mask;
+		
+		if(sequences.get(index) != head + 1) {
+			return null;
+		}
+		
+		E element = (E) buffer[index];
+		buffer[index] = null;
+		sequences.lazySet(index, head + buffer.length); // 다음 바퀴의 생산자가 사용할 수 있도록 칸을 비운다.
+		head++;
+		return element;
+	}
+	
+	public boolean isEmpty() {
+		return sequences.get((int) head & mask) != head + 1;
+	}
+	
+	public int capacity() {
+		return buffer.length;
+	}
+}
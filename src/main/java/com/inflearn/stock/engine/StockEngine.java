@@ -0,0 +1,291 @@
+package com.inflearn.stock.engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.inflearn.stock.domain.StockEngineCheckpoint;
+import com.inflearn.stock.repository.StockEngineCheckpointRepository;
+import com.inflearn.stock.service.StockWriteBehindService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 재고를 메모리에서 관리하는 엔진이다.
+ * 요청은 stock id로 나눈 파티션의 ring buffer에 들어가고, 파티션마다 하나의 스레드가 Lock 없이 순서대로 처리한다.
+ * 변경은 memory-mapped journal에 기록되고 주기적으로 snapshot을 남기므로 재시작하면 snapshot과 journal로 복구한다.
+ * stock 테이블에는 flush()에서 모아둔 감소량을 비동기로 반영하고, 반영한 journal 위치를 같은 트랜잭션에 저장한다.
+ * 
+ * 엔진이 관리하는 Stock은 엔진을 통해서만 변경해야 하며, 한 서버에서만 실행해야 한다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stock.engine.enabled", havingValue = "true")
+public class StockEngine implements SmartLifecycle {
+
+	public static final long NOT_LOADED = -2;
+	
+	public static final long OUT_OF_STOCK = -1;
+	
+	private final StockWriteBehindService stockWriteBehindService;
+	
+	private final StockEngineCheckpointRepository stockEngineCheckpointRepository;
+	
+	private final TransactionTemplate transactionTemplate;
+	
+	private final int quarantineAfterFailures;
+	
+	private final StockEnginePartition[] partitions;
+	
+	// flush를 실행하는 스레드만 사용한다. DB에 아직 반영하지 못한 파티션별 감소량과 journal 위치
+	private final LongLongHashMap[] unflushedDeltas;
+	
+	private final long[] unflushedSeqs;
+	
+	private int consecutiveFailures;
+	
+	private final ReentrantLock flushLock = new ReentrantLock();
+	
+	private volatile boolean running;
+	
+	public StockEngine(StockWriteBehindService stockWriteBehindService, StockEngineCheckpointRepository stockEngineCheckpointRepository,
+			TransactionTemplate transactionTemplate,
+			@Value("${stock.engine.directory:./data/engine}") String directory,
+			@Value("${stock.engine.partitions:4}") int partitionCount,
+			@Value("${stock.engine.ring-capacity:65536}") int ringCapacity,
+			@Value("${stock.engine.segment-size-bytes:67108864}") int segmentSize,
+			@Value("${stock.engine.fsync:false}") boolean fsync,
+			@Value("${stock.engine.flush-interval-millis:1000}") long flushIntervalMillis,
+			@Value("${stock.engine.snapshot-interval-records:1000000}") long snapshotIntervalRecords,
+			@Value("${stock.engine.offer-timeout-millis:1000}") long offerTimeoutMillis,
+			@Value("${stock.engine.quarantine-after-failures:3}") int quarantineAfterFailures) throws IOException {
+		this.stockWriteBehindService = stockWriteBehindService;
+		this.stockEngineCheckpointRepository = stockEngineCheckpointRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.quarantineAfterFailures = quarantineAfterFailures;
+		this.partitions = new StockEnginePartition[partitionCount];
+		this.unflushedDeltas = new LongLongHashMap[partitionCount];
+		this.unflushedSeqs = new long[partitionCount];
+		
+		for(int i=0; i<partitionCount; i++) {
+			partitions[i] = new StockEnginePartition(i, Path.of(directory, "partition-" + i), ringCapacity, segmentSize, fsync,
+					flushIntervalMillis, snapshotIntervalRecords, offerTimeoutMillis);
+			unflushedDeltas[i] = new LongLongHashMap(1024);
+		}
+	}
+	
+	@Override
+	public void start() {
+		Map<Integer, Long> appliedSeqs = new HashMap<>();
+		stockEngineCheckpointRepository.findAll().forEach(checkpoint -> appliedSeqs.put(checkpoint.getPartitionNo(), checkpoint.getSeq()));
+		
+		try {
+			for(int i=0; i<partitions.length; i++) {
+				// 반영하지 못한 감소량은 journal에서 다시 읽어오므로 가지고 있던 것은 버린다.
+				unflushedDeltas[i].clear();
+				partitions[i].recover(appliedSeqs.getOrDefault(i, 0L));
+				unflushedSeqs[i] = partitions[i].getCheckpointSeq();
+				partitions[i].start();
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		running = true;
+	}
+	
+	@Override
+	public void stop() {
+		running = false;
+		
+		try {
+			for(StockEnginePartition partition : partitions) {
+				partition.stop();
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		// 종료하기 전에 남은 감소량을 DB에 반영한다. 실패하더라도 다음 실행에서 journal로 다시 반영한다.
+		flush();
+	}
+	
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+	
+	/**
+	 * 재고를 감소시키고 남은 수량을 반환한다. 재고가 부족하면 OUT_OF_STOCK, 엔진에 없는 Stock이면 NOT_LOADED를 반환한다.
+	 */
+	public long decrease(long id, long quantity) {
+		return partitionOf(id).execute(new EngineCommand(EngineCommand.Type.DECREASE, new long[] { id }, new long[] { quantity }));
+	}
+	
+	/**
+	 * 같은 파티션의 여러 Stock을 한 번에 감소시킨다. 하나라도 부족하면 아무것도 감소시키지 않는다.
+	 */
+	public long decreaseAll(long[] ids, long[] quantities) {
+		StockEnginePartition partition = partitionOf(ids[0]);
+		
+		for(long id : ids) {
+			if(partitionOf(id) != partition) {
+				throw new IllegalArgumentException("같은 파티션의 Stock만 한 번에 감소시킬 수 있습니다.");
+			}
+		}
+		
+		return partition.execute(new EngineCommand(EngineCommand.Type.DECREASE, ids, quantities));
+	}
+	
+	public long increase(long id, long quantity) {
+		return partitionOf(id).execute(new EngineCommand(EngineCommand.Type.INCREASE, new long[] { id }, new long[] { quantity }));
+	}
+	
+	/**
+	 * DB 수량을 직접 바꾼 만큼(예약, 적재) 엔진 수량만 바꾼다. 감소량을 남기지 않으므로 DB에는 다시 반영되지 않는다.
+	 * 엔진에 없는 Stock이면 NOT_LOADED를 반환하고, 나중에 적재할 때 바뀐 DB 수량을 읽는다.
+	 */
+	public long adjust(long id, long amount) {
+		return partitionOf(id).execute(new EngineCommand(EngineCommand.Type.ADJUST, new long[] { id }, new long[] { amount }));
+	}
+	
+	/**
+	 * 엔진에 없는 Stock이면 DB에서 읽은 수량을 적재한다. 이미 있다면 엔진의 수량이 더 최신이므로 덮어쓰지 않는다.
+	 */
+	public long load(long id, long quantity) {
+		return partitionOf(id).execute(new EngineCommand(EngineCommand.Type.LOAD, new long[] { id }, new long[] { quantity }));
+	}
+	
+	public long getQuantity(long id) {
+		return partitionOf(id).execute(new EngineCommand(EngineCommand.Type.GET, new long[] { id }, null));
+	}
+	
+	public int partitionIndexOf(long id) {
+		long hash = id * 0x9E3779B97F4A7C15L;
+		return (int) Math.floorMod(hash ^ (hash >>> 32), (long) partitions.length);
+	}
+	
+	/**
+	 * 파티션이 넘긴 감소량을 하나의 트랜잭션으로 DB에 반영하고, 반영한 journal 위치를 같은 트랜잭션에 저장한다.
+	 * 실패하면 감소량을 그대로 가지고 있다가 다음 flush에서 새 감소량과 합쳐서 다시 시도한다.
+	 * quarantine-after-failures번 연속으로 실패하면 Stock마다 따로 반영해보고, 실패하는 Stock의 감소량만 dead letter로 옮긴 뒤 나머지를 반영한다.
+	 */
+	public void flush() {
+		flushLock.lock();
+		
+		try {
+			Map<Long, Long> deltas = new HashMap<>();
+			boolean advanced = false;
+			
+			for(int i=0; i<partitions.length; i++) {
+				StockEnginePartition.FlushBatch batch;
+				
+				while((batch = partitions[i].pollFlushBatch()) != null) {
+					for(int j=0; j<batch.ids().length; j++) {
+						unflushedDeltas[i].add(batch.ids()[j], batch.deltas()[j]);
+					}
+					
+					unflushedSeqs[i] = batch.lastSeq();
+					advanced = true;
+				}
+				
+				unflushedDeltas[i].forEach((stockId, delta) -> deltas.merge(stockId, delta, Long::sum));
+			}
+			
+			if(!advanced && deltas.isEmpty()) {
+				return;
+			}
+			
+			try {
+				applyWithCheckpoints(deltas, Map.of());
+			} catch(RuntimeException e) {
+				if(++consecutiveFailures < quarantineAfterFailures) {
+					throw e;
+				}
+				
+				Map<Long, Long> rejected = findRejected(deltas);
+				
+				// 모든 Stock이 실패한다면 DB 장애일 수 있으므로 옮기지 않고 다시 시도한다.
+				if(rejected.isEmpty() || rejected.size() == deltas.size()) {
+					throw e;
+				}
+				
+				log.error("재고 엔진 DB 반영에 계속 실패하는 감소량을 dead letter로 옮깁니다. rejected={}", rejected, e);
+				rejected.keySet().forEach(deltas::remove);
+				applyWithCheckpoints(deltas, rejected);
+			}
+			
+			consecutiveFailures = 0;
+			
+			for(int i=0; i<partitions.length; i++) {
+				unflushedDeltas[i].clear();
+				
+				if(unflushedSeqs[i] > partitions[i].getCheckpointSeq()) {
+					partitions[i].setCheckpointSeq(unflushedSeqs[i]);
+					writeCheckpointFile(partitions[i], unflushedSeqs[i]);
+				}
+			}
+		} catch(RuntimeException e) {
+			log.error("재고 엔진 DB 반영 실패", e);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+	
+	private void applyWithCheckpoints(Map<Long, Long> deltas, Map<Long, Long> rejected) {
+		transactionTemplate.executeWithoutResult(status -> {
+			stockWriteBehindService.apply(deltas);
+			stockWriteBehindService.quarantine(rejected, null);
+			
+			for(int i=0; i<partitions.length; i++) {
+				if(unflushedSeqs[i] > partitions[i].getCheckpointSeq()) {
+					stockEngineCheckpointRepository.save(new StockEngineCheckpoint(i, unflushedSeqs[i]));
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Stock마다 따로 반영해보고 실패하는 감소량을 찾는다. 반영해본 트랜잭션은 모두 롤백한다.
+	 */
+	private Map<Long, Long> findRejected(Map<Long, Long> deltas) {
+		Map<Long, Long> rejected = new HashMap<>();
+		
+		deltas.forEach((stockId, delta) -> {
+			try {
+				transactionTemplate.executeWithoutResult(status -> {
+					stockWriteBehindService.apply(Map.of(stockId, delta));
+					status.setRollbackOnly();
+				});
+			} catch(RuntimeException e) {
+				rejected.put(stockId, delta);
+			}
+		});
+		
+		return rejected;
+	}
+	
+	/**
+	 * 반영한 위치는 이미 DB에 저장되었으므로 파일을 쓰지 못해도 재시작할 때 감소량을 다시 반영하지 않는다.
+	 */
+	private void writeCheckpointFile(StockEnginePartition partition, long seq) {
+		try {
+			StockEngineFiles.writeCheckpoint(partition.getDirectory(), seq);
+		} catch(IOException e) {
+			log.warn("재고 엔진 checkpoint 파일 저장 실패 : directory={}, seq={}", partition.getDirectory(), seq, e);
+		}
+	}
+	
+	private StockEnginePartition partitionOf(long id) {
+		return partitions[partitionIndexOf(id)];
+	}
+}
@@ -0,0 +1,92 @@
+package com.inflearn.stock.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 파티션의 snapshot과 DB 반영 위치(checkpoint)를 파일로 저장한다.
+ * 임시 파일에 기록한 뒤 이름을 바꾸므로 기록 중에 종료되어도 이전 파일이 그대로 남는다.
+ */
+final class StockEngineFiles {
+
+	private static final String SNAPSHOT = "snapshot.bin";
+	
+	private static final String CHECKPOINT = "checkpoint.bin";
+	
+	private StockEngineFiles() {
+	}
+	
+	/**
+	 * snapshot : [seq][count][stockId, quantity]...
+	 */
+	static void writeSnapshot(Path directory, long seq, LongLongHashMap quantities) throws IOException {
+		Path temp = directory.resolve(SNAPSHOT + ".tmp");
+		
+		try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			output.writeLong(seq);
+			output.writeInt(quantities.size());
+			
+			quantities.forEach((stockId, quantity) -> {
+				try {
+					output.writeLong(stockId);
+					output.writeLong(quantity);
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		
+		Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * snapshot을 quantities에 읽어오고 snapshot의 seq를 반환한다. snapshot이 없으면 0을 반환한다.
+	 */
+	static long readSnapshot(Path directory, LongLongHashMap quantities) throws IOException {
+		Path snapshot = directory.resolve(SNAPSHOT);
+		
+		if(!Files.exists(snapshot)) {
+			return 0;
+		}
+		
+		try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+			long seq = input.readLong();
+			int count = input.readInt();
+			
+			for(int i=0; i<count; i++) {
+				quantities.put(input.readLong(), input.readLong());
+			}
+			
+			return seq;
+		}
+	}
+	
+	static void writeCheckpoint(Path directory, long seq) throws IOException {
+		Path temp = directory.resolve(CHECKPOINT + ".tmp");
+		
+		try(DataOutputStream output = new DataOutputStream(Files.newOutputStream(temp))) {
+			output.writeLong(seq);
+		}
+		
+		Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	static long readCheckpoint(Path directory) throws IOException {
+		Path checkpoint = directory.resolve(CHECKPOINT);
+		
+		if(!Files.exists(checkpoint)) {
+			return 0;
+		}
+		
+		try(DataInputStream input = new DataInputStream(Files.newInputStream(checkpoint))) {
+			return input.readLong();
+		}
+	}
+}
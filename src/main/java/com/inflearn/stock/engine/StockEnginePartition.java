@@ -0,0 +1,380 @@
+package com.inflearn.stock.engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.inflearn.stock.limiter.ConcurrencyLimitExceededException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 하나의 스레드가 담당하는 재고 파티션이다.
+ * 이 파티션의 재고는 파티션 스레드만 읽고 쓰므로 Lock 없이 순서대로 처리된다.
+ * 처리한 변경은 journal에 기록하고, DB에 반영할 감소량은 모아두었다가 flush-interval마다 StockEngine에 넘긴다.
+ */
+@Slf4j
+final class StockEnginePartition implements Runnable {
+
+	private static final int BATCH_SIZE = 256;
+	
+	private static final int SPIN_TRIES = 100;
+	
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private final int index;
+	
+	private final Path directory;
+	
+	private final MpscRingBuffer<EngineCommand> ring;
+	
+	private final StockJournal journal;
+	
+	private final long flushIntervalNanos;
+	
+	private final long snapshotIntervalRecords;
+	
+	private final long offerTimeoutNanos;
+	
+	private final LongLongHashMap quantities = new LongLongHashMap(1024);
+	
+	// 마지막으로 넘긴 뒤 DB에 반영해야 할 id별 감소량
+	private final LongLongHashMap pendingDeltas = new LongLongHashMap(1024);
+	
+	private final EngineCommand[] processed = new EngineCommand[BATCH_SIZE];
+	
+	private final long[] results = new long[BATCH_SIZE];
+	
+	private final Queue<FlushBatch> flushBatches = new ConcurrentLinkedQueue<>();
+	
+	private long nextSeq;
+	
+	private long snapshotSeq;
+	
+	private long handedOffSeq;
+	
+	private long lastHandOffNanos;
+	
+	private long recordsSinceSnapshot;
+	
+	// StockEngine이 DB에 반영한 뒤 변경한다.
+	private volatile long checkpointSeq;
+	
+	private volatile boolean running;
+	
+	private volatile boolean parked;
+	
+	private Thread thread;
+	
+	StockEnginePartition(int index, Path directory, int ringCapacity, int segmentSize, boolean fsync,
+			long flushIntervalMillis, long snapshotIntervalRecords, long offerTimeoutMillis) throws IOException {
+		this.index = index;
+		this.directory = Files.createDirectories(directory);
+		this.ring = new MpscRingBuffer<>(ringCapacity);
+		this.journal = new StockJournal(this.directory, segmentSize, fsync);
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+		this.snapshotIntervalRecords = snapshotIntervalRecords;
+		this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+	}
+	
+	/**
+	 * snapshot을 읽고 그 이후의 journal을 다시 적용한다.
+	 * DB에 반영된 위치(checkpoint) 이후의 감소량은 다시 DB에 반영하도록 넘긴다.
+	 * checkpoint 파일은 DB commit 뒤에 쓰므로 쓰기 전에 종료되었을 수 있다. DB에 저장된 위치가 더 뒤라면 그 위치를 사용한다.
+	 */
+	void recover(long appliedSeq) throws IOException {
+		quantities.clear();
+		pendingDeltas.clear();
+		snapshotSeq = StockEngineFiles.readSnapshot(directory, quantities);
+		checkpointSeq = Math.max(StockEngineFiles.readCheckpoint(directory), appliedSeq);
+		
+		long[] lastSeq = { Math.max(snapshotSeq, checkpointSeq) };
+		
+		journal.replay((seq, stockId, delta, quantity) -> {
+			if(seq > snapshotSeq) {
+				quantities.put(stockId, quantity);
+			}
+			
+			if(seq > checkpointSeq) {
+				pendingDeltas.add(stockId, delta);
+			}
+			
+			lastSeq[0] = Math.max(lastSeq[0], seq);
+		});
+		
+		nextSeq = lastSeq[0] + 1;
+		handedOffSeq = checkpointSeq;
+		journal.open(nextSeq);
+		handOff();
+		
+		log.info("재고 엔진 파티션 복구 : partition={}, stocks={}, snapshotSeq={}, checkpointSeq={}, nextSeq={}",
+				index, quantities.size(), snapshotSeq, checkpointSeq, nextSeq);
+	}
+	
+	void start() {
+		running = true;
+		thread = Thread.ofPlatform().name("stock-engine-" + index).start(this);
+	}
+	
+	/**
+	 * 이미 받은 요청은 모두 처리하고, snapshot을 남긴 뒤 종료한다.
+	 */
+	void stop() throws InterruptedException {
+		running = false;
+		LockSupport.unpark(thread);
+		thread.join();
+	}
+	
+	boolean isAlive() {
+		return thread != null && thread.isAlive();
+	}
+	
+	void submit(EngineCommand command) {
+		if(!running) {
+			throw new IllegalStateException("재고 엔진이 실행 중이 아닙니다.");
+		}
+		
+		long deadline = System.nanoTime() + offerTimeoutNanos;
+		
+		while(!ring.offer(command)) {
+			// 파티션이 처리하는 속도보다 요청이 빠르게 들어오면 잠시 기다렸다가 다시 넣는다.
+			if(System.nanoTime() - deadline > 0) {
+				throw new ConcurrencyLimitExceededException("재고 엔진의 요청 큐가 가득 찼습니다. partition=" + index);
+			}
+			
+			LockSupport.parkNanos(1_000);
+		}
+		
+		if(parked) {
+			LockSupport.unpark(thread);
+		}
+	}
+	
+	long execute(EngineCommand command) {
+		submit(command);
+		return command.await(this);
+	}
+	
+	FlushBatch pollFlushBatch() {
+		return flushBatches.poll();
+	}
+	
+	long getCheckpointSeq() {
+		return checkpointSeq;
+	}
+	
+	void setCheckpointSeq(long checkpointSeq) {
+		this.checkpointSeq = checkpointSeq;
+	}
+	
+	Path getDirectory() {
+		return directory;
+	}
+	
+	@Override
+	public void run() {
+		int idleSpins = 0;
+		lastHandOffNanos = System.nanoTime();
+		
+		try {
+			while(running || !ring.isEmpty()) {
+				int count = drain();
+				
+				if(count > 0) {
+					idleSpins = 0;
+				} else if(++idleSpins < SPIN_TRIES) {
+					Thread.onSpinWait();
+				} else {
+					// 요청이 없으면 잠들고, 요청을 넣은 스레드가 깨운다. 놓친 신호가 있어도 PARK_NANOS 뒤에는 깨어난다.
+					parked = true;
+					
+					if(running && ring.isEmpty()) {
+						LockSupport.parkNanos(this, PARK_NANOS);
+					}
+					
+					parked = false;
+				}
+				
+				if(System.nanoTime() - lastHandOffNanos >= flushIntervalNanos) {
+					handOff();
+				}
+				
+				if(recordsSinceSnapshot >= snapshotIntervalRecords) {
+					takeSnapshot();
+				}
+			}
+			
+			handOff();
+			takeSnapshot();
+			journal.close();
+		} catch(IOException e) {
+			log.error("재고 엔진 파티션 journal 기록 실패 : partition={}", index, e);
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * 최대 BATCH_SIZE개의 요청을 처리하고 journal을 한 번에 commit한 뒤 결과를 돌려준다.
+	 */
+	private int drain() throws IOException {
+		int count = 0;
+		EngineCommand command;
+		
+		while(count < BATCH_SIZE && (command = ring.poll()) != null) {
+			processed[count] = command;
+			results[count] = apply(command);
+			count++;
+		}
+		
+		if(count == 0) {
+			return 0;
+		}
+		
+		journal.commit();
+		
+		for(int i=0; i<count; i++) {
+			processed[i].complete(results[i]);
+			processed[i] = null;
+		}
+		
+		return count;
+	}
+	
+	private long apply(EngineCommand command) throws IOException {
+		switch(command.type) {
+			case GET:
+				return quantities.get(command.ids[0], StockEngine.NOT_LOADED);
+			case LOAD:
+				return load(command.ids[0], command.quantities[0]);
+			case DECREASE:
+				return decrease(command.ids, command.quantities);
+			case INCREASE:
+				return increase(command.ids[0], command.quantities[0]);
+			case ADJUST:
+				return adjust(command.ids[0], command.quantities[0]);
+			default:
+				throw new IllegalArgumentException("알 수 없는 요청입니다. type=" + command.type);
+		}
+	}
+	
+	private long load(long stockId, long quantity) throws IOException {
+		if(!quantities.containsKey(stockId)) {
+			quantities.put(stockId, quantity);
+			append(stockId, 0, quantity);
+		}
+		
+		return quantities.get(stockId, StockEngine.NOT_LOADED);
+	}
+	
+	/**
+	 * 모든 재고를 확인한 다음에 감소시키므로 여러 Stock을 감소시켜도 일부만 반영되지 않는다. 첫 번째 Stock의 남은 수량을 반환한다.
+	 */
+	private long decrease(long[] ids, long[] amounts) throws IOException {
+		for(int i=0; i<ids.length; i++) {
+			long quantity = quantities.get(ids[i], StockEngine.NOT_LOADED);
+			
+			if(quantity == StockEngine.NOT_LOADED) {
+				return StockEngine.NOT_LOADED;
+			}
+			
+			if(quantity < amounts[i]) {
+				return StockEngine.OUT_OF_STOCK;
+			}
+		}
+		
+		long remaining = 0;
+		
+		for(int i=ids.length-1; i>=0; i--) {
+			remaining = quantities.get(ids[i], 0) - amounts[i];
+			quantities.put(ids[i], remaining);
+			pendingDeltas.add(ids[i], amounts[i]);
+			append(ids[i], amounts[i], remaining);
+		}
+		
+		return remaining;
+	}
+	
+	private long increase(long stockId, long amount) throws IOException {
+		long quantity = quantities.get(stockId, StockEngine.NOT_LOADED);
+		
+		if(quantity == StockEngine.NOT_LOADED) {
+			return StockEngine.NOT_LOADED;
+		}
+		
+		quantities.put(stockId, quantity + amount);
+		pendingDeltas.add(stockId, -amount); // DB에는 음수 감소량으로 반영된다.
+		append(stockId, -amount, quantity + amount);
+		return quantity + amount;
+	}
+	
+	/**
+	 * DB에 이미 반영된 변경(예약, 적재)을 엔진 수량에만 반영한다.
+	 * journal에는 감소량 0으로 남기므로 복구할 때도 DB에 다시 반영하지 않는다.
+	 */
+	private long adjust(long stockId, long amount) throws IOException {
+		long quantity = quantities.get(stockId, StockEngine.NOT_LOADED);
+		
+		if(quantity == StockEngine.NOT_LOADED) {
+			return StockEngine.NOT_LOADED;
+		}
+		
+		quantities.put(stockId, quantity + amount);
+		append(stockId, 0, quantity + amount);
+		return quantity + amount;
+	}
+	
+	private void append(long stockId, long delta, long quantity) throws IOException {
+		journal.append(nextSeq++, stockId, delta, quantity);
+		recordsSinceSnapshot++;
+	}
+	
+	/**
+	 * 모아둔 감소량을 StockEngine에 넘긴다. 감소량이 없더라도 journal이 진행되었다면 checkpoint를 옮길 수 있도록 넘긴다.
+	 */
+	private void handOff() throws IOException {
+		lastHandOffNanos = System.nanoTime();
+		long lastSeq = nextSeq - 1;
+		
+		if(lastSeq == handedOffSeq) {
+			return;
+		}
+		
+		long[] ids = new long[pendingDeltas.size()];
+		long[] deltas = new long[pendingDeltas.size()];
+		int[] count = { 0 };
+		
+		pendingDeltas.forEach((stockId, delta) -> {
+			ids[count[0]] = stockId;
+			deltas[count[0]] = delta;
+			count[0]++;
+		});
+		
+		flushBatches.offer(new FlushBatch(ids, deltas, lastSeq));
+		pendingDeltas.clear();
+		handedOffSeq = lastSeq;
+		
+		// DB에 반영된 만큼 snapshot에 포함된 journal은 지운다.
+		journal.truncate(Math.min(snapshotSeq, checkpointSeq));
+	}
+	
+	private void takeSnapshot() throws IOException {
+		long lastSeq = nextSeq - 1;
+		
+		if(lastSeq == snapshotSeq) {
+			return;
+		}
+		
+		StockEngineFiles.writeSnapshot(directory, lastSeq, quantities);
+		snapshotSeq = lastSeq;
+		recordsSinceSnapshot = 0;
+		journal.truncate(Math.min(snapshotSeq, checkpointSeq));
+	}
+	
+	record FlushBatch(long[] ids, long[] deltas, long lastSeq) {
+	}
+}
@@ -0,0 +1,154 @@
+package com.inflearn.stock.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * 파티션에서 적용한 변경을 순서대로 기록하는 append-only 파일이다.
+ * 일정 크기의 segment 파일을 memory-mapped 방식으로 열어두고 기록하므로 기록할 때마다 system call이 일어나지 않는다.
+ * 프로세스가 종료되어도 기록한 내용은 page cache에 남아 있으며, 서버 장애까지 대비하려면 fsync를 켠다.
+ * 
+ * 레코드 : [seq][stockId][delta][quantity] (long 4개, 32 byte)
+ * seq를 마지막에 기록하므로 seq가 0인 레코드는 끝까지 기록되지 않은 것이다.
+ */
+final class StockJournal implements Closeable {
+
+	static final int RECORD_SIZE = 32;
+	
+	private static final String PREFIX = "journal-";
+	
+	private static final String SUFFIX = ".log";
+	
+	private final Path directory;
+	
+	private final int segmentSize;
+	
+	private final boolean fsync;
+	
+	// segment의 첫 seq -> 파일
+	private final TreeMap<Long, Path> segments = new TreeMap<>();
+	
+	private FileChannel channel;
+	
+	private MappedByteBuffer buffer;
+	
+	private int position;
+	
+	StockJournal(Path directory, int segmentSize, boolean fsync) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize - segmentSize % RECORD_SIZE;
+		this.fsync = fsync;
+		
+		try(Stream<Path> files = Files.list(directory)) {
+			files.filter(file -> file.getFileName().toString().startsWith(PREFIX))
+				.forEach(file -> segments.put(parseFirstSeq(file), file));
+		}
+	}
+	
+	/**
+	 * 남아 있는 모든 레코드를 기록된 순서대로 전달한다.
+	 */
+	void replay(RecordConsumer consumer) throws IOException {
+		for(Path segment : segments.values()) {
+			try(FileChannel readChannel = FileChannel.open(segment, StandardOpenOption.READ)) {
+				MappedByteBuffer readBuffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+				
+				for(int offset=0; offset + RECORD_SIZE <= readBuffer.limit(); offset += RECORD_SIZE) {
+					long seq = readBuffer.getLong(offset);
+					
+					if(seq == 0) {
+						break;
+					}
+					
+					consumer.accept(seq, readBuffer.getLong(offset + 8), readBuffer.getLong(offset + 16), readBuffer.getLong(offset + 24));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * nextSeq부터 기록할 새 segment를 연다. 복구한 뒤에는 이전 segment에 이어 쓰지 않는다.
+	 */
+	void open(long nextSeq) throws IOException {
+		roll(nextSeq);
+	}
+	
+	void append(long seq, long stockId, long delta, long quantity) throws IOException {
+		if(position + RECORD_SIZE > segmentSize) {
+			roll(seq);
+		}
+		
+		buffer.putLong(position + 8, stockId);
+		buffer.putLong(position + 16, delta);
+		buffer.putLong(position + 24, quantity);
+		buffer.putLong(position, seq);
+		position += RECORD_SIZE;
+	}
+	
+	/**
+	 * 한 번에 처리한 요청의 기록을 마칠 때 호출한다.
+	 */
+	void commit() {
+		if(fsync) {
+			buffer.force();
+		}
+	}
+	
+	/**
+	 * 모든 레코드의 seq가 upToSeq 이하인 segment를 지운다. 기록 중인 segment는 지우지 않는다.
+	 */
+	void truncate(long upToSeq) throws IOException {
+		Map.Entry<Long, Path> segment = segments.firstEntry();
+		
+		while(segment != null) {
+			Map.Entry<Long, Path> next = segments.higherEntry(segment.getKey());
+			
+			if(next == null || next.getKey() - 1 > upToSeq) {
+				return;
+			}
+			
+			Files.deleteIfExists(segment.getValue());
+			segments.remove(segment.getKey());
+			segment = next;
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if(channel != null) {
+			buffer.force();
+			channel.close();
+			channel = null;
+		}
+	}
+	
+	private void roll(long firstSeq) throws IOException {
+		close();
+		
+		// 같은 이름의 segment가 있다면 firstSeq 이후의 레코드가 없는 segment이므로 비우고 다시 사용한다.
+		Path segment = directory.resolve(String.format("%s%020d%s", PREFIX, firstSeq, SUFFIX));
+		channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		position = 0;
+		segments.put(firstSeq, segment);
+	}
+	
+	private static long parseFirstSeq(Path file) {
+		String name = file.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+	}
+	
+	@FunctionalInterface
+	interface RecordConsumer {
+		
+		void accept(long seq, long stockId, long delta, long quantity);
+	}
+}
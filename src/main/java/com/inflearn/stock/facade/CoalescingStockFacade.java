@@ -0,0 +1,220 @@
+package com.inflearn.stock.facade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.service.CoalescingStockService;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+
+/**
+ * 같은 Stock에 대한 동시 요청을 모아서 하나의 트랜잭션으로 처리한다.
+ * 요청은 id별 큐에 쌓이고, 큐의 combiner lock을 잡은 스레드가 짧은 시간(window) 동안 요청을 모은 뒤
+ * 최대 maxBatchSize개까지 한 번에 처리하고 각 요청자에게 결과를 돌려준다.
+ * 처리를 마친 combiner는 큐가 비어 있으면 큐를 정리하므로 한 번이라도 요청된 모든 Stock의 큐가 남아 있지 않는다.
+ */
+@Component
+public class CoalescingStockFacade implements StockDecreaseStrategy {
+
+	private final CoalescingStockService coalescingStockService;
+	
+	private final long windowMillis;
+	
+	private final int maxBatchSize;
+	
+	private final SoldOutRegistry soldOutRegistry;
+	
+	private final ConcurrentHashMap<Long, PendingQueue> queues = new ConcurrentHashMap<>();
+
+	public CoalescingStockFacade(CoalescingStockService coalescingStockService, SoldOutRegistry soldOutRegistry,
+			@Value("${stock.coalescing.window-millis:5}") long windowMillis,
+			@Value("${stock.coalescing.max-batch-size:100}") int maxBatchSize) {
+		this.coalescingStockService = coalescingStockService;
+		this.windowMillis = windowMillis;
+		this.maxBatchSize = maxBatchSize;
+		this.soldOutRegistry = soldOutRegistry;
+	}
+	
+	@Override
+	public String getName() {
+		return "coalescing";
+	}
+	
+	@Override
+	public void decrease(Long id, Long quantity) throws InterruptedException {
+		soldOutRegistry.throwIfSoldOut(getName(), id); // 품절된 Stock이라면 요청을 큐에 넣지 않고 바로 거절한다.
+		
+		PendingDecrease request = new PendingDecrease(quantity);
+		PendingQueue queue;
+		
+		while(true) {
+			queue = queues.computeIfAbsent(id, key -> new PendingQueue());
+			queue.requests.offer(request);
+			
+			// 이미 정리된 큐에 넣었다면 다른 요청과 모이지 않으므로 새 큐에 다시 넣는다. 그 사이 다른 스레드가 가져갔다면 그대로 결과를 기다린다.
+			if(!queue.retired || !queue.requests.remove(request)) {
+				break;
+			}
+		}
+		
+		try {
+			while(!request.result.isDone()) {
+				if(queue.combiner.tryLock()) {
+					try {
+						if(!request.result.isDone()) {
+							combine(id, queue);
+						}
+					} finally {
+						retireIfIdle(id, queue);
+						queue.combiner.unlock();
+					}
+				} else {
+					awaitResult(request);
+				}
+			}
+		} catch(InterruptedException e) {
+			if(queue.requests.remove(request)) {
+				// 아직 배치에 포함되지 않았다면 요청을 취소한다. 다른 요청이 없다면 큐도 정리한다.
+				if(queue.combiner.tryLock()) {
+					try {
+						retireIfIdle(id, queue);
+					} finally {
+						queue.combiner.unlock();
+					}
+				}
+				
+				throw e;
+			}
+			
+			// 이미 배치에 포함된 요청은 결과가 나올 때까지 기다린 뒤 인터럽트 상태를 복구한다.
+			waitUninterruptibly(request);
+			Thread.currentThread().interrupt();
+		}
+		
+		if(!request.getResult()) {
+			throw new OutOfStockException();
+		}
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		coalescingStockService.decreaseAll(quantities);
+	}
+	
+	private void combine(Long id, PendingQueue queue) throws InterruptedException {
+		if(windowMillis > 0 && queue.requests.size() < maxBatchSize) {
+			Thread.sleep(windowMillis); // 같은 id에 대한 요청이 더 모일 수 있도록 잠시 기다린다.
+		}
+		
+		List<PendingDecrease> batch = new ArrayList<>();
+		PendingDecrease pending;
+		
+		while(batch.size() < maxBatchSize && (pending = queue.requests.poll()) != null) {
+			batch.add(pending);
+		}
+		
+		if(batch.isEmpty()) {
+			return;
+		}
+		
+		List<Long> quantities = new ArrayList<>(batch.size());
+		
+		for(PendingDecrease request : batch) {
+			quantities.add(request.quantity);
+		}
+		
+		try {
+			List<Boolean> results = coalescingStockService.decrease(id, quantities);
+			
+			for(int i=0; i<batch.size(); i++) {
+				batch.get(i).result.complete(results.get(i));
+			}
+		} catch(RuntimeException e) {
+			for(PendingDecrease request : batch) {
+				request.result.completeExceptionally(e);
+			}
+		}
+	}
+	
+	/**
+	 * combiner lock을 잡은 상태에서 호출한다. 큐가 비어 있으면 map에서 제거하여 더 이상 요청되지 않는 Stock의 큐가 쌓이지 않도록 한다.
+	 * 제거한 뒤에 큐에 들어온 요청은 요청한 스레드가 다시 새 큐에 넣거나 직접 combiner가 되어 처리한다.
+	 */
+	private void retireIfIdle(Long id, PendingQueue queue) {
+		if(queue.requests.isEmpty()) {
+			queue.retired = true;
+			queues.remove(id, queue);
+		}
+	}
+	
+	int getQueueCount() {
+		return queues.size();
+	}
+	
+	private void awaitResult(PendingDecrease request) throws InterruptedException {
+		try {
+			request.result.get(windowMillis + 1, TimeUnit.MILLISECONDS);
+		} catch(TimeoutException | ExecutionException e) {
+			// 결과가 아직 없거나 실패한 경우 루프에서 다시 확인한다.
+		}
+	}
+	
+	private void waitUninterruptibly(PendingDecrease request) {
+		try {
+			request.result.join();
+		} catch(CompletionException e) {
+			// 실패 결과는 getResult에서 다시 던진다.
+		}
+	}
+	
+	private static final class PendingQueue {
+		
+		private final Queue<PendingDecrease> requests = new ConcurrentLinkedQueue<>();
+		
+		private final ReentrantLock combiner = new ReentrantLock();
+		
+		private volatile boolean retired;
+	}
+	
+	private static final class PendingDecrease {
+		
+		private final Long quantity;
+		
+		private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+		
+		private PendingDecrease(Long quantity) {
+			this.quantity = quantity;
+		}
+		
+		private boolean getResult() {
+			try {
+				return result.get();
+			} catch(ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException runtimeException) {
+					throw runtimeException;
+				}
+				
+				throw new RuntimeException(e.getCause());
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
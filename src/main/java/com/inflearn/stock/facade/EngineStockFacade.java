@@ -0,0 +1,130 @@
+package com.inflearn.stock.facade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.datasource.ReadYourWrites;
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockAdjustedEvent;
+import com.inflearn.stock.engine.StockEngine;
+import com.inflearn.stock.ledger.StockLedgerContext;
+import com.inflearn.stock.metrics.StockMetrics;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+
+/**
+ * 재고를 StockEngine에서 감소시킨다. DB에는 StockEngine이 비동기로 반영한다.
+ * 엔진에 아직 없는 Stock은 DB에서 읽어서 적재한 뒤 다시 시도한다.
+ * 예약이나 적재처럼 DB 수량을 직접 바꾼 변경은 StockAdjustedEvent로 받아서 엔진 수량에도 같은 만큼 반영한다.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.engine.enabled", havingValue = "true")
+public class EngineStockFacade implements StockDecreaseStrategy {
+
+	private final StockEngine stockEngine;
+	
+	private final StockRepository stockRepository;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final SoldOutRegistry soldOutRegistry;
+	
+	public EngineStockFacade(StockEngine stockEngine, StockRepository stockRepository, StockMetrics stockMetrics, SoldOutRegistry soldOutRegistry) {
+		this.stockEngine = stockEngine;
+		this.stockRepository = stockRepository;
+		this.stockMetrics = stockMetrics;
+		this.soldOutRegistry = soldOutRegistry;
+	}
+	
+	@Override
+	public String getName() {
+		return "engine";
+	}
+	
+	@Override
+	public void decrease(Long id, Long quantity) {
+		soldOutRegistry.throwIfSoldOut(getName(), id); // 품절된 Stock이라면 파티션에 요청을 보내지 않고 바로 거절한다.
+		
+		long result = stockEngine.decrease(id, quantity);
+		
+		if(result == StockEngine.NOT_LOADED) {
+			load(id);
+			result = stockEngine.decrease(id, quantity);
+		}
+		
+		if(result == StockEngine.OUT_OF_STOCK) {
+			stockMetrics.incrementOutOfStock(getName(), id);
+			throw new OutOfStockException();
+		}
+		
+		StockLedgerContext.reportRemaining(result);
+		
+		if(result == 0) {
+			soldOutRegistry.markSoldOut(id); // 엔진의 수량이 기준이므로 DB에 반영되기 전이라도 품절로 등록한다.
+		}
+	}
+	
+	/**
+	 * 파티션별로 나누어 감소시킨다. 한 파티션 안에서는 전부 감소시키거나 아무것도 감소시키지 않고,
+	 * 여러 파티션에 걸친 경우에는 뒤의 파티션에서 실패하면 앞에서 감소시킨 재고를 다시 더해서 되돌린다.
+	 */
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		Map<Integer, Map<Long, Long>> groups = new TreeMap<>();
+		
+		for(Map.Entry<Long, Long> entry : quantities.entrySet()) {
+			groups.computeIfAbsent(stockEngine.partitionIndexOf(entry.getKey()), key -> new TreeMap<>()).put(entry.getKey(), entry.getValue());
+		}
+		
+		List<Map<Long, Long>> applied = new ArrayList<>();
+		
+		try {
+			for(Map<Long, Long> group : groups.values()) {
+				decreaseGroup(group);
+				applied.add(group);
+			}
+		} catch(RuntimeException e) {
+			for(Map<Long, Long> group : applied) {
+				group.forEach(stockEngine::increase);
+			}
+			
+			throw e;
+		}
+	}
+	
+	private void decreaseGroup(Map<Long, Long> group) {
+		long[] ids = group.keySet().stream().mapToLong(Long::longValue).toArray();
+		long[] amounts = group.values().stream().mapToLong(Long::longValue).toArray();
+		long result = stockEngine.decreaseAll(ids, amounts);
+		
+		if(result == StockEngine.NOT_LOADED) {
+			group.keySet().forEach(this::load);
+			result = stockEngine.decreaseAll(ids, amounts);
+		}
+		
+		if(result == StockEngine.OUT_OF_STOCK) {
+			stockMetrics.incrementOutOfStock(getName(), null);
+			throw new OutOfStockException();
+		}
+	}
+	
+	private void load(Long id) {
+		Stock stock = ReadYourWrites.call(() -> stockRepository.findById(id).orElseThrow());
+		stockEngine.load(id, stock.getQuantity());
+	}
+	
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onAdjusted(StockAdjustedEvent event) {
+		event.increases().forEach((id, increase) -> stockEngine.adjust(id, increase));
+	}
+}
@@ -0,0 +1,319 @@
+package com.inflearn.stock.facade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.ledger.StockLedgerContext;
+import com.inflearn.stock.lock.StripedLock;
+import com.inflearn.stock.metrics.StockMetrics;
+import com.inflearn.stock.service.StockService;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+
+/**
+ * JVM 안의 Lock과 분산 Lock을 함께 사용한다.
+ * 먼저 id별 로컬 Lock(StripedLock)을 잡은 스레드 하나만 Redisson Lock을 시도하므로, 한 서버에 같은 Stock 요청이 몰려도 Redis에는 서버당 한 요청만 전달된다.
+ * batch-enabled가 켜져 있으면 분산 Lock을 잡은 스레드가 같은 서버에서 기다리던 요청을 Lock을 놓지 않고 차례대로 처리한다.
+ * 분산 Lock의 이름과 종류(stock.redisson-lock.fair)는 RedissonLockStockFacade와 같으므로 두 방식을 섞어서 사용해도 서로 배제된다.
+ * 분산 Lock을 잡은 뒤에도 품절을 다시 확인하므로, 앞선 요청이 마지막 재고를 가져갔다면 기다리던 요청은 DB를 조회하지 않고 실패한다.
+ * 요청을 모두 처리한 큐는 로컬 Lock을 잡은 상태에서 정리하므로 한 번이라도 요청된 모든 Stock의 큐가 남아 있지 않는다.
+ * 다른 스레드의 요청은 그 요청의 재고 변경 기록(StockLedgerContext)으로 처리하므로 감소 후 수량은 요청한 감소의 기록에 남는다.
+ */
+@Component
+public class HybridLockStockFacade implements StockDecreaseStrategy {
+
+	// 로컬 Lock을 기다리는 동안 다른 스레드가 자신의 요청을 처리했는지 확인하는 주기
+	private static final long POLL_MILLIS = 10;
+	
+	private final RedissonClient redissonClient;
+	
+	private final StockService stockService;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final StripedLock stripedLock;
+	
+	private final boolean batchEnabled;
+	
+	private final int maxBatchSize;
+	
+	private final long waitTimeoutMillis;
+	
+	private final boolean fair;
+	
+	private final SoldOutRegistry soldOutRegistry;
+	
+	private final ConcurrentHashMap<Long, PendingQueue> queues = new ConcurrentHashMap<>();
+	
+	public HybridLockStockFacade(RedissonClient redissonClient, StockService stockService, StockMetrics stockMetrics, SoldOutRegistry soldOutRegistry,
+			@Value("${stock.hybrid-lock.stripes:1024}") int stripes,
+			@Value("${stock.hybrid-lock.batch-enabled:true}") boolean batchEnabled,
+			@Value("${stock.hybrid-lock.max-batch-size:100}") int maxBatchSize,
+			@Value("${stock.hybrid-lock.wait-timeout-millis:15000}") long waitTimeoutMillis,
+			@Value("${stock.redisson-lock.fair:false}") boolean fair) {
+		this.redissonClient = redissonClient;
+		this.stockService = stockService;
+		this.stockMetrics = stockMetrics;
+		this.stripedLock = new StripedLock(stripes);
+		this.batchEnabled = batchEnabled;
+		this.maxBatchSize = maxBatchSize;
+		this.waitTimeoutMillis = waitTimeoutMillis;
+		this.fair = fair;
+		this.soldOutRegistry = soldOutRegistry;
+	}
+	
+	@Override
+	public String getName() {
+		return "hybrid-lock";
+	}
+	
+	@Override
+	public void decrease(Long id, Long quantity) throws InterruptedException {
+		soldOutRegistry.throwIfSoldOut(getName(), id);
+		
+		PendingDecrease request = new PendingDecrease(quantity);
+		PendingQueue queue;
+		
+		while(true) {
+			queue = queues.computeIfAbsent(id, key -> new PendingQueue());
+			queue.requests.offer(request);
+			
+			// 이미 정리된 큐에 넣었다면 다른 요청과 모이지 않으므로 새 큐에 다시 넣는다. 그 사이 다른 스레드가 가져갔다면 그대로 결과를 기다린다.
+			if(!queue.retired || !queue.requests.remove(request)) {
+				break;
+			}
+		}
+		
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeoutMillis);
+		ReentrantLock localLock = stripedLock.get(id);
+		
+		try {
+			while(!request.result.isDone()) {
+				if(localLock.tryLock(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					try {
+						if(!request.result.isDone()) {
+							decreaseWithRemoteLock(id, queue.requests, request, deadline);
+						}
+					} finally {
+						retireIfIdle(id, queue);
+						localLock.unlock();
+					}
+				} else if(System.nanoTime() - deadline > 0 && queue.requests.remove(request)) {
+					tryRetire(id, queue, localLock);
+					stockMetrics.incrementLockTimeout(getName(), id);
+					throw new CannotAcquireLockException("lock 획득 실패 : " + id);
+				}
+			}
+		} catch(InterruptedException e) {
+			if(queue.requests.remove(request)) {
+				tryRetire(id, queue, localLock);
+				throw e; // 아직 다른 스레드가 가져가지 않았다면 요청을 취소한다.
+			}
+			
+			// 이미 다른 스레드가 처리 중인 요청은 결과가 나올 때까지 기다린 뒤 인터럽트 상태를 복구한다.
+			waitUninterruptibly(request);
+			Thread.currentThread().interrupt();
+		}
+		
+		request.getResult();
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) throws InterruptedException {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeoutMillis);
+		List<ReentrantLock> localLocks = new ArrayList<>();
+		
+		try {
+			// 여러 요청이 서로의 Lock을 기다리지 않도록 로컬 Lock은 id 순서가 아니라 Lock 번호 순서대로 잡는다.
+			for(ReentrantLock localLock : stripedLock.getAll(quantities.keySet())) {
+				if(!localLock.tryLock(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+					stockMetrics.incrementLockTimeout(getName(), null);
+					throw new CannotAcquireLockException("lock 획득 실패 : " + quantities.keySet());
+				}
+				
+				localLocks.add(localLock);
+			}
+			
+			RLock[] locks = new TreeSet<>(quantities.keySet()).stream()
+					.map(this::getRemoteLock)
+					.toArray(RLock[]::new);
+			RLock multiLock = redissonClient.getMultiLock(locks);
+			
+			if(!multiLock.tryLock(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+				stockMetrics.incrementLockTimeout(getName(), null);
+				throw new CannotAcquireLockException("lock 획득 실패 : " + quantities.keySet());
+			}
+			
+			try {
+				soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet()); // Lock을 기다리는 동안 품절되었다면 DB를 조회하지 않는다.
+				stockService.decreaseAll(quantities);
+			} finally {
+				multiLock.unlock();
+			}
+		} finally {
+			for(int i=localLocks.size()-1; i>=0; i--) {
+				localLocks.get(i).unlock();
+			}
+		}
+	}
+	
+	/**
+	 * 로컬 Lock을 잡은 상태에서 분산 Lock을 잡고 요청을 처리한다.
+	 * 여러 요청을 이어서 처리할 수 있으므로 leaseTime을 정하지 않고 Redisson watchdog이 Lock을 연장하도록 한다.
+	 */
+	private void decreaseWithRemoteLock(Long id, Queue<PendingDecrease> queue, PendingDecrease request, long deadline) throws InterruptedException {
+		RLock lock = getRemoteLock(id);
+		
+		StockMetrics.Stopwatch lockWait = stockMetrics.startLockWait(getName(), id);
+		boolean available;
+		
+		try {
+			available = lock.tryLock(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+		} finally {
+			lockWait.stop();
+		}
+		
+		if(!available) {
+			// 자신의 요청만 실패시키고, 큐에 남은 요청은 각자의 대기 시간 안에서 다시 시도한다.
+			if(queue.remove(request)) {
+				stockMetrics.incrementLockTimeout(getName(), id);
+				request.result.completeExceptionally(new CannotAcquireLockException("lock 획득 실패 : " + id));
+			}
+			
+			return;
+		}
+		
+		StockMetrics.Stopwatch lockHold = stockMetrics.startLockHold(getName(), id);
+		
+		try {
+			if(!batchEnabled) {
+				if(queue.remove(request)) {
+					execute(id, request);
+				}
+				
+				return;
+			}
+			
+			// 분산 Lock을 놓지 않고 같은 서버에서 기다리던 요청을 이어서 처리한다. 각 요청은 각자의 트랜잭션으로 처리된다.
+			PendingDecrease pending;
+			int processed = 0;
+			
+			while(processed < maxBatchSize && (pending = queue.poll()) != null) {
+				execute(id, pending);
+				processed++;
+			}
+		} finally {
+			lock.unlock();
+			lockHold.stop();
+		}
+	}
+	
+	private void execute(Long id, PendingDecrease request) {
+		try {
+			soldOutRegistry.throwIfSoldOut(getName(), id); // 앞서 처리한 요청이 마지막 재고를 가져갔다면 DB를 조회하지 않고 실패시킨다.
+			StockLedgerContext.runIn(request.ledgerFrame, () -> stockService.decrease(id, request.quantity));
+			request.result.complete(null);
+		} catch(RuntimeException e) {
+			request.result.completeExceptionally(e);
+		}
+	}
+	
+	/**
+	 * 로컬 Lock을 잡은 상태에서 호출한다. 큐가 비어 있으면 map에서 제거하여 더 이상 요청되지 않는 Stock의 큐가 쌓이지 않도록 한다.
+	 * 제거한 뒤에 큐에 들어온 요청은 요청한 스레드가 다시 새 큐에 넣거나 직접 로컬 Lock을 잡고 처리한다.
+	 */
+	private void retireIfIdle(Long id, PendingQueue queue) {
+		if(queue.requests.isEmpty()) {
+			queue.retired = true;
+			queues.remove(id, queue);
+		}
+	}
+	
+	// 요청을 취소한 뒤 다른 요청이 없다면 큐도 정리한다. 로컬 Lock을 잡은 스레드가 있다면 그 스레드가 정리한다.
+	private void tryRetire(Long id, PendingQueue queue, ReentrantLock localLock) {
+		if(localLock.tryLock()) {
+			try {
+				retireIfIdle(id, queue);
+			} finally {
+				localLock.unlock();
+			}
+		}
+	}
+	
+	int getQueueCount() {
+		return queues.size();
+	}
+	
+	private long remainingMillis(long deadline) {
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+	}
+	
+	/**
+	 * 같은 이름을 fair lock과 일반 lock으로 함께 잡으면 서로 배제되지 않으므로 RedissonLockStockFacade와 같은 종류를 사용한다.
+	 */
+	private RLock getRemoteLock(Long id) {
+		return fair ? redissonClient.getFairLock(id.toString()) : redissonClient.getLock(id.toString());
+	}
+	
+	private void waitUninterruptibly(PendingDecrease request) {
+		try {
+			request.result.join();
+		} catch(CompletionException e) {
+			// 실패 결과는 getResult에서 다시 던진다.
+		}
+	}
+	
+	private static final class PendingQueue {
+		
+		private final Queue<PendingDecrease> requests = new ConcurrentLinkedQueue<>();
+		
+		private volatile boolean retired;
+	}
+	
+	private static final class PendingDecrease {
+		
+		private final Long quantity;
+		
+		// 요청한 스레드에서 만들어지므로 요청한 감소의 기록을 가리킨다.
+		private final StockLedgerContext.Frame ledgerFrame = StockLedgerContext.current();
+		
+		private final CompletableFuture<Void> result = new CompletableFuture<>();
+		
+		private PendingDecrease(Long quantity) {
+			this.quantity = quantity;
+		}
+		
+		private void getResult() {
+			try {
+				result.get();
+			} catch(ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException runtimeException) {
+					throw runtimeException;
+				}
+				
+				throw new RuntimeException(e.getCause());
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
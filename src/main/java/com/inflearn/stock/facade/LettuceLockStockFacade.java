@@ -1,31 +1,93 @@
 package com.inflearn.stock.facade;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.stereotype.Component;
 
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.metrics.StockMetrics;
 import com.inflearn.stock.repository.RedisLockRepository;
 import com.inflearn.stock.service.StockService;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
 
 @Component
-public class LettuceLockStockFacade {
+public class LettuceLockStockFacade implements StockDecreaseStrategy {
 
 	private final RedisLockRepository redisLockRepository;
 	
 	private final StockService stockService;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final Duration waitTimeout;
+	
+	private final SoldOutRegistry soldOutRegistry;
 
-	public LettuceLockStockFacade(RedisLockRepository redisLockRepository, StockService stockService) {
+	public LettuceLockStockFacade(RedisLockRepository redisLockRepository, StockService stockService, StockMetrics stockMetrics, SoldOutRegistry soldOutRegistry,
+			@Value("${stock.lettuce-lock.wait-timeout-millis:15000}") long waitTimeoutMillis) {
 		this.redisLockRepository = redisLockRepository;
 		this.stockService = stockService;
+		this.stockMetrics = stockMetrics;
+		this.waitTimeout = Duration.ofMillis(waitTimeoutMillis);
+		this.soldOutRegistry = soldOutRegistry;
 	}
 	
+	@Override
+	public String getName() {
+		return "lettuce-lock";
+	}
+	
+	@Override
 	public void decrease(Long id, Long quantity) throws InterruptedException {
-		while(!redisLockRepository.lock(id)) {
-			Thread.sleep(100);
+		soldOutRegistry.throwIfSoldOut(getName(), id);
+		
+		StockMetrics.Stopwatch lockWait = stockMetrics.startLockWait(getName(), id);
+		String token = redisLockRepository.tryLock(id, waitTimeout);
+		lockWait.stop();
+		
+		if(token == null) {
+			stockMetrics.incrementLockTimeout(getName(), id);
+			throw new CannotAcquireLockException("lock 획득 실패 : " + id);
 		}
 		
+		StockMetrics.Stopwatch lockHold = stockMetrics.startLockHold(getName(), id);
+		
 		try {
+			soldOutRegistry.throwIfSoldOut(getName(), id);
 			stockService.decrease(id, quantity);
 		} finally {
-			redisLockRepository.unlock(id);
+			redisLockRepository.unlock(id, token);
+			lockHold.stop();
+		}
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) throws InterruptedException {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		Map<Long, String> tokens = new LinkedHashMap<>();
+		
+		try {
+			// 여러 요청이 서로의 Lock을 기다리지 않도록 항상 id 순서대로 Lock을 잡는다.
+			for(Long id : new TreeSet<>(quantities.keySet())) {
+				String token = redisLockRepository.tryLock(id, waitTimeout);
+				
+				if(token == null) {
+					stockMetrics.incrementLockTimeout(getName(), id);
+					throw new CannotAcquireLockException("lock 획득 실패 : " + id);
+				}
+				
+				tokens.put(id, token);
+			}
+			
+			stockService.decreaseAll(quantities);
+		} finally {
+			tokens.forEach(redisLockRepository::unlock);
 		}
 	}
 }
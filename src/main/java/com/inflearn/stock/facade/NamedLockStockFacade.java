@@ -1,32 +1,85 @@
 package com.inflearn.stock.facade;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.stereotype.Component;
 
-import com.inflearn.stock.repository.LockRepository;
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.lock.NamedLockManager;
+import com.inflearn.stock.metrics.StockMetrics;
 import com.inflearn.stock.service.NamedLockStockService;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
 
-import jakarta.transaction.Transactional;
-
+/**
+ * Named Lock은 NamedLockManager의 별도 pool에서 잡고, 재고 변경은 기본 pool의 트랜잭션에서 처리한다.
+ * 요청 하나가 기본 pool의 connection을 두 개 사용하지 않으므로 요청이 몰려도 재고 변경에 사용할 connection이 부족해지지 않는다.
+ */
 @Component
-public class NamedLockStockFacade {
-
-	private final LockRepository lockRepository; 
+public class NamedLockStockFacade implements StockDecreaseStrategy {
 
+	private final NamedLockManager namedLockManager;
+	
 	private final NamedLockStockService namedLockStockService;
 	
-	public NamedLockStockFacade(LockRepository lockRepository, NamedLockStockService namedLockStockService) {
-		this.lockRepository = lockRepository;
+	private final StockMetrics stockMetrics;
+	
+	private final SoldOutRegistry soldOutRegistry;
+	
+	public NamedLockStockFacade(NamedLockManager namedLockManager, NamedLockStockService namedLockStockService, StockMetrics stockMetrics, SoldOutRegistry soldOutRegistry) {
+		this.namedLockManager = namedLockManager;
 		this.namedLockStockService = namedLockStockService;
+		this.stockMetrics = stockMetrics;
+		this.soldOutRegistry = soldOutRegistry;
 	}
-
-	@Transactional
+	
+	@Override
+	public String getName() {
+		return "named-lock";
+	}
+	
+	@Override
 	public void decrease(Long id, Long quantity) {
-		try {
-			lockRepository.getLock(id.toString());
+		soldOutRegistry.throwIfSoldOut(getName(), id);
+		
+		NamedLockManager.NamedLock lock = lock(List.of(generateKey(id)), id);
+		StockMetrics.Stopwatch lockHold = stockMetrics.startLockHold(getName(), id);
+		
+		try(lock) {
+			soldOutRegistry.throwIfSoldOut(getName(), id);
 			namedLockStockService.decrease(id, quantity);
 		} finally {
-			lockRepository.releaseLock(id.toString());
+			lockHold.stop();
 		}
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		NamedLockManager.NamedLock lock = lock(quantities.keySet().stream().map(this::generateKey).toList(), null);
+		
+		try(lock) {
+			namedLockStockService.decreaseAll(quantities);
+		}
+	}
+	
+	private NamedLockManager.NamedLock lock(Collection<String> keys, Long id) {
+		StockMetrics.Stopwatch lockWait = stockMetrics.startLockWait(getName(), id);
 		
+		try {
+			return namedLockManager.lock(keys);
+		} catch(CannotAcquireLockException e) {
+			stockMetrics.incrementLockTimeout(getName(), id);
+			throw e;
+		} finally {
+			lockWait.stop();
+		}
+	}
+	
+	private String generateKey(Long id) {
+		return "stock:" + id;
 	}
 }
@@ -1,28 +1,86 @@
 package com.inflearn.stock.facade;
 
+import java.util.Map;
+
 import org.springframework.stereotype.Component;
 
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.metrics.StockMetrics;
+import com.inflearn.stock.retry.RetryPolicy;
+import com.inflearn.stock.retry.RetryState;
 import com.inflearn.stock.service.OptimisticLockStockService;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
 
 @Component
-public class OptimisticLockStockFacade { // Optimistic Lock은 실패했을 때 재시도를 해야하므로 Facade라는 패키지를 만들고 하위에 OptimisticLockFacade라는 클래스를 생성하도록 한다.
+public class OptimisticLockStockFacade implements StockDecreaseStrategy { // Optimistic Lock은 실패했을 때 재시도를 해야하므로 Facade라는 패키지를 만들고 하위에 OptimisticLockFacade라는 클래스를 생성하도록 한다.
 
 	private final OptimisticLockStockService optimisticLockStockService; // OptimisticLockStockService를 필드로 추가한다.
+	
+	private final RetryPolicy retryPolicy; // 언제, 얼마나 기다렸다가 재시도할지는 RetryPolicy가 결정한다.
+	
+	private final StockMetrics stockMetrics;
+	
+	private final SoldOutRegistry soldOutRegistry;
 
-	public OptimisticLockStockFacade(OptimisticLockStockService optimisticLockStockService) { // 생성자도 추가한다.
+	public OptimisticLockStockFacade(OptimisticLockStockService optimisticLockStockService, RetryPolicy retryPolicy, StockMetrics stockMetrics, SoldOutRegistry soldOutRegistry) { // 생성자도 추가한다.
 		this.optimisticLockStockService = optimisticLockStockService;
+		this.retryPolicy = retryPolicy;
+		this.stockMetrics = stockMetrics;
+		this.soldOutRegistry = soldOutRegistry;
 	}
 
+	@Override
+	public String getName() {
+		return "optimistic";
+	}
+	
+	@Override
 	public void decrease(Long id, Long quantity) throws InterruptedException {
+		decreaseAndGetAttempts(id, quantity);
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) throws InterruptedException {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		// 하나라도 충돌하면 전체 트랜잭션이 롤백되므로 전체를 다시 시도한다.
+		executeWithRetry(null, () -> optimisticLockStockService.decreaseAll(quantities));
+	}
+	
+	/**
+	 * 재고를 감소시키고 성공하기까지 시도한 횟수를 반환한다.
+	 */
+	public int decreaseAndGetAttempts(Long id, Long quantity) throws InterruptedException {
+		soldOutRegistry.throwIfSoldOut(getName(), id); // 품절된 Stock이라면 재시도 없이 바로 거절한다.
+		
+		return executeWithRetry(id, () -> optimisticLockStockService.decrease(id, quantity)); // OptimisticLockStockService의 decrease 메소드를 호출한다.
+	}
+	
+	private int executeWithRetry(Long id, Runnable action) throws InterruptedException {
+		RetryState state = retryPolicy.start();
+		
 		while(true) { // update에 실패했을 때 재시도를 해야하므로 while문으로 감싸준다.
+			state.attempt();
+			
 			try {
-				optimisticLockStockService.decrease(id, quantity); // OptimisticLockStockService의 decrease 메소드를 호출한다.
+				action.run();
+				
+				return state.getAttempts(); // 정상적으로 update가 된다면 while문을 빠져나오도록 한다.
+			} catch(RuntimeException e) {
+				// 재고 부족처럼 재시도해도 성공할 수 없는 예외이거나 재시도 한도를 넘어섰다면 그대로 던진다.
+				if(!retryPolicy.isRetryable(e)) {
+					throw e;
+				}
 				
-				break; // 정상적으로 update가 된다면 break를 활용하여 while문을 빠져나오도록 한다.
-			} catch(Exception e) {
-				Thread.sleep(50); // 수량 감소에 실패하게 된다면 50밀리초 있다가 재시도를 하도록 한다. 
+				long delay = retryPolicy.nextDelayMillis(state);
+				
+				if(delay < 0) {
+					throw e;
+				}
+				
+				stockMetrics.incrementRetry(getName(), id);
+				Thread.sleep(delay); // 수량 감소에 실패하게 된다면 RetryPolicy가 정한 시간만큼 기다렸다가 재시도를 하도록 한다.
 			}
 		}
-		
 	}
 }
@@ -0,0 +1,59 @@
+package com.inflearn.stock.facade;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.domain.DecreaseResult;
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.service.ReactiveStockService;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+
+/**
+ * ReactiveStockService를 다른 방식과 같은 StockDecreaseStrategy로 호출할 수 있도록 결과를 기다렸다가 예외로 바꾼다.
+ * 같은 테스트, 같은 벤치마크에서 blocking 방식과 비교하기 위해 사용한다.
+ */
+@Component
+public class ReactiveStockFacade implements StockDecreaseStrategy {
+
+	private final ReactiveStockService reactiveStockService;
+	
+	private final SoldOutRegistry soldOutRegistry;
+	
+	public ReactiveStockFacade(ReactiveStockService reactiveStockService, SoldOutRegistry soldOutRegistry) {
+		this.reactiveStockService = reactiveStockService;
+		this.soldOutRegistry = soldOutRegistry;
+	}
+	
+	@Override
+	public String getName() {
+		return "reactive";
+	}
+	
+	@Override
+	public void decrease(Long id, Long quantity) {
+		soldOutRegistry.throwIfSoldOut(getName(), id); // 품절된 Stock이라면 DB를 조회하지 않고 바로 거절한다.
+		
+		throwIfFailed(id, reactiveStockService.decrease(id, quantity).block());
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		throwIfFailed(null, reactiveStockService.decreaseAll(quantities).block());
+	}
+	
+	private void throwIfFailed(Long id, DecreaseResult result) {
+		switch(result) {
+			case DECREASED -> {
+			}
+			case OUT_OF_STOCK -> throw new OutOfStockException();
+			case NOT_FOUND -> throw new NoSuchElementException("No value present");
+			case CONFLICT -> throw new OptimisticLockingFailureException("재시도 한도 초과 : " + id);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.inflearn.stock.facade;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.datasource.ReadYourWrites;
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockAdjustedEvent;
+import com.inflearn.stock.ledger.StockLedgerContext;
+import com.inflearn.stock.metrics.StockMetrics;
+import com.inflearn.stock.repository.RedisStockRepository;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+
+/**
+ * 재고 수량을 Redis에서 직접 관리한다.
+ * Lock을 잡지 않고 Lua 스크립트 한 번으로 감소시키며, DB에는 StockWriteBehindScheduler가 모아서 반영한다.
+ * StockWriteBehindScheduler와 함께 stock.redis-inventory.enabled가 true일 때만 등록된다.
+ * 예약이나 적재처럼 DB 수량을 직접 바꾼 변경은 StockAdjustedEvent로 받아서 Redis 수량에도 같은 만큼 반영한다.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.redis-inventory.enabled", havingValue = "true")
+public class RedisInventoryStockFacade implements StockDecreaseStrategy {
+
+	private final RedisStockRepository redisStockRepository;
+	
+	private final StockRepository stockRepository;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final SoldOutRegistry soldOutRegistry;
+
+	public RedisInventoryStockFacade(RedisStockRepository redisStockRepository, StockRepository stockRepository, StockMetrics stockMetrics, SoldOutRegistry soldOutRegistry) {
+		this.redisStockRepository = redisStockRepository;
+		this.stockRepository = stockRepository;
+		this.stockMetrics = stockMetrics;
+		this.soldOutRegistry = soldOutRegistry;
+	}
+	
+	@Override
+	public String getName() {
+		return "redis-inventory";
+	}
+	
+	@Override
+	public void decrease(Long id, Long quantity) {
+		soldOutRegistry.throwIfSoldOut(getName(), id); // 품절된 Stock이라면 Redis를 호출하지 않고 바로 거절한다.
+		
+		Long remaining = redisStockRepository.decrease(id, quantity);
+		
+		if(remaining == RedisStockRepository.NOT_LOADED) {
+			// Redis에 아직 적재되지 않은 Stock이라면 DB에서 적재한 뒤 다시 시도한다.
+			Stock stock = ReadYourWrites.call(() -> stockRepository.findById(id).orElseThrow());
+			redisStockRepository.loadIfAbsent(id, stock.getQuantity());
+			remaining = redisStockRepository.decrease(id, quantity);
+		}
+		
+		if(remaining == RedisStockRepository.OUT_OF_STOCK) {
+			stockMetrics.incrementOutOfStock(getName(), id);
+			throw new OutOfStockException();
+		}
+		
+		StockLedgerContext.reportRemaining(remaining);
+		
+		if(remaining == 0) {
+			soldOutRegistry.markSoldOut(id);
+		}
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		Long result = redisStockRepository.decreaseAll(quantities);
+		
+		if(result == RedisStockRepository.NOT_LOADED) {
+			for(Stock stock : ReadYourWrites.call(() -> stockRepository.findAllById(quantities.keySet()))) {
+				redisStockRepository.loadIfAbsent(stock.getId(), stock.getQuantity());
+			}
+			
+			result = redisStockRepository.decreaseAll(quantities);
+		}
+		
+		if(result == RedisStockRepository.NOT_LOADED) {
+			throw new NoSuchElementException("No value present"); // DB에도 없는 Stock이 포함되어 있다.
+		}
+		
+		if(result == RedisStockRepository.OUT_OF_STOCK) {
+			stockMetrics.incrementOutOfStock(getName(), null);
+			throw new OutOfStockException();
+		}
+	}
+	
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onAdjusted(StockAdjustedEvent event) {
+		event.increases().forEach((id, increase) -> redisStockRepository.adjustIfLoaded(id, increase));
+	}
+}
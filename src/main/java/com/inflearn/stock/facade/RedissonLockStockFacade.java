@@ -1,41 +1,128 @@
 package com.inflearn.stock.facade;
 
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.stereotype.Component;
 
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.metrics.StockMetrics;
 import com.inflearn.stock.service.StockService;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
 
+/**
+ * leaseTime을 지정하지 않으므로 lock을 잡고 있는 동안 Redisson watchdog이 만료 시간을 계속 연장한다.
+ * 고정된 leaseTime은 트랜잭션이 그보다 길어지면 lock이 풀린 채로 재고를 감소시키게 된다.
+ */
 @Component
-public class RedissonLockStockFacade {
+public class RedissonLockStockFacade implements StockDecreaseStrategy {
 
 	private RedissonClient redissonClient;
 	
 	private StockService stockService;
+	
+	private StockMetrics stockMetrics;
+	
+	private final boolean fair;
+	
+	private final long waitTimeoutMillis;
+	
+	private final SoldOutRegistry soldOutRegistry;
 
-	public RedissonLockStockFacade(RedissonClient redissonClient, StockService stockService) {
+	public RedissonLockStockFacade(RedissonClient redissonClient, StockService stockService, StockMetrics stockMetrics, SoldOutRegistry soldOutRegistry,
+			@Value("${stock.redisson-lock.fair:false}") boolean fair,
+			@Value("${stock.redisson-lock.wait-timeout-millis:15000}") long waitTimeoutMillis) {
 		this.redissonClient = redissonClient;
 		this.stockService = stockService;
+		this.stockMetrics = stockMetrics;
+		this.fair = fair;
+		this.waitTimeoutMillis = waitTimeoutMillis;
+		this.soldOutRegistry = soldOutRegistry;
 	}
 	
+	@Override
+	public String getName() {
+		return "redisson-lock";
+	}
+	
+	@Override
 	public void decrease(Long id, Long quantity) {
-		RLock lock = redissonClient.getLock(id.toString());
+		soldOutRegistry.throwIfSoldOut(getName(), id); // 품절된 Stock이라면 Lock을 잡지 않고 바로 거절한다.
+		
+		RLock lock = getLock(id);
+		boolean available;
+		
+		StockMetrics.Stopwatch lockWait = stockMetrics.startLockWait(getName(), id);
 		
 		try {
-			boolean available = lock.tryLock(15, 1, TimeUnit.SECONDS);
-			
-			if(!available) {
-				System.out.println("lock 획득 실패");
-				return;
+			available = lock.tryLock(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			lockWait.stop();
+		}
+		
+		if(!available) {
+			// 획득하지 못한 lock은 해제하지 않고, 감소하지 못했다는 것을 호출한 쪽에 알린다.
+			stockMetrics.incrementLockTimeout(getName(), id);
+			throw new CannotAcquireLockException("lock 획득 실패 : " + id);
+		}
+		
+		StockMetrics.Stopwatch lockHold = stockMetrics.startLockHold(getName(), id);
+		
+		try {
+			// Lock을 기다리는 동안 앞선 요청이 마지막 재고를 가져갔다면 DB를 조회하지 않고 바로 Lock을 넘겨준다.
+			soldOutRegistry.throwIfSoldOut(getName(), id);
+			stockService.decrease(id, quantity);
+		} finally {
+			if(lock.isHeldByCurrentThread()) {
+				lock.unlock();
 			}
 			
-			stockService.decrease(id, quantity);
+			lockHold.stop();
+		}
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		// MultiLock은 전달된 순서대로 Lock을 잡으므로 id 순서로 정렬해서 전달한다.
+		RLock[] locks = new TreeSet<>(quantities.keySet()).stream()
+				.map(this::getLock)
+				.toArray(RLock[]::new);
+		RLock multiLock = redissonClient.getMultiLock(locks);
+		boolean available;
+		
+		try {
+			available = multiLock.tryLock(waitTimeoutMillis, TimeUnit.MILLISECONDS);
 		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
+		}
+		
+		if(!available) {
+			stockMetrics.incrementLockTimeout(getName(), null);
+			throw new CannotAcquireLockException("lock 획득 실패 : " + quantities.keySet());
+		}
+		
+		try {
+			stockService.decreaseAll(quantities);
 		} finally {
-			lock.unlock();
+			multiLock.unlock();
 		}
 	}
+	
+	/**
+	 * fair lock은 기다린 순서대로 lock을 넘겨주므로 오래 기다린 요청이 계속 밀리지 않지만, 대기열을 관리하는 만큼 느리다.
+	 */
+	private RLock getLock(Long id) {
+		return fair ? redissonClient.getFairLock(id.toString()) : redissonClient.getLock(id.toString());
+	}
 }
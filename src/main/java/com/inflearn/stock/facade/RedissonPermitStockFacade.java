@@ -0,0 +1,127 @@
+package com.inflearn.stock.facade;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.datasource.ReadYourWrites;
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockAdjustedEvent;
+import com.inflearn.stock.metrics.StockMetrics;
+import com.inflearn.stock.repository.StockPermitRepository;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+
+/**
+ * 재고를 Redisson RSemaphore의 permit으로 관리한다.
+ * 구매자는 Lock을 기다리지 않고 동시에 permit을 가져가며, 가져간 수량은 StockPermitFlushScheduler가 모아서 DB에 반영한다.
+ * permit을 가져간 뒤 누적 감소량을 기록하기 전에 서버가 종료되면 그 수량은 DB에 반영되지 않으므로 StockPermitRepository.reconcile로 맞춘다.
+ * 예약이나 적재처럼 DB 수량을 직접 바꾼 변경은 StockAdjustedEvent로 받아서 permit에도 같은 만큼 반영한다.
+ */
+@Component
+public class RedissonPermitStockFacade implements StockDecreaseStrategy {
+
+	private final StockPermitRepository stockPermitRepository;
+	
+	private final StockRepository stockRepository;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final SoldOutRegistry soldOutRegistry;
+	
+	// 이 서버에서 permit을 채운 Stock. 요청마다 채워졌는지 확인하지 않도록 기억해둔다.
+	private final Set<Long> seeded = ConcurrentHashMap.newKeySet();
+	
+	public RedissonPermitStockFacade(StockPermitRepository stockPermitRepository, StockRepository stockRepository, StockMetrics stockMetrics, SoldOutRegistry soldOutRegistry) {
+		this.stockPermitRepository = stockPermitRepository;
+		this.stockRepository = stockRepository;
+		this.stockMetrics = stockMetrics;
+		this.soldOutRegistry = soldOutRegistry;
+	}
+	
+	@Override
+	public String getName() {
+		return "redisson-permit";
+	}
+	
+	@Override
+	public void decrease(Long id, Long quantity) {
+		soldOutRegistry.throwIfSoldOut(getName(), id); // 품절된 Stock이라면 Redis를 호출하지 않고 바로 거절한다.
+		seedIfAbsent(id);
+		
+		if(!stockPermitRepository.tryAcquire(id, quantity)) {
+			if(stockPermitRepository.availablePermits(id) == 0) {
+				soldOutRegistry.markSoldOut(id);
+			}
+			
+			stockMetrics.incrementOutOfStock(getName(), id);
+			throw new OutOfStockException();
+		}
+		
+		try {
+			stockPermitRepository.addPending(id, quantity);
+		} catch(RuntimeException e) {
+			stockPermitRepository.release(id, quantity); // 감소량을 기록하지 못했다면 가져간 permit을 돌려준다.
+			throw e;
+		}
+	}
+	
+	/**
+	 * id 순서대로 permit을 가져가고, 하나라도 부족하면 이미 가져간 permit을 돌려준다.
+	 * 감소량은 한 번의 스크립트로 누적하므로, 실패했을 때 일부 감소량만 남은 채로 permit을 돌려주지 않는다.
+	 */
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		Map<Long, Long> acquired = new LinkedHashMap<>();
+		
+		try {
+			for(Map.Entry<Long, Long> entry : new TreeMap<>(quantities).entrySet()) {
+				seedIfAbsent(entry.getKey());
+				
+				if(!stockPermitRepository.tryAcquire(entry.getKey(), entry.getValue())) {
+					stockMetrics.incrementOutOfStock(getName(), entry.getKey());
+					throw new OutOfStockException();
+				}
+				
+				acquired.put(entry.getKey(), entry.getValue());
+			}
+			
+			stockPermitRepository.addAllPending(quantities);
+		} catch(RuntimeException e) {
+			acquired.forEach(stockPermitRepository::release);
+			throw e;
+		}
+	}
+	
+	/**
+	 * 아직 permit을 채우지 않은 Stock은 나중에 채울 때 바뀐 DB 수량을 읽으므로 건너뛴다.
+	 * 이 서버가 채웠다고 기억하는 Stock의 permit이 없어졌다면(reconcile, delete) 다음 요청에서 다시 채우도록 지운다.
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onAdjusted(StockAdjustedEvent event) {
+		event.increases().forEach((id, increase) -> {
+			if(!stockPermitRepository.addPermitsIfSeeded(id, increase)) {
+				seeded.remove(id);
+			}
+		});
+	}
+	
+	private void seedIfAbsent(Long id) {
+		if(seeded.contains(id)) {
+			return;
+		}
+		
+		Stock stock = ReadYourWrites.call(() -> stockRepository.findById(id).orElseThrow());
+		stockPermitRepository.seedIfAbsent(id, stock.getQuantity());
+		seeded.add(id);
+	}
+}
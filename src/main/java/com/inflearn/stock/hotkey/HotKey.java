@@ -0,0 +1,7 @@
+package com.inflearn.stock.hotkey;
+
+/**
+ * 최근 window 동안 요청이 몰린 Stock과 추정 요청 수이다.
+ */
+public record HotKey(long stockId, long count) {
+}
@@ -0,0 +1,218 @@
+package com.inflearn.stock.hotkey;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 요청이 몰리는 Stock(hot key)을 찾는다.
+ * 
+ * - count-min sketch : Stock마다 카운터를 두지 않고 depth개의 행에서 hash로 고른 칸을 하나씩 증가시킨다.
+ *                      추정값은 각 행 중 가장 작은 값이므로 실제보다 작게 나오지 않는다.
+ * - sliding window : sketch를 slots개 두고 slot-millis마다 가장 오래된 sketch를 비워서 다음 칸으로 넘어간다.
+ *                    추정값은 모든 sketch의 합이므로 최근 slots * slot-millis 동안의 요청 수이다.
+ * - top-K : 추정값이 threshold를 넘은 Stock 중 요청이 많은 top-k개만 hot key로 본다. 비싼 처리 방식으로 보내는 Stock 수를 제한한다.
+ * 
+ * 모든 상태는 미리 만든 AtomicLongArray에 있으므로 요청마다 객체를 만들거나 Lock을 잡지 않는다.
+ */
+@Component
+public class HotKeyDetector {
+
+	private static final int DEPTH = 4;
+	
+	private static final long EMPTY = Long.MIN_VALUE;
+	
+	private static final long[] SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L };
+	
+	private final AtomicLongArray[] sketches;
+	
+	private final int width;
+	
+	private final int mask;
+	
+	private final long threshold;
+	
+	private final AtomicLongArray topIds;
+	
+	private final AtomicLongArray topCounts;
+	
+	private volatile int current;
+	
+	public HotKeyDetector(@Value("${stock.hot-key.width:4096}") int width,
+			@Value("${stock.hot-key.slots:6}") int slots,
+			@Value("${stock.hot-key.top-k:32}") int topK,
+			@Value("${stock.hot-key.threshold:100}") long threshold) {
+		if(width < 1 || slots < 2 || topK < 1 || threshold < 1) {
+			throw new IllegalArgumentException("hot key 설정이 올바르지 않습니다.");
+		}
+		
+		this.width = Integer.highestOneBit(Math.max(width, 2) * 2 - 1); // 2의 거듭제곱으로 올린다.
+		this.mask = this.width - 1;
+		this.threshold = threshold;
+		this.sketches = new AtomicLongArray[slots];
+		
+		for(int i=0; i<slots; i++) {
+			sketches[i] = new AtomicLongArray(DEPTH * this.width);
+		}
+		
+		this.topIds = new AtomicLongArray(topK);
+		this.topCounts = new AtomicLongArray(topK);
+		
+		for(int i=0; i<topK; i++) {
+			topIds.set(i, EMPTY);
+		}
+	}
+	
+	/**
+	 * 요청 한 건을 기록하고, 그 Stock이 지금 hot key인지 반환한다.
+	 */
+	public boolean record(long id) {
+		AtomicLongArray sketch = sketches[current];
+		
+		for(int row=0; row<DEPTH; row++) {
+			sketch.getAndIncrement(index(row, id));
+		}
+		
+		long estimate = estimate(id);
+		
+		if(estimate < threshold) {
+			return false; // 대부분의 요청은 top-K를 보지 않고 여기서 끝난다.
+		}
+		
+		return offer(id, estimate);
+	}
+	
+	public boolean isHot(long id) {
+		for(int i=0; i<topIds.length(); i++) {
+			if(topIds.get(i) == id) {
+				return topCounts.get(i) >= threshold;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * 현재 hot key를 요청 수가 많은 순서대로 반환한다. 조회용이므로 요청을 처리하는 중에는 호출하지 않는다.
+	 */
+	public List<HotKey> getHotKeys() {
+		List<HotKey> hotKeys = new ArrayList<>();
+		Set<Long> seen = new HashSet<>();
+		
+		for(int i=0; i<topIds.length(); i++) {
+			long id = topIds.get(i);
+			long count = topCounts.get(i);
+			
+			if(id != EMPTY && count >= threshold && seen.add(id)) {
+				hotKeys.add(new HotKey(id, count));
+			}
+		}
+		
+		hotKeys.sort(Comparator.comparingLong(HotKey::count).reversed());
+		return hotKeys;
+	}
+	
+	/**
+	 * 가장 오래된 sketch를 비우고 다음 요청부터 그 sketch에 기록한다.
+	 * top-K에 남아 있는 Stock의 요청 수도 다시 추정해서 window를 벗어난 Stock은 제외한다.
+	 */
+	@Scheduled(fixedRateString = "${stock.hot-key.slot-millis:1000}")
+	public void rotate() {
+		int next = (current + 1) % sketches.length;
+		AtomicLongArray sketch = sketches[next];
+		
+		for(int i=0; i<sketch.length(); i++) {
+			sketch.set(i, 0);
+		}
+		
+		current = next;
+		
+		for(int i=0; i<topIds.length(); i++) {
+			long id = topIds.get(i);
+			
+			if(id == EMPTY) {
+				continue;
+			}
+			
+			long estimate = estimate(id);
+			
+			if(estimate >= threshold) {
+				topCounts.set(i, estimate);
+			} else if(topIds.compareAndSet(i, id, EMPTY)) {
+				topCounts.set(i, 0);
+			}
+		}
+	}
+	
+	/**
+	 * sketch마다 행 중 가장 작은 값을 골라 더한다. 모든 sketch를 합친 뒤 가장 작은 행을 고르는 것보다 오차가 작다.
+	 */
+	private long estimate(long id) {
+		long sum = 0;
+		
+		for(AtomicLongArray sketch : sketches) {
+			long min = Long.MAX_VALUE;
+			
+			for(int row=0; row<DEPTH; row++) {
+				min = Math.min(min, sketch.get(index(row, id)));
+			}
+			
+			sum += min;
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * 이미 top-K에 있다면 요청 수만 갱신하고, 없다면 요청 수가 가장 적은 칸과 CAS로 바꾼다.
+	 * 동시에 갱신하면 요청 수가 잠시 어긋나거나 같은 Stock이 두 칸에 들어갈 수 있지만 다음 rotate에서 다시 맞춰진다.
+	 */
+	private boolean offer(long id, long estimate) {
+		int minIndex = -1;
+		long minId = EMPTY;
+		long minCount = Long.MAX_VALUE;
+		
+		for(int i=0; i<topIds.length(); i++) {
+			long topId = topIds.get(i);
+			
+			if(topId == id) {
+				topCounts.lazySet(i, estimate);
+				return true;
+			}
+			
+			long count = topId == EMPTY ? -1 : topCounts.get(i);
+			
+			if(count < minCount) {
+				minIndex = i;
+				minId = topId;
+				minCount = count;
+			}
+		}
+		
+		if(estimate > minCount && topIds.compareAndSet(minIndex, minId, id)) {
+			topCounts.set(minIndex, estimate);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	private int index(int row, long id) {
+		// murmur3 fmix64
+		long hash = id ^ SEEDS[row];
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		
+		return row * width + (int) (hash & mask);
+	}
+}
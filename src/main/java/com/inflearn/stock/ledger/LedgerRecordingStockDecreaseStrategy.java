@@ -0,0 +1,65 @@
+package com.inflearn.stock.ledger;
+
+import java.util.Map;
+
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+
+/**
+ * 감소에 성공하면 StockLedger에 기록한다. StockDecreaseStrategyRegistry가 등록된 방식을 이것으로 감싼다.
+ * 실패한 감소(재고 부족, Lock 획득 실패)는 재고를 바꾸지 않으므로 기록하지 않는다.
+ * 감싼 방식이 다른 방식을 직접 호출해서 감소했다면(StockLedgerContext.reportStrategy) 그 방식의 이름으로 기록한다.
+ */
+public class LedgerRecordingStockDecreaseStrategy implements StockDecreaseStrategy {
+
+	private final StockDecreaseStrategy delegate;
+	
+	private final StockLedger stockLedger;
+	
+	public LedgerRecordingStockDecreaseStrategy(StockDecreaseStrategy delegate, StockLedger stockLedger) {
+		this.delegate = delegate;
+		this.stockLedger = stockLedger;
+	}
+	
+	@Override
+	public String getName() {
+		return delegate.getName();
+	}
+	
+	@Override
+	public void decrease(Long id, Long quantity) throws InterruptedException {
+		StockLedgerContext.Frame frame = StockLedgerContext.enter();
+		
+		try {
+			delegate.decrease(id, quantity);
+		} finally {
+			StockLedgerContext.exit(frame);
+		}
+		
+		if(!frame.isRecorded()) {
+			stockLedger.record(strategyOf(frame), id, quantity, frame.getRemaining());
+		}
+		
+		frame.markRecorded();
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) throws InterruptedException {
+		StockLedgerContext.Frame frame = StockLedgerContext.enter();
+		
+		try {
+			delegate.decreaseAll(quantities);
+		} finally {
+			StockLedgerContext.exit(frame);
+		}
+		
+		if(!frame.isRecorded()) {
+			stockLedger.recordAll(strategyOf(frame), quantities);
+		}
+		
+		frame.markRecorded();
+	}
+	
+	private String strategyOf(StockLedgerContext.Frame frame) {
+		return frame.getStrategy() == null ? getName() : frame.getStrategy();
+	}
+}
@@ -0,0 +1,44 @@
+package com.inflearn.stock.ledger;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 요청 header의 요청자를 StockLedgerContext에 넣는다. 요청마다 virtual thread가 새로 만들어지더라도 요청이 끝나면 지운다.
+ */
+@Component
+public class StockActorFilter extends OncePerRequestFilter {
+
+	private final String actorHeader;
+	
+	public StockActorFilter(@Value("${stock.ledger.actor-header:X-User-Id}") String actorHeader) {
+		this.actorHeader = actorHeader;
+	}
+	
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String actor = request.getHeader(actorHeader);
+		
+		if(actor == null || actor.isBlank()) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		
+		StockLedgerContext.setActor(actor);
+		
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			StockLedgerContext.clearActor();
+		}
+	}
+}
@@ -0,0 +1,362 @@
+package com.inflearn.stock.ledger;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 재고 변경 기록을 bounded queue에 넣고, writer 스레드가 모아서 stock_ledger에 JDBC batch로 INSERT 한다.
+ * 감소를 요청한 스레드는 queue에 넣기만 하므로 감소 트랜잭션에 INSERT가 추가되지 않는다.
+ *
+ * durability가 async이면 queue에 넣고 바로 반환하므로 서버가 종료되면 아직 쓰지 못한 기록을 잃을 수 있다.
+ * sync이면 기록이 commit될 때까지 기다린 뒤 반환한다. 이때도 재고 감소는 이미 commit되었으므로 기록에 실패하면 StockLedgerException으로 알리기만 한다.
+ * INSERT에 실패한 batch는 max-write-attempts번까지 다시 시도하고, 그래도 실패하면 기록을 로그로 남기고 버린다.
+ */
+@Slf4j
+@Component
+public class StockLedger implements DisposableBean {
+
+	private static final String INSERT_SQL = "insert into stock_ledger (stock_id, quantity, resulting_quantity, strategy, actor, recorded_at) values (?, ?, ?, ?, ?, ?)";
+	
+	private final JdbcTemplate jdbcTemplate;
+	
+	private final TransactionTemplate transactionTemplate;
+	
+	private final BlockingQueue<Entry> queue;
+	
+	private final boolean enabled;
+	
+	private final boolean sync;
+	
+	private final int batchSize;
+	
+	private final long flushIntervalMillis;
+	
+	private final long offerTimeoutMillis;
+	
+	private final long syncTimeoutMillis;
+	
+	private final int maxWriteAttempts;
+	
+	private final long retryDelayMillis;
+	
+	private final Counter written;
+	
+	private final Counter dropped;
+	
+	private final Counter failed;
+	
+	private final Thread writer;
+	
+	private volatile boolean running = true;
+	
+	public StockLedger(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+			@Value("${stock.ledger.enabled:true}") boolean enabled,
+			@Value("${stock.ledger.durability:async}") String durability,
+			@Value("${stock.ledger.capacity:65536}") int capacity,
+			@Value("${stock.ledger.batch-size:1000}") int batchSize,
+			@Value("${stock.ledger.flush-interval-millis:100}") long flushIntervalMillis,
+			@Value("${stock.ledger.offer-timeout-millis:1000}") long offerTimeoutMillis,
+			@Value("${stock.ledger.sync-timeout-millis:5000}") long syncTimeoutMillis,
+			@Value("${stock.ledger.max-write-attempts:5}") int maxWriteAttempts,
+			@Value("${stock.ledger.retry-delay-millis:200}") long retryDelayMillis) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = transactionTemplate;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.enabled = enabled;
+		this.sync = "sync".equals(durability);
+		this.batchSize = batchSize;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.offerTimeoutMillis = offerTimeoutMillis;
+		this.syncTimeoutMillis = syncTimeoutMillis;
+		this.maxWriteAttempts = maxWriteAttempts;
+		this.retryDelayMillis = retryDelayMillis;
+		
+		this.written = Counter.builder("stock.ledger.written").register(meterRegistry);
+		this.dropped = Counter.builder("stock.ledger.dropped").description("queue가 가득 차서 버린 기록 수").register(meterRegistry);
+		this.failed = Counter.builder("stock.ledger.failed").description("다시 시도해도 INSERT에 실패해서 버린 기록 수").register(meterRegistry);
+		
+		Gauge.builder("stock.ledger.queue.depth", this, StockLedger::getQueueDepth)
+				.register(meterRegistry);
+		Gauge.builder("stock.ledger.lag", this, StockLedger::getLagMillis)
+				.description("가장 오래 기다린 기록이 queue에 들어온 뒤 지난 시간")
+				.baseUnit("milliseconds")
+				.register(meterRegistry);
+		
+		this.writer = Thread.ofPlatform().name("stock-ledger-writer").daemon().unstarted(this::run);
+		
+		if(enabled) {
+			writer.start();
+		}
+	}
+	
+	/**
+	 * 감소에 성공한 뒤 요청 스레드에서 호출한다. 요청자는 StockLedgerContext에서 읽는다.
+	 */
+	public void record(String strategy, Long stockId, Long quantity, Long resultingQuantity) {
+		if(!enabled) {
+			return;
+		}
+		
+		Entry entry = new Entry(stockId, quantity, resultingQuantity, strategy, StockLedgerContext.getActor(), System.currentTimeMillis(),
+				sync ? new CompletableFuture<>() : null);
+		
+		offer(entry);
+		await(List.of(entry));
+	}
+	
+	public void recordAll(String strategy, Map<Long, Long> quantities) {
+		if(!enabled) {
+			return;
+		}
+		
+		String actor = StockLedgerContext.getActor();
+		long now = System.currentTimeMillis();
+		List<Entry> entries = new ArrayList<>(quantities.size());
+		
+		for(Map.Entry<Long, Long> quantity : quantities.entrySet()) {
+			Entry entry = new Entry(quantity.getKey(), quantity.getValue(), null, strategy, actor, now, sync ? new CompletableFuture<>() : null);
+			offer(entry);
+			entries.add(entry);
+		}
+		
+		// 기록마다 queue에서 버려지거나 다른 batch로 나뉘어 실패할 수 있으므로 모든 기록을 기다린다.
+		await(entries);
+	}
+	
+	/**
+	 * 트랜잭션 안에서 호출하면 commit된 뒤에 기록하므로 롤백된 변경은 기록하지 않는다.
+	 * 호출한 쪽이 이미 commit한 결과(예약 id 등)를 돌려줄 수 있도록 기록에 실패해도 예외를 던지지 않는다.
+	 */
+	public void recordAfterCommit(String strategy, Long stockId, Long quantity) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			recordQuietly(strategy, stockId, quantity);
+			return;
+		}
+		
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				recordQuietly(strategy, stockId, quantity);
+			}
+		});
+	}
+	
+	/**
+	 * recordAfterCommit처럼 commit된 뒤에 기록하되, 여러 Stock의 변경을 한 번에 기록한다.
+	 */
+	public void recordAllAfterCommit(String strategy, Map<Long, Long> quantities) {
+		if(quantities.isEmpty()) {
+			return;
+		}
+		
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			recordAllQuietly(strategy, quantities);
+			return;
+		}
+		
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				recordAllQuietly(strategy, quantities);
+			}
+		});
+	}
+	
+	public int getQueueDepth() {
+		return queue.size();
+	}
+	
+	public long getLagMillis() {
+		Entry head = queue.peek();
+		return head == null ? 0 : Math.max(0, System.currentTimeMillis() - head.recordedAt());
+	}
+	
+	@Override
+	public void destroy() throws InterruptedException {
+		running = false;
+		writer.join(TimeUnit.SECONDS.toMillis(5));
+	}
+	
+	private void recordQuietly(String strategy, Long stockId, Long quantity) {
+		try {
+			record(strategy, stockId, quantity, null);
+		} catch(StockLedgerException e) {
+			log.warn("재고 변경 기록 실패 : strategy={}, stockId={}, quantity={}", strategy, stockId, quantity, e);
+		}
+	}
+	
+	private void recordAllQuietly(String strategy, Map<Long, Long> quantities) {
+		try {
+			recordAll(strategy, quantities);
+		} catch(StockLedgerException e) {
+			log.warn("재고 변경 기록 실패 : strategy={}, stocks={}", strategy, quantities.size(), e);
+		}
+	}
+	
+	private void offer(Entry entry) {
+		boolean offered;
+		
+		try {
+			offered = queue.offer(entry, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			offered = false;
+		}
+		
+		if(!offered) {
+			// 재고는 이미 감소했으므로 async이면 기록만 버리고 요청은 성공시킨다. sync이면 await에서 예외로 알린다.
+			dropped.increment();
+			log.warn("재고 변경 기록 queue가 가득 차서 기록을 버립니다. stockId={}, quantity={}", entry.stockId(), entry.quantity());
+			
+			if(entry.flushed() != null) {
+				entry.flushed().completeExceptionally(new StockLedgerException("재고 변경 기록 queue가 가득 찼습니다."));
+			}
+		}
+	}
+	
+	/**
+	 * 모든 기록이 commit될 때까지 sync-timeout-millis 안에서 기다린다.
+	 */
+	private void await(List<Entry> entries) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(syncTimeoutMillis);
+		
+		for(Entry entry : entries) {
+			if(entry.flushed() == null) {
+				continue;
+			}
+			
+			try {
+				entry.flushed().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new StockLedgerException("재고 변경 기록을 기다리는 중에 중단되었습니다.", e);
+			} catch(ExecutionException | TimeoutException e) {
+				throw new StockLedgerException("재고 변경 기록에 실패했습니다. stockId=" + entry.stockId(), e);
+			}
+		}
+	}
+	
+	private void run() {
+		List<Entry> batch = new ArrayList<>(batchSize);
+		
+		while(running || !queue.isEmpty()) {
+			try {
+				Entry first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+				
+				if(first == null) {
+					continue;
+				}
+				
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				write(batch);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+	
+	/**
+	 * batch를 INSERT 한다. 실패하면 시도할 때마다 retry-delay-millis씩 늘려 기다린 뒤 다시 시도한다.
+	 * 다시 시도하는 동안 writer는 queue를 비우지 않으므로, DB 장애가 길어지면 queue가 가득 찬 뒤 새 기록부터 버려진다.
+	 */
+	private void write(List<Entry> batch) {
+		RuntimeException failure = null;
+		
+		for(int attempt=1; attempt<=maxWriteAttempts; attempt++) {
+			try {
+				insert(batch);
+				written.increment(batch.size());
+				batch.stream().filter(entry -> entry.flushed() != null).forEach(entry -> entry.flushed().complete(null));
+				return;
+			} catch(RuntimeException e) {
+				failure = e;
+				log.warn("재고 변경 기록 INSERT 실패 : count={}, attempt={}", batch.size(), attempt, e);
+			}
+			
+			if(attempt < maxWriteAttempts && !sleep(retryDelayMillis * attempt)) {
+				break;
+			}
+		}
+		
+		// 버리는 기록은 로그에서 다시 찾을 수 있도록 남긴다.
+		failed.increment(batch.size());
+		
+		for(Entry entry : batch) {
+			log.error("기록하지 못한 재고 변경 : stockId={}, quantity={}, resultingQuantity={}, strategy={}, actor={}, recordedAt={}",
+					entry.stockId(), entry.quantity(), entry.resultingQuantity(), entry.strategy(), entry.actor(), entry.recordedAt());
+		}
+		
+		StockLedgerException exception = new StockLedgerException("재고 변경 기록 INSERT 실패", failure);
+		batch.stream().filter(entry -> entry.flushed() != null).forEach(entry -> entry.flushed().completeExceptionally(exception));
+	}
+	
+	private boolean sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+			return true;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	private void insert(List<Entry> batch) {
+		transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+			
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				Entry entry = batch.get(i);
+				ps.setLong(1, entry.stockId());
+				ps.setLong(2, entry.quantity());
+				
+				if(entry.resultingQuantity() == null) {
+					ps.setNull(3, Types.BIGINT);
+				} else {
+					ps.setLong(3, entry.resultingQuantity());
+				}
+				
+				ps.setString(4, entry.strategy());
+				ps.setString(5, entry.actor());
+				ps.setTimestamp(6, new Timestamp(entry.recordedAt()));
+			}
+			
+			@Override
+			public int getBatchSize() {
+				return batch.size();
+			}
+		}));
+	}
+	
+	private record Entry(Long stockId, Long quantity, Long resultingQuantity, String strategy, String actor, long recordedAt,
+			CompletableFuture<Void> flushed) {
+	}
+}
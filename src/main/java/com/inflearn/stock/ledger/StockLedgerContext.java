@@ -0,0 +1,131 @@
+package com.inflearn.stock.ledger;
+
+/**
+ * 재고 변경 기록에 남길 요청자와, 감소 방식이 알려준 감소 후 수량을 요청 스레드에 보관한다.
+ * 기록은 다른 스레드에서 DB에 쓰이므로 요청자는 감소를 요청한 스레드에서 읽어둔다.
+ */
+public final class StockLedgerContext {
+
+	public static final String SYSTEM_ACTOR = "system";
+	
+	private static final ThreadLocal<String> ACTOR = new ThreadLocal<>();
+	
+	private static final ThreadLocal<Frame> FRAME = new ThreadLocal<>();
+	
+	private StockLedgerContext() {
+	}
+	
+	public static void setActor(String actor) {
+		ACTOR.set(actor);
+	}
+	
+	public static void clearActor() {
+		ACTOR.remove();
+	}
+	
+	/**
+	 * HTTP 요청 밖(스케줄러, 테스트)에서 호출되면 SYSTEM_ACTOR를 반환한다.
+	 */
+	public static String getActor() {
+		String actor = ACTOR.get();
+		return actor == null ? SYSTEM_ACTOR : actor;
+	}
+	
+	/**
+	 * 감소 방식이 감소 후 수량을 추가 조회 없이 알고 있을 때 호출한다. 기록 중인 감소가 없다면 무시한다.
+	 */
+	public static void reportRemaining(long remaining) {
+		Frame frame = FRAME.get();
+		
+		if(frame != null) {
+			frame.remaining = remaining;
+		}
+	}
+	
+	/**
+	 * 라우터가 감싸지 않은 방식을 직접 호출했을 때, 실제로 감소한 방식의 이름을 알려준다. 기록 중인 감소가 없다면 무시한다.
+	 */
+	public static void reportStrategy(String strategy) {
+		Frame frame = FRAME.get();
+		
+		if(frame != null) {
+			frame.strategy = strategy;
+		}
+	}
+	
+	/**
+	 * 현재 스레드에서 기록 중인 감소를 반환한다. 없다면 null이다.
+	 * 다른 스레드가 요청을 대신 처리한다면 요청 스레드에서 읽어두고 runIn으로 넘겨서, 보고한 값이 요청한 감소의 기록에 남게 한다.
+	 */
+	public static Frame current() {
+		return FRAME.get();
+	}
+	
+	/**
+	 * frame을 현재 스레드의 기록 중인 감소로 두고 task를 실행한 뒤, 원래 값으로 되돌린다.
+	 */
+	public static void runIn(Frame frame, Runnable task) {
+		Frame previous = FRAME.get();
+		FRAME.set(frame);
+		
+		try {
+			task.run();
+		} finally {
+			if(previous == null) {
+				FRAME.remove();
+			} else {
+				FRAME.set(previous);
+			}
+		}
+	}
+	
+	static Frame enter() {
+		Frame frame = new Frame(FRAME.get());
+		FRAME.set(frame);
+		return frame;
+	}
+	
+	static void exit(Frame frame) {
+		if(frame.parent == null) {
+			FRAME.remove();
+		} else {
+			FRAME.set(frame.parent);
+		}
+	}
+	
+	/**
+	 * 라우터처럼 다른 방식에 위임하는 방식은 위임받은 방식이 기록했다면 다시 기록하지 않는다.
+	 */
+	public static final class Frame {
+		
+		private final Frame parent;
+		
+		private volatile Long remaining;
+		
+		private volatile String strategy;
+		
+		private boolean recorded;
+		
+		private Frame(Frame parent) {
+			this.parent = parent;
+		}
+		
+		Long getRemaining() {
+			return remaining;
+		}
+		
+		String getStrategy() {
+			return strategy;
+		}
+		
+		boolean isRecorded() {
+			return recorded;
+		}
+		
+		void markRecorded() {
+			if(parent != null) {
+				parent.recorded = true;
+			}
+		}
+	}
+}
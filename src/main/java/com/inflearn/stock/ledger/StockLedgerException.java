@@ -0,0 +1,16 @@
+package com.inflearn.stock.ledger;
+
+/**
+ * 재고는 이미 감소했지만 변경 기록을 남기지 못했을 때 던진다.
+ * 감소는 commit되었으므로 요청을 다시 보내면 재고가 두 번 감소한다. 실패로 응답하지 않는다. (StockExceptionHandler)
+ */
+public class StockLedgerException extends RuntimeException {
+
+	public StockLedgerException(String message) {
+		super(message);
+	}
+	
+	public StockLedgerException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
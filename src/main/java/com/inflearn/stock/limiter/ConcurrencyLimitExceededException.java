@@ -0,0 +1,8 @@
+package com.inflearn.stock.limiter;
+
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+	public ConcurrencyLimitExceededException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,125 @@
+package com.inflearn.stock.limiter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 재고 감소를 동시에 실행할 수 있는 요청 수를 Stock별로, 그리고 전체로 제한한다.
+ * virtual thread는 요청마다 만들어지므로 같은 Stock에 요청이 몰리면 수천 개의 스레드가 동시에 DB Connection이나 Redis Connection을 기다리게 된다.
+ * 차례를 기다리는 동안에는 Semaphore에서 대기하므로 carrier thread와 Connection을 점유하지 않는다.
+ */
+@Component
+public class StockConcurrencyLimiter {
+
+	private final Semaphore globalPermits;
+	
+	private final int permitsPerStock;
+	
+	private final long acquireTimeoutMillis;
+	
+	private final ConcurrentMap<Long, StockPermits> stockPermits = new ConcurrentHashMap<>();
+	
+	public StockConcurrencyLimiter(@Value("${stock.api.max-concurrent:10}") int maxConcurrent,
+			@Value("${stock.api.max-concurrent-per-stock:4}") int maxConcurrentPerStock,
+			@Value("${stock.api.acquire-timeout-millis:5000}") long acquireTimeoutMillis) {
+		this.globalPermits = new Semaphore(maxConcurrent, true);
+		this.permitsPerStock = maxConcurrentPerStock;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+	}
+	
+	public void execute(Long id, StockAction action) throws InterruptedException {
+		execute(List.of(id), action);
+	}
+	
+	public void execute(Collection<Long> ids, StockAction action) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+		List<Long> acquired = new ArrayList<>();
+		boolean globalAcquired = false;
+		
+		try {
+			// 여러 요청이 서로의 차례를 기다리지 않도록 항상 id 순서대로 얻는다.
+			for(Long id : new TreeSet<>(ids)) {
+				StockPermits permits = retain(id);
+				boolean permitted = false;
+				
+				try {
+					permitted = permits.semaphore.tryAcquire(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+				} finally {
+					if(!permitted) {
+						release(id);
+					}
+				}
+				
+				if(!permitted) {
+					throw new ConcurrencyLimitExceededException("재고 감소 요청이 너무 많습니다. id=" + id);
+				}
+				
+				acquired.add(id);
+			}
+			
+			// 같은 Stock의 차례를 기다리는 요청이 전체 자리를 차지하지 않도록 Stock별 차례를 얻은 다음에 얻는다.
+			globalAcquired = globalPermits.tryAcquire(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+			
+			if(!globalAcquired) {
+				throw new ConcurrencyLimitExceededException("재고 감소 요청이 너무 많습니다.");
+			}
+			
+			action.run();
+		} finally {
+			if(globalAcquired) {
+				globalPermits.release();
+			}
+			
+			for(Long id : acquired) {
+				stockPermits.get(id).semaphore.release();
+				release(id);
+			}
+		}
+	}
+	
+	private long remainingNanos(long deadline) {
+		return Math.max(0, deadline - System.nanoTime());
+	}
+	
+	/**
+	 * 사용하는 요청이 없는 Stock의 Semaphore는 지워서 상품 수만큼 Map이 커지지 않도록 한다.
+	 */
+	private StockPermits retain(Long id) {
+		return stockPermits.compute(id, (key, permits) -> {
+			StockPermits result = permits == null ? new StockPermits(permitsPerStock) : permits;
+			result.users++;
+			return result;
+		});
+	}
+	
+	private void release(Long id) {
+		stockPermits.computeIfPresent(id, (key, permits) -> --permits.users == 0 ? null : permits);
+	}
+	
+	@FunctionalInterface
+	public interface StockAction {
+		
+		void run() throws InterruptedException;
+	}
+	
+	private static final class StockPermits {
+		
+		private final Semaphore semaphore;
+		
+		// compute 안에서만 변경한다.
+		private int users;
+		
+		private StockPermits(int permits) {
+			this.semaphore = new Semaphore(permits, true);
+		}
+	}
+}
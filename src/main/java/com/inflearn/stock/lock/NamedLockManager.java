@@ -0,0 +1,225 @@
+package com.inflearn.stock.lock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MySQL의 GET_LOCK / RELEASE_LOCK을 사용하는 Named Lock이다.
+ * Named Lock은 connection(session)에 묶이므로 Lock을 잡은 connection으로 해제해야 한다.
+ * 재고를 변경하는 connection pool과 섞이지 않도록 별도의 작은 pool을 사용하고, Lock을 잡는 동안 스레드에 connection을 고정한다.
+ * 같은 스레드에서 같은 Lock을 다시 잡으면 DB에 요청하지 않고 횟수만 센다.
+ */
+@Slf4j
+@Component
+public class NamedLockManager implements DisposableBean {
+
+	private final HikariDataSource dataSource;
+	
+	private final Duration defaultTimeout;
+	
+	private final ThreadLocal<LockSession> sessions = new ThreadLocal<>();
+	
+	public NamedLockManager(@Value("${stock.named-lock.jdbc-url:${spring.datasource.hikari.jdbc-url}}") String jdbcUrl,
+			@Value("${stock.named-lock.username:${spring.datasource.username:}}") String username,
+			@Value("${stock.named-lock.password:${spring.datasource.password:}}") String password,
+			@Value("${stock.named-lock.pool-size:10}") int poolSize,
+			@Value("${stock.named-lock.connection-timeout-millis:1000}") long connectionTimeoutMillis,
+			@Value("${stock.named-lock.timeout-millis:3000}") long timeoutMillis) {
+		HikariConfig config = new HikariConfig();
+		config.setPoolName("named-lock");
+		config.setJdbcUrl(jdbcUrl);
+		config.setUsername(username);
+		config.setPassword(password);
+		config.setMaximumPoolSize(poolSize);
+		config.setMinimumIdle(0);
+		config.setConnectionTimeout(connectionTimeoutMillis);
+		config.setAutoCommit(true);
+		
+		// 스프링이 관리하는 DataSource로 등록하면 DataSource 자동 설정이 동작하지 않으므로 bean으로 등록하지 않고 직접 관리한다.
+		this.dataSource = new HikariDataSource(config);
+		this.defaultTimeout = Duration.ofMillis(timeoutMillis);
+	}
+	
+	public NamedLock lock(String key) {
+		return lock(List.of(key), defaultTimeout);
+	}
+	
+	public NamedLock lock(Collection<String> keys) {
+		return lock(keys, defaultTimeout);
+	}
+	
+	/**
+	 * 모든 key의 Lock을 잡는다. 여러 요청이 서로의 Lock을 기다리지 않도록 항상 key 순서대로 잡는다.
+	 * timeout 안에 잡지 못하면 이미 잡은 Lock을 해제하고 CannotAcquireLockException을 던진다.
+	 * 반환된 NamedLock은 Lock을 잡은 스레드에서 close 해야 한다.
+	 */
+	public NamedLock lock(Collection<String> keys, Duration timeout) {
+		LockSession session = sessions.get();
+		boolean opened = session == null;
+		
+		if(opened) {
+			session = new LockSession(getConnection());
+			sessions.set(session);
+		}
+		
+		NamedLock lock = new NamedLock(session, opened);
+		long deadline = System.nanoTime() + timeout.toNanos();
+		
+		try {
+			for(String key : new TreeSet<>(keys)) {
+				session.acquire(key, Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+				lock.acquired.push(key);
+			}
+		} catch(RuntimeException e) {
+			lock.close();
+			throw e;
+		}
+		
+		return lock;
+	}
+	
+	@Override
+	public void destroy() {
+		dataSource.close();
+	}
+	
+	private Connection getConnection() {
+		try {
+			return dataSource.getConnection();
+		} catch(SQLException e) {
+			// pool이 가득 찼다면 Lock을 기다리는 요청이 너무 많은 것이다.
+			throw new CannotAcquireLockException("named lock connection 획득 실패", e);
+		}
+	}
+	
+	public final class NamedLock implements AutoCloseable {
+		
+		private final LockSession session;
+		
+		private final boolean opened;
+		
+		private final Deque<String> acquired = new ArrayDeque<>();
+		
+		private NamedLock(LockSession session, boolean opened) {
+			this.session = session;
+			this.opened = opened;
+		}
+		
+		/**
+		 * 잡은 순서의 반대로 해제한다. 이 Lock이 connection을 연 경우에는 connection도 pool에 돌려준다.
+		 */
+		@Override
+		public void close() {
+			while(!acquired.isEmpty()) {
+				session.release(acquired.pop());
+			}
+			
+			if(opened) {
+				sessions.remove();
+				session.close();
+			}
+		}
+	}
+	
+	private final class LockSession {
+		
+		private final Connection connection;
+		
+		// 같은 스레드에서 잡은 횟수
+		private final Map<String, Integer> holdCounts = new HashMap<>();
+		
+		private boolean broken;
+		
+		private LockSession(Connection connection) {
+			this.connection = connection;
+		}
+		
+		private void acquire(String key, Duration timeout) {
+			Integer holdCount = holdCounts.get(key);
+			
+			if(holdCount != null) {
+				holdCounts.put(key, holdCount + 1);
+				return;
+			}
+			
+			// GET_LOCK의 timeout은 초 단위이므로 올림한다. 1이면 획득, 0이면 timeout, NULL이면 오류이다.
+			try(PreparedStatement statement = connection.prepareStatement("select get_lock(?, ?)")) {
+				statement.setString(1, key);
+				statement.setLong(2, (timeout.toMillis() + 999) / 1000);
+				
+				try(ResultSet resultSet = statement.executeQuery()) {
+					resultSet.next();
+					
+					if(resultSet.getInt(1) != 1) {
+						throw new CannotAcquireLockException("lock 획득 실패 : " + key);
+					}
+				}
+			} catch(SQLException e) {
+				broken = true;
+				throw new CannotAcquireLockException("lock 획득 실패 : " + key, e);
+			}
+			
+			holdCounts.put(key, 1);
+		}
+		
+		private void release(String key) {
+			int holdCount = holdCounts.getOrDefault(key, 0);
+			
+			if(holdCount > 1) {
+				holdCounts.put(key, holdCount - 1);
+				return;
+			}
+			
+			holdCounts.remove(key);
+			
+			try(PreparedStatement statement = connection.prepareStatement("select release_lock(?)")) {
+				statement.setString(1, key);
+				
+				try(ResultSet resultSet = statement.executeQuery()) {
+					resultSet.next();
+					
+					if(resultSet.getInt(1) != 1) {
+						log.warn("잡고 있지 않은 named lock을 해제했습니다. key={}", key);
+					}
+				}
+			} catch(SQLException e) {
+				// 해제하지 못한 Lock이 남지 않도록 connection을 닫는다. session이 끝나면 MySQL이 Lock을 모두 해제한다.
+				broken = true;
+				log.error("named lock 해제 실패 : key={}", key, e);
+			}
+		}
+		
+		private void close() {
+			if(broken || !holdCounts.isEmpty()) {
+				dataSource.evictConnection(connection);
+				return;
+			}
+			
+			try {
+				connection.close();
+			} catch(SQLException e) {
+				log.warn("named lock connection 반환 실패", e);
+			}
+		}
+	}
+}
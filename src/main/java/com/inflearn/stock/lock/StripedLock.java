@@ -0,0 +1,65 @@
+package com.inflearn.stock.lock;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * id를 고정된 개수의 ReentrantLock 중 하나에 대응시킨다.
+ * 상품 수만큼 Lock을 만들지 않아도 되고, 같은 id는 항상 같은 Lock을 사용한다.
+ * 서로 다른 id가 같은 Lock을 사용할 수도 있지만 ReentrantLock이므로 한 스레드가 여러 번 잡아도 문제가 없다.
+ */
+public class StripedLock {
+
+	private final ReentrantLock[] locks;
+	
+	private final int mask;
+	
+	public StripedLock(int stripes) {
+		if(stripes <= 0) {
+			throw new IllegalArgumentException("stripes는 1 이상이어야 합니다. stripes=" + stripes);
+		}
+		
+		// 나머지 연산 대신 비트 연산을 사용할 수 있도록 2의 거듭제곱으로 올린다.
+		int size = Integer.highestOneBit(stripes);
+		
+		if(size < stripes) {
+			size <<= 1;
+		}
+		
+		this.locks = new ReentrantLock[size];
+		this.mask = size - 1;
+		
+		for(int i=0; i<size; i++) {
+			locks[i] = new ReentrantLock(true); // 같은 JVM 안에서는 먼저 기다린 요청이 먼저 Lock을 얻는다.
+		}
+	}
+	
+	public ReentrantLock get(Long id) {
+		return locks[indexOf(id)];
+	}
+	
+	/**
+	 * 여러 id의 Lock을 Lock 번호 순서대로 반환한다. 같은 Lock을 사용하는 id가 있어도 한 번만 들어간다.
+	 * id 순서와 Lock 번호 순서는 다르므로, 여러 Lock을 잡을 때는 이 순서대로 잡아야 서로의 Lock을 기다리는 deadlock이 생기지 않는다.
+	 */
+	public List<ReentrantLock> getAll(Collection<Long> ids) {
+		TreeSet<Integer> indexes = new TreeSet<>();
+		
+		for(Long id : ids) {
+			indexes.add(indexOf(id));
+		}
+		
+		return indexes.stream().map(index -> locks[index]).toList();
+	}
+	
+	public int size() {
+		return locks.length;
+	}
+	
+	private int indexOf(Long id) {
+		int hash = id.hashCode();
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+}
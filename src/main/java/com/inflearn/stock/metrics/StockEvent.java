@@ -0,0 +1,19 @@
+package com.inflearn.stock.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * 재고 감소 과정을 JFR(Java Flight Recorder)에 기록하는 이벤트의 공통 필드이다.
+ * 하나의 recording에서 요청별로 Lock 대기, Lock 보유, 트랜잭션 중 어디에서 시간을 썼는지 확인할 수 있다.
+ */
+@Category("Inflearn Stock")
+public abstract class StockEvent extends Event {
+
+	@Label("Strategy")
+	String strategy;
+	
+	@Label("Stock Id")
+	long stockId;
+}
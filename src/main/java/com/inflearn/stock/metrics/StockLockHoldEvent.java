@@ -0,0 +1,10 @@
+package com.inflearn.stock.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Lock을 잡고 있던 시간
+@Name("com.inflearn.stock.LockHold")
+@Label("Stock Lock Hold")
+public class StockLockHoldEvent extends StockEvent {
+}
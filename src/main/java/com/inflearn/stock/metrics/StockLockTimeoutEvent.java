@@ -0,0 +1,10 @@
+package com.inflearn.stock.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// 시간 안에 Lock을 잡지 못한 요청
+@Name("com.inflearn.stock.LockTimeout")
+@Label("Stock Lock Timeout")
+public class StockLockTimeoutEvent extends StockEvent {
+}
@@ -0,0 +1,10 @@
+package com.inflearn.stock.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Lock을 기다린 시간
+@Name("com.inflearn.stock.LockWait")
+@Label("Stock Lock Wait")
+public class StockLockWaitEvent extends StockEvent {
+}
@@ -0,0 +1,152 @@
+package com.inflearn.stock.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 재고 감소 방식별 Lock 대기 시간, Lock 보유 시간, 트랜잭션 시간, 재시도, Lock 획득 실패, 재고 부족을 기록한다.
+ * 모든 값은 strategy와 stockId tag를 가진 Micrometer 지표로 기록되고, 같은 내용이 JFR 이벤트로도 기록된다.
+ * stockId tag는 기본적으로 all 하나로 묶는다. stock.metrics.tag-stock-id를 true로 설정하면 상품별로 나누지만,
+ * 상품마다 percentile histogram을 만들면 지표 수가 상품 수 × bucket 수로 늘어나므로 이때는 histogram 없이 기록한다.
+ * 여러 Stock을 한 번에 감소시키는 요청은 id 없이(null) 기록하며 stockId tag는 multi가 된다.
+ * 요청마다 builder로 등록하지 않도록 만든 지표는 이름과 tag별로 보관하여 재사용한다.
+ */
+@Component
+public class StockMetrics {
+
+	private final MeterRegistry meterRegistry;
+	
+	private final boolean tagStockId;
+	
+	private final ConcurrentHashMap<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+	
+	private final ConcurrentHashMap<MeterKey, Counter> counters = new ConcurrentHashMap<>();
+
+	public StockMetrics(MeterRegistry meterRegistry, @Value("${stock.metrics.tag-stock-id:false}") boolean tagStockId) {
+		this.meterRegistry = meterRegistry;
+		this.tagStockId = tagStockId;
+	}
+	
+	public Stopwatch startLockWait(String strategy, Long id) {
+		return new Stopwatch("stock.lock.wait", strategy, id, new StockLockWaitEvent());
+	}
+	
+	public Stopwatch startLockHold(String strategy, Long id) {
+		return new Stopwatch("stock.lock.hold", strategy, id, new StockLockHoldEvent());
+	}
+	
+	/**
+	 * 지금부터 현재 트랜잭션이 끝날 때까지의 시간을 트랜잭션 시간으로 기록한다. commit 시간도 포함된다.
+	 */
+	public void recordTransaction(String strategy, Long id) {
+		stopOnTransactionCompletion(new Stopwatch("stock.transaction", strategy, id, new StockTransactionEvent()));
+	}
+	
+	/**
+	 * row lock은 트랜잭션이 끝날 때 풀리므로 지금부터 트랜잭션이 끝날 때까지의 시간을 Lock 보유 시간으로 기록한다.
+	 */
+	public void recordLockHoldUntilTransactionCompletion(String strategy, Long id) {
+		stopOnTransactionCompletion(startLockHold(strategy, id));
+	}
+	
+	public void incrementRetry(String strategy, Long id) {
+		increment("stock.retry", strategy, id, new StockRetryEvent());
+	}
+	
+	public void incrementLockTimeout(String strategy, Long id) {
+		increment("stock.lock.timeout", strategy, id, new StockLockTimeoutEvent());
+	}
+	
+	public void incrementOutOfStock(String strategy, Long id) {
+		increment("stock.out.of.stock", strategy, id, new StockOutOfStockEvent());
+	}
+	
+	private void stopOnTransactionCompletion(Stopwatch stopwatch) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+			stopwatch.stop();
+			return;
+		}
+		
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				stopwatch.stop();
+			}
+		});
+	}
+	
+	private void increment(String name, String strategy, Long id, StockEvent event) {
+		counters.computeIfAbsent(new MeterKey(name, strategy, stockIdTag(id)), key -> Counter.builder(key.name())
+				.tag("strategy", key.strategy())
+				.tag("stockId", key.stockId())
+				.register(meterRegistry))
+				.increment();
+		
+		if(event.isEnabled()) {
+			event.strategy = strategy;
+			event.stockId = id == null ? -1 : id;
+			event.commit();
+		}
+	}
+	
+	private String stockIdTag(Long id) {
+		if(id == null) {
+			return "multi";
+		}
+		
+		return tagStockId ? String.valueOf(id) : "all";
+	}
+	
+	private Timer timer(String name, String strategy, Long id) {
+		return timers.computeIfAbsent(new MeterKey(name, strategy, stockIdTag(id)), key -> Timer.builder(key.name())
+				.tag("strategy", key.strategy())
+				.tag("stockId", key.stockId())
+				.publishPercentileHistogram(!tagStockId || id == null) // 상품별 지표에는 histogram을 만들지 않는다.
+				.register(meterRegistry));
+	}
+	
+	private record MeterKey(String name, String strategy, String stockId) {
+	}
+	
+	public final class Stopwatch {
+		
+		private final String name;
+		
+		private final String strategy;
+		
+		private final Long id;
+		
+		private final StockEvent event;
+		
+		private final long startedAt = System.nanoTime();
+		
+		private Stopwatch(String name, String strategy, Long id, StockEvent event) {
+			this.name = name;
+			this.strategy = strategy;
+			this.id = id;
+			this.event = event;
+			event.begin();
+		}
+		
+		public void stop() {
+			timer(name, strategy, id).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+			
+			event.end();
+			
+			if(event.shouldCommit()) {
+				event.strategy = strategy;
+				event.stockId = id == null ? -1 : id;
+				event.commit();
+			}
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package com.inflearn.stock.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// 재고가 부족하여 거절된 요청
+@Name("com.inflearn.stock.OutOfStock")
+@Label("Stock Out Of Stock")
+public class StockOutOfStockEvent extends StockEvent {
+}
@@ -0,0 +1,10 @@
+package com.inflearn.stock.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// 충돌로 인한 재시도
+@Name("com.inflearn.stock.Retry")
+@Label("Stock Retry")
+public class StockRetryEvent extends StockEvent {
+}
@@ -0,0 +1,10 @@
+package com.inflearn.stock.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// 트랜잭션 시작부터 commit 또는 rollback까지 걸린 시간
+@Name("com.inflearn.stock.Transaction")
+@Label("Stock Transaction")
+public class StockTransactionEvent extends StockEvent {
+}
@@ -0,0 +1,9 @@
+package com.inflearn.stock.repository;
+
+import java.util.Map;
+
+/**
+ * pending hash에서 꺼낸 id별 감소량이다. DB 반영을 마칠 때까지 같은 id로 Redis에 남아 있다.
+ */
+public record PendingDeltaBatch(String id, Map<Long, Long> deltas) {
+}
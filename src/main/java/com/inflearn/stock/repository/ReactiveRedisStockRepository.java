@@ -0,0 +1,64 @@
+package com.inflearn.stock.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * RedisStockRepository와 같은 key와 Lua 스크립트를 Lettuce reactive 명령으로 실행한다.
+ * 감소량은 같은 pending hash에 누적되므로 DB 반영은 StockWriteBehindScheduler가 그대로 처리한다.
+ */
+@Component
+public class ReactiveRedisStockRepository {
+
+	private final ReactiveStringRedisTemplate redisTemplate;
+	
+	private final RedisStockRepository redisStockRepository;
+	
+	public ReactiveRedisStockRepository(ReactiveStringRedisTemplate redisTemplate, RedisStockRepository redisStockRepository) {
+		this.redisTemplate = redisTemplate;
+		this.redisStockRepository = redisStockRepository;
+	}
+	
+	/**
+	 * 재고를 감소시키고 남은 수량을 반환한다. (RedisStockRepository.decrease)
+	 */
+	public Mono<Long> decrease(Long id, Long quantity) {
+		return redisTemplate.execute(RedisStockRepository.DECREASE_SCRIPT,
+				List.of(RedisStockRepository.generateKey(id), RedisStockRepository.PENDING_KEY),
+				List.of(id.toString(), quantity.toString()))
+				.next();
+	}
+	
+	/**
+	 * 여러 상품의 재고를 한 번의 스크립트로 감소시킨다. (RedisStockRepository.decreaseAll)
+	 */
+	public Mono<Long> decreaseAll(Map<Long, Long> quantities) {
+		List<String> keys = new ArrayList<>();
+		List<String> ids = new ArrayList<>();
+		List<String> amounts = new ArrayList<>();
+		
+		quantities.forEach((id, quantity) -> {
+			keys.add(RedisStockRepository.generateKey(id));
+			ids.add(id.toString());
+			amounts.add(quantity.toString());
+		});
+		
+		keys.add(RedisStockRepository.PENDING_KEY);
+		ids.addAll(amounts);
+		
+		return redisTemplate.execute(RedisStockRepository.DECREASE_ALL_SCRIPT, keys, ids).next();
+	}
+	
+	public Mono<Boolean> loadIfAbsent(Long id, Long quantity) {
+		return redisTemplate.execute(RedisStockRepository.LOAD_SCRIPT, redisStockRepository.loadKeys(id),
+				List.of(id.toString(), quantity.toString(), "1", redisStockRepository.getPendingDeltas().getProcessingPrefix()))
+				.next()
+				.map(loaded -> loaded == 1L);
+	}
+}
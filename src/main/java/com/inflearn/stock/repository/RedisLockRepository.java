@@ -1,30 +1,108 @@
 package com.inflearn.stock.repository;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+/**
+ * SETNX 기반의 Lock이다.
+ * Lock을 잡을 때마다 고유한 토큰을 저장하고, 해제할 때는 자신의 토큰인 경우에만 삭제한다.
+ * 해제하면서 pub/sub으로 해제 신호를 보내므로 기다리는 스레드는 polling 없이 해제되는 즉시 다시 시도한다.
+ */
 @Component
-public class RedisLockRepository {
+public class RedisLockRepository implements MessageListener {
 
+	private static final Duration LEASE_TIME = Duration.ofMillis(3_000);
+	
+	private static final String RELEASE_CHANNEL = "stock:lock:release";
+	
+	// 다른 요청이 잡은 Lock을 지우지 않도록 토큰이 같을 때만 삭제하고 해제 신호를 보낸다.
+	private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>("""
+			if redis.call('GET', KEYS[1]) == ARGV[1] then
+				redis.call('DEL', KEYS[1])
+				redis.call('PUBLISH', ARGV[2], KEYS[1])
+				return 1
+			end
+			return 0
+			""", Long.class);
+	
 	private RedisTemplate<String, String> redisTemplate;
+	
+	private final ConcurrentHashMap<String, CountDownLatch> releaseSignals = new ConcurrentHashMap<>();
 
-	public RedisLockRepository(RedisTemplate<String, String> redisTemplate) {
+	public RedisLockRepository(RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer redisMessageListenerContainer) {
 		this.redisTemplate = redisTemplate;
+		redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RELEASE_CHANNEL));
 	}
 	
-	public Boolean lock(Long key) {
-		return redisTemplate
+	/**
+	 * Lock을 한 번 시도한다. 성공하면 해제할 때 사용할 토큰을, 실패하면 null을 반환한다.
+	 */
+	public String lock(Long key) {
+		String token = UUID.randomUUID().toString();
+		Boolean acquired = redisTemplate
 				.opsForValue()
-				.setIfAbsent(generateKey(key), "lock", Duration.ofMillis(3_000));
+				.setIfAbsent(generateKey(key), token, LEASE_TIME);
+		
+		return Boolean.TRUE.equals(acquired) ? token : null;
+	}
+	
+	/**
+	 * waitTime 동안 Lock을 기다린다. 시간 안에 잡지 못하면 null을 반환한다.
+	 */
+	public String tryLock(Long key, Duration waitTime) throws InterruptedException {
+		String lockKey = generateKey(key);
+		long deadline = System.nanoTime() + waitTime.toNanos();
+		
+		while(true) {
+			// 해제 신호를 놓치지 않도록 Lock을 시도하기 전에 신호를 먼저 등록한다.
+			CountDownLatch releaseSignal = releaseSignals.computeIfAbsent(lockKey, k -> new CountDownLatch(1));
+			String token = lock(key);
+			
+			if(token != null) {
+				return token;
+			}
+			
+			long remaining = deadline - System.nanoTime();
+			
+			if(remaining <= 0) {
+				return null;
+			}
+			
+			// Lock을 잡은 쪽이 해제하지 못하고 종료되면 신호가 오지 않으므로 최대 LEASE_TIME까지만 기다리고 다시 시도한다.
+			releaseSignal.await(Math.min(remaining, LEASE_TIME.toNanos()), TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	public Boolean unlock(Long key, String token) {
+		Long deleted = redisTemplate.execute(UNLOCK_SCRIPT, List.of(generateKey(key)), token, RELEASE_CHANNEL);
+		
+		return Long.valueOf(1).equals(deleted);
 	}
 	
-	public Boolean unlock(Long key) {
-		return redisTemplate.delete(generateKey(key));
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		CountDownLatch releaseSignal = releaseSignals.remove(new String(message.getBody(), StandardCharsets.UTF_8));
+		
+		if(releaseSignal != null) {
+			releaseSignal.countDown();
+		}
 	}
 	
 	private String generateKey(Long key) {
-		return key.toString();
+		return "stock:lock:" + key;
 	}
 }
@@ -0,0 +1,156 @@
+package com.inflearn.stock.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+/**
+ * id별 감소량을 Redis hash에 누적해두고 DB에 반영할 때 batch로 꺼낸다.
+ * 꺼낸 감소량은 바로 지우지 않고 batch별 processing key로 옮겨두었다가 DB에 commit된 뒤에 지운다.
+ * 반영하는 도중 서버가 종료되어도 processing key가 남으므로 다른 서버나 다음 주기가 같은 batch id로 다시 반영한다.
+ * 모든 key는 같은 hash tag를 사용하므로 클러스터에서도 한 번의 스크립트로 옮길 수 있다.
+ */
+public class RedisPendingDeltas {
+
+	// pending hash를 processing key로 이름만 바꾸므로 감소량을 읽는 동안 들어온 감소는 새 pending hash에 쌓인다.
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> TAKE_SCRIPT = new DefaultRedisScript<>("""
+			if redis.call('EXISTS', KEYS[1]) == 0 then
+				return {}
+			end
+			redis.call('RENAME', KEYS[1], KEYS[2])
+			redis.call('ZADD', KEYS[3], ARGV[2], ARGV[1])
+			return redis.call('HGETALL', KEYS[2])
+			""", List.class);
+	
+	// 여러 id의 감소량을 한 번에 누적한다. 일부만 누적된 상태가 남지 않는다.
+	private static final RedisScript<Long> ADD_ALL_SCRIPT = new DefaultRedisScript<>("""
+			for i = 1, #ARGV, 2 do
+				redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+			end
+			return 1
+			""", Long.class);
+	
+	private static final RedisScript<Long> COMPLETE_SCRIPT = new DefaultRedisScript<>("""
+			redis.call('DEL', KEYS[1])
+			return redis.call('ZREM', KEYS[2], ARGV[1])
+			""", Long.class);
+	
+	private final RedisTemplate<String, String> redisTemplate;
+	
+	private final String pendingKey;
+	
+	private final String batchesKey;
+	
+	private final String processingPrefix;
+	
+	/**
+	 * @param hashTag key 앞에 붙일 hash tag (예: {stock})
+	 */
+	public RedisPendingDeltas(RedisTemplate<String, String> redisTemplate, String hashTag) {
+		this.redisTemplate = redisTemplate;
+		this.pendingKey = hashTag + ":pending";
+		this.batchesKey = hashTag + ":batches"; // 꺼낸 시각을 score로 가지는 batch id 목록
+		this.processingPrefix = hashTag + ":processing:";
+	}
+	
+	public String getPendingKey() {
+		return pendingKey;
+	}
+	
+	public String getBatchesKey() {
+		return batchesKey;
+	}
+	
+	public String getProcessingPrefix() {
+		return processingPrefix;
+	}
+	
+	public void add(Long id, Long delta) {
+		redisTemplate.opsForHash().increment(pendingKey, id.toString(), delta);
+	}
+	
+	public void addAll(Map<Long, Long> deltas) {
+		List<String> args = new ArrayList<>(deltas.size() * 2);
+		
+		for(Map.Entry<Long, Long> delta : deltas.entrySet()) {
+			args.add(delta.getKey().toString());
+			args.add(delta.getValue().toString());
+		}
+		
+		redisTemplate.execute(ADD_ALL_SCRIPT, List.of(pendingKey), args.toArray());
+	}
+	
+	public void remove(Long id) {
+		redisTemplate.opsForHash().delete(pendingKey, id.toString());
+	}
+	
+	/**
+	 * 누적된 감소량을 새 batch로 꺼낸다. 누적된 감소량이 없다면 null을 반환한다.
+	 */
+	@SuppressWarnings("unchecked")
+	public PendingDeltaBatch take() {
+		String batchId = UUID.randomUUID().toString();
+		List<String> entries = redisTemplate.execute(TAKE_SCRIPT, List.of(pendingKey, processingPrefix + batchId, batchesKey),
+				batchId, String.valueOf(System.currentTimeMillis()));
+		
+		if(entries == null || entries.isEmpty()) {
+			return null;
+		}
+		
+		return new PendingDeltaBatch(batchId, toDeltas(entries));
+	}
+	
+	/**
+	 * 꺼낸 지 olderThanMillis가 지났는데도 지워지지 않은 batch를 반환한다.
+	 * 반영에 실패했거나 반영하던 서버가 종료된 batch이다. 아직 반영 중일 수도 있으므로 DB 반영은 batch id로 한 번만 이루어져야 한다.
+	 */
+	public List<PendingDeltaBatch> findStale(long olderThanMillis) {
+		Set<String> batchIds = redisTemplate.opsForZSet().rangeByScore(batchesKey, 0, System.currentTimeMillis() - olderThanMillis);
+		List<PendingDeltaBatch> batches = new ArrayList<>();
+		
+		if(batchIds == null) {
+			return batches;
+		}
+		
+		for(String batchId : batchIds) {
+			Map<Object, Object> entries = redisTemplate.opsForHash().entries(processingPrefix + batchId);
+			
+			if(entries.isEmpty()) {
+				// processing key를 지운 뒤 목록에서 빼기 전에 종료된 batch이다.
+				redisTemplate.opsForZSet().remove(batchesKey, batchId);
+				continue;
+			}
+			
+			Map<Long, Long> deltas = new HashMap<>();
+			entries.forEach((id, delta) -> deltas.put(Long.valueOf(id.toString()), Long.valueOf(delta.toString())));
+			batches.add(new PendingDeltaBatch(batchId, deltas));
+		}
+		
+		return batches;
+	}
+	
+	/**
+	 * DB 반영을 마친 batch를 지운다.
+	 */
+	public void complete(String batchId) {
+		redisTemplate.execute(COMPLETE_SCRIPT, List.of(processingPrefix + batchId, batchesKey), batchId);
+	}
+	
+	private Map<Long, Long> toDeltas(List<String> entries) {
+		Map<Long, Long> deltas = new HashMap<>();
+		
+		for(int i=0; i + 1 < entries.size(); i += 2) {
+			deltas.put(Long.valueOf(entries.get(i)), Long.valueOf(entries.get(i + 1)));
+		}
+		
+		return deltas;
+	}
+}
@@ -0,0 +1,194 @@
+package com.inflearn.stock.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+/**
+ * 재고 수량 자체를 Redis에 보관한다.
+ * 감소는 Lua 스크립트로 확인과 감소를 한 번에 처리하고, 감소한 수량은 pending hash에 누적해두었다가 DB에 반영한다. (RedisPendingDeltas)
+ * 클러스터에서도 스크립트가 동작하도록 모든 key는 같은 hash tag({stock})를 사용한다.
+ */
+@Component
+public class RedisStockRepository {
+
+	public static final long NOT_LOADED = -2L;
+	
+	public static final long OUT_OF_STOCK = -1L;
+	
+	static final String HASH_TAG = "{stock}";
+	
+	static final String PENDING_KEY = HASH_TAG + ":pending";
+	
+	static final RedisScript<Long> DECREASE_SCRIPT = new DefaultRedisScript<>("""
+			local quantity = redis.call('GET', KEYS[1])
+			if not quantity then
+				return -2
+			end
+			local amount = tonumber(ARGV[2])
+			if tonumber(quantity) < amount then
+				return -1
+			end
+			redis.call('HINCRBY', KEYS[2], ARGV[1], amount)
+			return redis.call('DECRBY', KEYS[1], amount)
+			""", Long.class);
+	
+	// 모든 상품의 재고를 먼저 확인한 뒤 감소시키므로 하나라도 부족하면 아무것도 감소시키지 않는다. (ARGV : id 목록, 수량 목록)
+	static final RedisScript<Long> DECREASE_ALL_SCRIPT = new DefaultRedisScript<>("""
+			local count = #KEYS - 1
+			for i = 1, count do
+				local quantity = redis.call('GET', KEYS[i])
+				if not quantity then
+					return -2
+				end
+				if tonumber(quantity) < tonumber(ARGV[count + i]) then
+					return -1
+				end
+			end
+			for i = 1, count do
+				redis.call('DECRBY', KEYS[i], ARGV[count + i])
+				redis.call('HINCRBY', KEYS[count + 1], ARGV[i], ARGV[count + i])
+			end
+			return 0
+			""", Long.class);
+	
+	// DB 수량에서 아직 DB에 반영되지 않은 감소량(pending hash와 반영 중인 batch)을 뺀 값으로 Redis 수량을 맞춘다.
+	// commit을 마쳤지만 아직 지우지 않은 batch는 두 번 빠지므로, 잠시 DB보다 적게 보일 수는 있어도 많게 보이지는 않는다.
+	// processing key는 batch 목록에서 읽으므로 KEYS로 넘기지 않지만 같은 hash tag를 사용하므로 같은 slot에 있다.
+	// (KEYS : 수량, pending hash, batch 목록 / ARGV : id, DB 수량, 이미 있으면 건너뛸지, processing key 접두사)
+	static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>("""
+			if ARGV[3] == '1' and redis.call('EXISTS', KEYS[1]) == 1 then
+				return 0
+			end
+			local pending = tonumber(redis.call('HGET', KEYS[2], ARGV[1]) or '0')
+			for _, batchId in ipairs(redis.call('ZRANGE', KEYS[3], 0, -1)) do
+				pending = pending + tonumber(redis.call('HGET', ARGV[4] .. batchId, ARGV[1]) or '0')
+			end
+			redis.call('SET', KEYS[1], tonumber(ARGV[2]) - pending)
+			return 1
+			""", Long.class);
+	
+	// DB에 이미 반영된 변경이므로 pending hash에 남기지 않고 Redis 수량만 바꾼다. 적재되지 않은 Stock은 나중에 적재할 때 DB 수량을 읽는다.
+	static final RedisScript<Long> ADJUST_SCRIPT = new DefaultRedisScript<>("""
+			if redis.call('EXISTS', KEYS[1]) == 0 then
+				return -2
+			end
+			return redis.call('INCRBY', KEYS[1], ARGV[1])
+			""", Long.class);
+	
+	private static final int MGET_CHUNK_SIZE = 500;
+	
+	private RedisTemplate<String, String> redisTemplate;
+	
+	private final RedisPendingDeltas pendingDeltas;
+	
+	public RedisStockRepository(RedisTemplate<String, String> redisTemplate) {
+		this.redisTemplate = redisTemplate;
+		this.pendingDeltas = new RedisPendingDeltas(redisTemplate, HASH_TAG);
+	}
+	
+	/**
+	 * 재고를 감소시키고 남은 수량을 반환한다.
+	 * 재고가 부족하면 OUT_OF_STOCK, Redis에 수량이 없으면 NOT_LOADED를 반환한다.
+	 */
+	public Long decrease(Long id, Long quantity) {
+		return redisTemplate.execute(DECREASE_SCRIPT, List.of(generateKey(id), PENDING_KEY), id.toString(), quantity.toString());
+	}
+	
+	/**
+	 * 여러 상품의 재고를 한 번의 스크립트로 감소시킨다. 성공하면 0, 하나라도 부족하면 OUT_OF_STOCK, 적재되지 않은 상품이 있다면 NOT_LOADED를 반환한다.
+	 */
+	public Long decreaseAll(Map<Long, Long> quantities) {
+		List<String> keys = new ArrayList<>();
+		List<String> ids = new ArrayList<>();
+		List<String> amounts = new ArrayList<>();
+		
+		quantities.forEach((id, quantity) -> {
+			keys.add(generateKey(id));
+			ids.add(id.toString());
+			amounts.add(quantity.toString());
+		});
+		
+		keys.add(PENDING_KEY);
+		ids.addAll(amounts);
+		
+		return redisTemplate.execute(DECREASE_ALL_SCRIPT, keys, ids.toArray());
+	}
+	
+	/**
+	 * 예약이나 적재처럼 DB 수량을 직접 바꾼 만큼 Redis 수량을 바꾸고 바뀐 수량을 반환한다. 적재되지 않은 Stock이면 NOT_LOADED를 반환한다.
+	 */
+	public Long adjustIfLoaded(Long id, Long increase) {
+		return redisTemplate.execute(ADJUST_SCRIPT, List.of(generateKey(id)), increase.toString());
+	}
+	
+	public Boolean loadIfAbsent(Long id, Long quantity) {
+		return redisTemplate.execute(LOAD_SCRIPT, loadKeys(id), id.toString(), quantity.toString(), "1", pendingDeltas.getProcessingPrefix()) == 1L;
+	}
+	
+	public void reconcile(Long id, Long quantity) {
+		redisTemplate.execute(LOAD_SCRIPT, loadKeys(id), id.toString(), quantity.toString(), "0", pendingDeltas.getProcessingPrefix());
+	}
+	
+	public Long getQuantity(Long id) {
+		String quantity = redisTemplate.opsForValue().get(generateKey(id));
+		
+		return quantity == null ? null : Long.valueOf(quantity);
+	}
+	
+	/**
+	 * 여러 Stock의 수량을 MGET으로 읽어서 ids와 같은 순서로 반환한다. Redis에 없는 Stock은 NOT_LOADED이다.
+	 * 키가 많으면 MGET_CHUNK_SIZE개씩 나누고, 나눈 MGET은 pipeline으로 한 번에 보낸다.
+	 */
+	public long[] getQuantities(List<Long> ids) {
+		List<Object> chunks = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+			for(int from=0; from<ids.size(); from += MGET_CHUNK_SIZE) {
+				List<Long> chunk = ids.subList(from, Math.min(from + MGET_CHUNK_SIZE, ids.size()));
+				byte[][] keys = new byte[chunk.size()][];
+				
+				for(int i=0; i<chunk.size(); i++) {
+					keys[i] = generateKey(chunk.get(i)).getBytes(StandardCharsets.UTF_8);
+				}
+				
+				connection.stringCommands().mGet(keys);
+			}
+			
+			return null;
+		});
+		
+		long[] quantities = new long[ids.size()];
+		int index = 0;
+		
+		for(Object chunk : chunks) {
+			for(Object quantity : (List<?>) chunk) {
+				quantities[index++] = quantity == null ? NOT_LOADED : Long.parseLong(quantity.toString());
+			}
+		}
+		
+		return quantities;
+	}
+	
+	public RedisPendingDeltas getPendingDeltas() {
+		return pendingDeltas;
+	}
+	
+	public void delete(Long id) {
+		redisTemplate.delete(generateKey(id));
+		pendingDeltas.remove(id);
+	}
+	
+	List<String> loadKeys(Long id) {
+		return List.of(generateKey(id), PENDING_KEY, pendingDeltas.getBatchesKey());
+	}
+	
+	static String generateKey(Long id) {
+		return HASH_TAG + ":quantity:" + id;
+	}
+}
@@ -0,0 +1,37 @@
+package com.inflearn.stock.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.inflearn.stock.domain.StockBucket;
+
+import jakarta.persistence.LockModeType;
+
+public interface StockBucketRepository extends JpaRepository<StockBucket, Long> {
+	
+	// bucket 하나만 짧게 잠그도록 호출마다 별도의 트랜잭션에서 실행한다.
+	@Transactional
+	@Modifying(clearAutomatically = true)
+	@Query("update StockBucket b set b.quantity = b.quantity - :quantity where b.productId = :productId and b.bucketNo = :bucketNo and b.quantity >= :quantity")
+	int decreaseQuantity(Long productId, Integer bucketNo, Long quantity);
+	
+	// deadlock이 생기지 않도록 항상 bucketNo 순서대로 잠근다.
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select b from StockBucket b where b.productId = :productId order by b.bucketNo")
+	List<StockBucket> findAllByProductIdWithPessimisticLock(Long productId);
+	
+	List<StockBucket> findAllByProductId(Long productId);
+	
+	long countByProductId(Long productId);
+	
+	@Query("select coalesce(sum(b.quantity), 0) from StockBucket b where b.productId = :productId")
+	Long sumQuantityByProductId(Long productId);
+	
+	@Query("select distinct b.productId from StockBucket b")
+	List<Long> findAllProductIds();
+}
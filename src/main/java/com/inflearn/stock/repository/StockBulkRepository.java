@@ -0,0 +1,159 @@
+package com.inflearn.stock.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 상품 목록 적재와 재입고를 JDBC batch로 처리한다.
+ * Stock은 IDENTITY로 id를 만들기 때문에 Hibernate는 생성된 id를 받으려고 INSERT를 한 건씩 보낸다.
+ * 여기서는 생성된 id를 돌려받지 않으므로 INSERT와 UPDATE를 JDBC batch 하나로 보낸다.
+ * MySQL에서는 jdbc-url에 rewriteBatchedStatements=true를 붙여야 batch가 한 번에 전송된다.
+ */
+@Component
+public class StockBulkRepository {
+
+	private final JdbcTemplate jdbcTemplate;
+	
+	private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+	
+	public StockBulkRepository(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+		
+		// 적재를 마친 chunk를 기록한다. chunk와 같은 트랜잭션에서 기록하므로 다시 실행해도 같은 chunk가 두 번 반영되지 않는다.
+		// chunk 번호는 chunk_size와 parts로 나눈 번호이므로 두 값도 함께 기록해서 다른 설정으로 다시 실행하는 것을 막는다.
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS stock_import_chunk (job VARCHAR(200) NOT NULL, part INT NOT NULL, chunk_no BIGINT NOT NULL, "
+				+ "records INT NOT NULL, chunk_size INT NOT NULL, parts INT NOT NULL, PRIMARY KEY (job, part, chunk_no))");
+	}
+	
+	/**
+	 * 상품의 수량을 덮어쓰고, 없는 상품은 새 Stock으로 추가한다.
+	 * 변경하거나 추가한 Stock의 id별로 줄어든 수량(늘어났다면 음수)을 반환한다. 새 Stock은 0에서 늘어난 것으로 본다.
+	 */
+	public Map<Long, Long> upsertByProductId(long[] productIds, long[] quantities, int size) {
+		List<Long> ids = new ArrayList<>(size);
+		
+		for(int i=0; i<size; i++) {
+			ids.add(productIds[i]);
+		}
+		
+		// 덮어쓰기 전의 수량을 읽는다. 같은 트랜잭션에서 UPDATE할 row이므로 미리 Lock을 잡아 그 사이에 바뀌지 않게 한다.
+		Map<Long, Long> previousQuantities = new HashMap<>(size * 2);
+		namedParameterJdbcTemplate.query("select product_id, quantity from stock where product_id in (:productIds) for update", Map.of("productIds", ids),
+				rs -> {
+					previousQuantities.put(rs.getLong("product_id"), rs.getLong("quantity"));
+				});
+		
+		int[] updated = jdbcTemplate.batchUpdate("update stock set quantity = ?, version = version + 1 where product_id = ?",
+				new ArraySetter(quantities, productIds, size));
+		
+		long[] missingProductIds = new long[size];
+		long[] missingQuantities = new long[size];
+		int missing = 0;
+		
+		for(int i=0; i<size; i++) {
+			if(updated[i] == 0) {
+				missingProductIds[missing] = productIds[i];
+				missingQuantities[missing] = quantities[i];
+				missing++;
+			}
+		}
+		
+		if(missing > 0) {
+			jdbcTemplate.batchUpdate("insert into stock (product_id, quantity, version) values (?, ?, 0)",
+					new ArraySetter(missingProductIds, missingQuantities, missing));
+		}
+		
+		Map<Long, Long> newQuantities = new HashMap<>(size * 2);
+		
+		for(int i=0; i<size; i++) {
+			newQuantities.put(productIds[i], quantities[i]);
+		}
+		
+		Map<Long, Long> decreased = new HashMap<>(size * 2);
+		namedParameterJdbcTemplate.query("select id, product_id from stock where product_id in (:productIds)", Map.of("productIds", ids), rs -> {
+			long productId = rs.getLong("product_id");
+			decreased.put(rs.getLong("id"), previousQuantities.getOrDefault(productId, 0L) - newQuantities.get(productId));
+		});
+		
+		return decreased;
+	}
+	
+	/**
+	 * Stock마다 수량을 더한다. 수량을 더한 Stock의 id를 반환하고, 없는 Stock은 건너뛴다.
+	 */
+	public List<Long> increaseQuantities(long[] ids, long[] quantities, int size) {
+		int[] updated = jdbcTemplate.batchUpdate("update stock set quantity = quantity + ?, version = version + 1 where id = ?",
+				new ArraySetter(quantities, ids, size));
+		
+		List<Long> increased = new ArrayList<>(size);
+		
+		for(int i=0; i<size; i++) {
+			if(updated[i] != 0) {
+				increased.add(ids[i]);
+			}
+		}
+		
+		return increased;
+	}
+	
+	/**
+	 * part별로 반영을 마친 chunk 번호를 반환한다.
+	 * 이전 실행이 다른 chunk-size나 parts로 나누었다면 같은 번호가 다른 행을 가리키므로 IllegalStateException을 던진다.
+	 */
+	public List<Set<Long>> findCompletedChunks(String job, int chunkSize, int parts) {
+		List<Set<Long>> completed = new ArrayList<>(parts);
+		
+		for(int i=0; i<parts; i++) {
+			completed.add(new HashSet<>());
+		}
+		
+		jdbcTemplate.query("select part, chunk_no, chunk_size, parts from stock_import_chunk where job = ?", rs -> {
+			if(rs.getInt("chunk_size") != chunkSize || rs.getInt("parts") != parts) {
+				throw new IllegalStateException("이전 실행과 chunk-size 또는 parallelism이 다릅니다. job=" + job
+						+ ", chunkSize=" + rs.getInt("chunk_size") + ", parts=" + rs.getInt("parts"));
+			}
+			
+			completed.get(rs.getInt("part")).add(rs.getLong("chunk_no"));
+		}, job);
+		
+		return completed;
+	}
+	
+	public void completeChunk(String job, int part, long chunkNo, int records, int chunkSize, int parts) {
+		jdbcTemplate.update("insert into stock_import_chunk (job, part, chunk_no, records, chunk_size, parts) values (?, ?, ?, ?, ?, ?)",
+				job, part, chunkNo, records, chunkSize, parts);
+	}
+	
+	public void deleteCompletedChunks(String job) {
+		jdbcTemplate.update("delete from stock_import_chunk where job = ?", job);
+	}
+	
+	/**
+	 * 두 배열의 i번째 값을 첫 번째, 두 번째 파라미터로 넣는다. 행마다 Object[]를 만들지 않는다.
+	 */
+	private record ArraySetter(long[] first, long[] second, int size) implements BatchPreparedStatementSetter {
+		
+		@Override
+		public void setValues(PreparedStatement ps, int i) throws SQLException {
+			ps.setLong(1, first[i]);
+			ps.setLong(2, second[i]);
+		}
+		
+		@Override
+		public int getBatchSize() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package com.inflearn.stock.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.inflearn.stock.domain.StockDeadLetter;
+
+public interface StockDeadLetterRepository extends JpaRepository<StockDeadLetter, Long> {
+
+	List<StockDeadLetter> findAllByStockId(Long stockId);
+}
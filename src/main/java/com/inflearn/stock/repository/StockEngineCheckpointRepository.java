@@ -0,0 +1,8 @@
+package com.inflearn.stock.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.inflearn.stock.domain.StockEngineCheckpoint;
+
+public interface StockEngineCheckpointRepository extends JpaRepository<StockEngineCheckpoint, Integer> {
+}
@@ -0,0 +1,12 @@
+package com.inflearn.stock.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.inflearn.stock.domain.StockLedgerEntry;
+
+public interface StockLedgerEntryRepository extends JpaRepository<StockLedgerEntry, Long> {
+
+	List<StockLedgerEntry> findAllByStockIdOrderById(Long stockId);
+}
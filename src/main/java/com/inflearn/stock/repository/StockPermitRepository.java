@@ -0,0 +1,92 @@
+package com.inflearn.stock.repository;
+
+import java.util.Map;
+
+import org.redisson.api.RSemaphore;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redisson RSemaphore의 permit 수로 재고를 관리한다.
+ * 구매자는 Lock 없이 재고 수량만큼 permit을 가져가고, 가져간 수량은 pending hash에 누적해두었다가 DB에 반영한다. (RedisPendingDeltas)
+ */
+@Component
+public class StockPermitRepository {
+
+	private final RedissonClient redissonClient;
+	
+	private final RedisPendingDeltas pendingDeltas;
+	
+	public StockPermitRepository(RedissonClient redissonClient, RedisTemplate<String, String> redisTemplate) {
+		this.redissonClient = redissonClient;
+		this.pendingDeltas = new RedisPendingDeltas(redisTemplate, "{stock:permits}");
+	}
+	
+	/**
+	 * permit이 아직 없을 때만 DB 수량으로 채운다. 이미 있다면 Redis가 더 최신이므로 덮어쓰지 않는다.
+	 */
+	public boolean seedIfAbsent(Long id, Long quantity) {
+		return getSemaphore(id).trySetPermits(Math.toIntExact(quantity));
+	}
+	
+	public boolean tryAcquire(Long id, Long quantity) {
+		return getSemaphore(id).tryAcquire(Math.toIntExact(quantity));
+	}
+	
+	public void release(Long id, Long quantity) {
+		getSemaphore(id).release(Math.toIntExact(quantity));
+	}
+	
+	public int availablePermits(Long id) {
+		return getSemaphore(id).availablePermits();
+	}
+	
+	public void addPending(Long id, Long quantity) {
+		pendingDeltas.add(id, quantity);
+	}
+	
+	/**
+	 * 여러 Stock의 감소량을 한 번에 누적한다. 실패하면 아무것도 누적되지 않으므로 가져간 permit을 모두 돌려주면 된다.
+	 */
+	public void addAllPending(Map<Long, Long> quantities) {
+		pendingDeltas.addAll(quantities);
+	}
+	
+	/**
+	 * 이미 채워진 permit이라면 delta만큼 늘리거나(음수라면 줄이고) true를 반환한다. 아직 채워지지 않았다면 false를 반환한다.
+	 */
+	public boolean addPermitsIfSeeded(Long id, Long delta) {
+		RSemaphore semaphore = getSemaphore(id);
+		
+		if(!semaphore.isExists()) {
+			return false;
+		}
+		
+		semaphore.addPermits(Math.toIntExact(delta));
+		return true;
+	}
+	
+	public RedisPendingDeltas getPendingDeltas() {
+		return pendingDeltas;
+	}
+	
+	/**
+	 * permit 수를 DB 기준으로 다시 맞춘다. 요청이 없고 반영 중인 batch도 남아 있지 않은 상태에서 실행해야 한다.
+	 */
+	public void reconcile(Long id, Long quantity) {
+		RSemaphore semaphore = getSemaphore(id);
+		semaphore.delete();
+		semaphore.trySetPermits(Math.toIntExact(quantity));
+		pendingDeltas.remove(id);
+	}
+	
+	public void delete(Long id) {
+		getSemaphore(id).delete();
+		pendingDeltas.remove(id);
+	}
+	
+	private RSemaphore getSemaphore(Long id) {
+		return redissonClient.getSemaphore("stock:permits:" + id);
+	}
+}
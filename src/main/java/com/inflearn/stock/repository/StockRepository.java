@@ -1,8 +1,14 @@
 package com.inflearn.stock.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.inflearn.stock.domain.Stock;
 
@@ -17,4 +23,34 @@ public interface StockRepository extends JpaRepository<Stock, Long> {
 	@Lock(LockModeType.OPTIMISTIC) // 스프링 데이터 JPA에서는 Lock이라는 어노테이션을 통해서 손쉽게 Optimistic Lock을 구현할 수 있다.
 	@Query("select s from Stock s where s.id = :id")
 	Stock findByIdWithOptimisticLock(Long id);
+	
+	// 여러 Stock을 하나의 SELECT ... FOR UPDATE로 잠근다. 항상 id 순서대로 잠그므로 주문끼리 서로의 Lock을 기다리는 deadlock이 생기지 않는다.
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select s from Stock s where s.id in :ids order by s.id")
+	List<Stock> findAllByIdWithPessimisticLock(Collection<Long> ids);
+	
+	@Lock(LockModeType.OPTIMISTIC)
+	@Query("select s from Stock s where s.id in :ids order by s.id")
+	List<Stock> findAllByIdWithOptimisticLock(Collection<Long> ids);
+	
+	// 조회 없이 조건부 UPDATE 한 번으로 재고를 감소시킨다. 재고가 부족하면 변경된 row 수가 0이 된다.
+	// Optimistic Lock을 사용하는 쪽과 함께 사용할 수 있도록 version도 같이 증가시킨다.
+	@Modifying(clearAutomatically = true)
+	@Query("update Stock s set s.quantity = s.quantity - :quantity, s.version = s.version + 1 where s.id = :id and s.quantity >= :quantity")
+	int decreaseQuantity(Long id, Long quantity);
+	
+	// 예약을 취소하거나 만료시킬 때 잡아둔 재고를 돌려준다.
+	@Modifying(clearAutomatically = true)
+	@Query("update Stock s set s.quantity = s.quantity + :quantity, s.version = s.version + 1 where s.id = :id")
+	int increaseQuantity(Long id, Long quantity);
+	
+	// 재고 조회 API에서 사용한다. Lock을 잡지 않고, 엔티티나 projection 객체를 만들지 않도록 [id, productId, quantity] 배열로 받는다.
+	@Transactional(readOnly = true)
+	@Query("select s.id, s.productId, s.quantity from Stock s where s.productId in :productIds")
+	List<Object[]> findQuantitiesByProductIdIn(Collection<Long> productIds);
+	
+	// 전체 재고를 id 순서로 나누어 [id, quantity] 배열로 읽는다. offset 대신 마지막으로 읽은 id 다음부터 읽으므로 뒤쪽을 읽을 때도 앞쪽 row를 건너뛰지 않는다.
+	@Transactional(readOnly = true)
+	@Query("select s.id, s.quantity from Stock s where s.id > :id order by s.id")
+	List<Object[]> findQuantitiesAfter(Long id, Pageable pageable);
 }
@@ -0,0 +1,26 @@
+package com.inflearn.stock.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import com.inflearn.stock.domain.ReservationStatus;
+import com.inflearn.stock.domain.StockReservation;
+
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+	List<StockReservation> findAllByStatus(ReservationStatus status);
+	
+	// HELD 상태일 때만 바꾼다. 확정, 취소, 만료가 동시에 일어나도 하나만 성공하므로 재고를 두 번 돌려주지 않는다.
+	@Modifying(clearAutomatically = true)
+	@Query("update StockReservation r set r.status = :status where r.id = :id and r.status = com.inflearn.stock.domain.ReservationStatus.HELD")
+	int changeStatusIfHeld(Long id, ReservationStatus status);
+	
+	// 만료 시각이 지났다면 만료 처리 전이라도 확정할 수 없다.
+	@Modifying(clearAutomatically = true)
+	@Query("update StockReservation r set r.status = com.inflearn.stock.domain.ReservationStatus.CONFIRMED where r.id = :id and r.status = com.inflearn.stock.domain.ReservationStatus.HELD and r.expiresAt > :now")
+	int confirmIfHeld(Long id, Instant now);
+}
@@ -0,0 +1,19 @@
+package com.inflearn.stock.repository;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.inflearn.stock.domain.StockWriteBehindBatch;
+
+public interface StockWriteBehindBatchRepository extends JpaRepository<StockWriteBehindBatch, String> {
+
+	// 다시 반영될 일이 없을 만큼 오래된 batch 기록을 지운다.
+	@Transactional
+	@Modifying
+	@Query("delete from StockWriteBehindBatch b where b.appliedAt < :before")
+	int deleteAppliedBefore(Instant before);
+}
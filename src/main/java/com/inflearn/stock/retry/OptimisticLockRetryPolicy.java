@@ -0,0 +1,77 @@
+package com.inflearn.stock.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Optimistic Lock 충돌만 재시도한다.
+ * 대기 시간은 decorrelated jitter 방식의 exponential backoff로 정한다. (min(maxDelay, random(baseDelay, 이전 대기 시간 * 3)))
+ * 고정된 시간만큼 기다리면 충돌한 요청들이 같은 시점에 다시 충돌하므로 대기 시간을 무작위로 흩어놓는다.
+ * 재시도 횟수, 전체 소요 시간, 전체 재시도 예산 중 하나라도 넘어서면 더 이상 재시도하지 않는다.
+ */
+@Component
+public class OptimisticLockRetryPolicy implements RetryPolicy {
+
+	private final long baseDelayMillis;
+	
+	private final long maxDelayMillis;
+	
+	private final int maxAttempts;
+	
+	private final long deadlineMillis;
+	
+	private final RetryBudget retryBudget;
+
+	public OptimisticLockRetryPolicy(
+			@Value("${stock.retry.base-delay-millis:10}") long baseDelayMillis,
+			@Value("${stock.retry.max-delay-millis:1000}") long maxDelayMillis,
+			@Value("${stock.retry.max-attempts:100}") int maxAttempts,
+			@Value("${stock.retry.deadline-millis:10000}") long deadlineMillis,
+			@Value("${stock.retry.budget.max-tokens:2000}") long budgetMaxTokens,
+			@Value("${stock.retry.budget.deposit-ratio:0.5}") double budgetDepositRatio) {
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.maxAttempts = maxAttempts;
+		this.deadlineMillis = deadlineMillis;
+		this.retryBudget = new RetryBudget(budgetMaxTokens, budgetDepositRatio);
+	}
+
+	@Override
+	public RetryState start() {
+		retryBudget.deposit();
+		
+		return new RetryState();
+	}
+
+	@Override
+	public boolean isRetryable(Throwable e) {
+		return e instanceof OptimisticLockingFailureException;
+	}
+
+	@Override
+	public long nextDelayMillis(RetryState state) {
+		if(state.getAttempts() >= maxAttempts || state.getElapsedMillis() >= deadlineMillis) {
+			return -1;
+		}
+		
+		if(!retryBudget.tryWithdraw()) {
+			return -1;
+		}
+		
+		long upper = Math.max(baseDelayMillis, state.getPreviousDelayMillis() * 3);
+		long delay = Math.min(maxDelayMillis, ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1));
+		
+		// 남은 시간보다 오래 기다리지 않는다.
+		delay = Math.min(delay, Math.max(0, deadlineMillis - state.getElapsedMillis()));
+		state.setPreviousDelayMillis(delay);
+		
+		return delay;
+	}
+	
+	public long getAvailableRetryBudget() {
+		return retryBudget.getAvailable();
+	}
+}
@@ -0,0 +1,47 @@
+package com.inflearn.stock.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 전체 요청에서 사용할 수 있는 재시도 횟수를 제한한다.
+ * 요청이 들어올 때마다 depositRatio만큼 토큰이 쌓이고 재시도할 때마다 토큰 하나를 사용한다.
+ * 충돌이 계속되어 토큰이 바닥나면 재시도하지 않고 바로 실패시켜 DB에 재시도가 몰리지 않도록 한다.
+ */
+public class RetryBudget {
+
+	private static final long SCALE = 1_000; // 소수점 비율을 다루기 위해 토큰을 1000배로 관리한다.
+	
+	private final long maxTokens;
+	
+	private final long deposit;
+	
+	private final AtomicLong tokens;
+
+	public RetryBudget(long maxTokens, double depositRatio) {
+		this.maxTokens = maxTokens * SCALE;
+		this.deposit = (long) (depositRatio * SCALE);
+		this.tokens = new AtomicLong(this.maxTokens);
+	}
+	
+	public void deposit() {
+		tokens.accumulateAndGet(deposit, (current, amount) -> Math.min(maxTokens, current + amount));
+	}
+	
+	public boolean tryWithdraw() {
+		while(true) {
+			long current = tokens.get();
+			
+			if(current < SCALE) {
+				return false;
+			}
+			
+			if(tokens.compareAndSet(current, current - SCALE)) {
+				return true;
+			}
+		}
+	}
+	
+	public long getAvailable() {
+		return tokens.get() / SCALE;
+	}
+}
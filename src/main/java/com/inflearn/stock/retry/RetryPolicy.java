@@ -0,0 +1,22 @@
+package com.inflearn.stock.retry;
+
+/**
+ * 실패한 요청을 언제, 얼마나 기다렸다가 재시도할지 결정한다.
+ */
+public interface RetryPolicy {
+
+	/**
+	 * 호출마다 한 번 호출하여 재시도 상태를 만든다.
+	 */
+	RetryState start();
+	
+	/**
+	 * 재시도해도 되는 예외인지 확인한다. 재고 부족처럼 다시 시도해도 성공할 수 없는 예외는 재시도하지 않는다.
+	 */
+	boolean isRetryable(Throwable e);
+	
+	/**
+	 * 다음 시도까지 기다릴 시간(ms)을 반환한다. 더 이상 재시도하지 않아야 한다면 음수를 반환한다.
+	 */
+	long nextDelayMillis(RetryState state);
+}
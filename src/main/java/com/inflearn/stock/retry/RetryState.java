@@ -0,0 +1,33 @@
+package com.inflearn.stock.retry;
+
+/**
+ * 한 번의 호출에 대한 재시도 상태이다. 하나의 스레드에서만 사용한다.
+ */
+public class RetryState {
+
+	private final long startedAt = System.nanoTime();
+	
+	private int attempts;
+	
+	private long previousDelayMillis;
+	
+	public void attempt() {
+		attempts++;
+	}
+	
+	public int getAttempts() {
+		return attempts;
+	}
+	
+	public long getElapsedMillis() {
+		return (System.nanoTime() - startedAt) / 1_000_000;
+	}
+	
+	public long getPreviousDelayMillis() {
+		return previousDelayMillis;
+	}
+	
+	void setPreviousDelayMillis(long previousDelayMillis) {
+		this.previousDelayMillis = previousDelayMillis;
+	}
+}
@@ -0,0 +1,64 @@
+package com.inflearn.stock.scheduler;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.datasource.ReadYourWrites;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.RedisStockRepository;
+import com.inflearn.stock.repository.StockRepository;
+
+/**
+ * 애플리케이션이 시작될 때 DB의 재고를 Redis에 적재한다.
+ * 이미 Redis에 수량이 있다면 Redis가 더 최신이므로 덮어쓰지 않는다.
+ * 재고를 Redis에서 관리할 때(stock.redis-inventory.enabled)만 등록되고, 전체 재고를 load-page-size개씩 나누어 읽으므로 한 번에 메모리에 올리지 않는다.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.redis-inventory.enabled", havingValue = "true")
+public class RedisStockLoader implements ApplicationRunner {
+
+	private final StockRepository stockRepository;
+	
+	private final RedisStockRepository redisStockRepository;
+	
+	private final int pageSize;
+
+	public RedisStockLoader(StockRepository stockRepository, RedisStockRepository redisStockRepository,
+			@Value("${stock.redis-inventory.load-page-size:1000}") int pageSize) {
+		this.stockRepository = stockRepository;
+		this.redisStockRepository = redisStockRepository;
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		long lastId = 0;
+		List<Object[]> page;
+		
+		do {
+			long after = lastId;
+			// readOnly 트랜잭션이므로 replica가 늦더라도 primary의 수량으로 적재하도록 감싼다.
+			page = ReadYourWrites.call(() -> stockRepository.findQuantitiesAfter(after, PageRequest.of(0, pageSize)));
+			
+			for(Object[] row : page) {
+				lastId = (Long) row[0];
+				redisStockRepository.loadIfAbsent(lastId, (Long) row[1]);
+			}
+		} while(page.size() == pageSize);
+	}
+	
+	/**
+	 * Redis 수량을 DB 기준으로 다시 맞춘다.
+	 * write-behind가 진행 중인 동안 실행하면 반영 중인 감소량이 빠질 수 있으므로 요청이 없는 상태에서 실행해야 한다.
+	 */
+	public void reconcile(Long id) {
+		Stock stock = ReadYourWrites.call(() -> stockRepository.findById(id).orElseThrow());
+		redisStockRepository.reconcile(id, stock.getQuantity());
+	}
+}
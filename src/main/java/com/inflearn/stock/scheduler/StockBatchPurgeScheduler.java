@@ -0,0 +1,33 @@
+package com.inflearn.stock.scheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.service.StockWriteBehindService;
+
+/**
+ * StockWriteBehindScheduler와 StockPermitFlushScheduler가 반영한 batch id 중 보관 시간이 지난 기록을 지운다.
+ * 두 스케줄러가 같은 테이블에 기록하므로 어느 방식을 사용하든 실행된다.
+ */
+@Component
+public class StockBatchPurgeScheduler {
+
+	private final StockWriteBehindService stockWriteBehindService;
+	
+	private final Duration batchRetention;
+	
+	public StockBatchPurgeScheduler(StockWriteBehindService stockWriteBehindService,
+			@Value("${stock.redis-inventory.batch-retention-hours:24}") long batchRetentionHours) {
+		this.stockWriteBehindService = stockWriteBehindService;
+		this.batchRetention = Duration.ofHours(batchRetentionHours);
+	}
+	
+	@Scheduled(fixedDelayString = "${stock.redis-inventory.batch-purge-interval-millis:3600000}")
+	public void purgeAppliedBatches() {
+		stockWriteBehindService.deleteBatchesAppliedBefore(Instant.now().minus(batchRetention));
+	}
+}
@@ -0,0 +1,27 @@
+package com.inflearn.stock.scheduler;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.service.ShardedStockService;
+
+/**
+ * 감소가 특정 bucket에 치우쳐 일부 bucket이 먼저 비게 되면 다른 bucket으로 넘어가는 시도가 늘어나므로
+ * 주기적으로 bucket 사이의 재고를 다시 고르게 나눈다.
+ */
+@Component
+public class StockBucketRebalanceScheduler {
+
+	private final ShardedStockService shardedStockService;
+
+	public StockBucketRebalanceScheduler(ShardedStockService shardedStockService) {
+		this.shardedStockService = shardedStockService;
+	}
+	
+	@Scheduled(fixedDelayString = "${stock.sharded.rebalance-interval-millis:5000}")
+	public void rebalance() {
+		for(Long productId : shardedStockService.getProductIds()) {
+			shardedStockService.rebalance(productId);
+		}
+	}
+}
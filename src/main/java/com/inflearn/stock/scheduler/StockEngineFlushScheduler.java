@@ -0,0 +1,23 @@
+package com.inflearn.stock.scheduler;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.engine.StockEngine;
+
+@Component
+@ConditionalOnProperty(name = "stock.engine.enabled", havingValue = "true")
+public class StockEngineFlushScheduler {
+
+	private final StockEngine stockEngine;
+	
+	public StockEngineFlushScheduler(StockEngine stockEngine) {
+		this.stockEngine = stockEngine;
+	}
+	
+	@Scheduled(fixedDelayString = "${stock.engine.flush-interval-millis:1000}")
+	public void flush() {
+		stockEngine.flush();
+	}
+}
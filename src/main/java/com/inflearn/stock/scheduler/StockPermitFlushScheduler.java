@@ -0,0 +1,59 @@
+package com.inflearn.stock.scheduler;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.repository.PendingDeltaBatch;
+import com.inflearn.stock.repository.RedisPendingDeltas;
+import com.inflearn.stock.repository.StockPermitRepository;
+import com.inflearn.stock.service.StockWriteBehindService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * permit으로 감소시킨 수량을 StockWriteBehindScheduler와 같은 방식으로 batch 단위로 반영한다.
+ * 반영한 batch id는 같은 테이블에 기록되고, 보관 시간이 지난 기록은 StockBatchPurgeScheduler가 지운다.
+ */
+@Slf4j
+@Component
+public class StockPermitFlushScheduler {
+
+	private final RedisPendingDeltas pendingDeltas;
+	
+	private final StockWriteBehindService stockWriteBehindService;
+	
+	private final long retryAfterMillis;
+	
+	public StockPermitFlushScheduler(StockPermitRepository stockPermitRepository, StockWriteBehindService stockWriteBehindService,
+			@Value("${stock.redisson-permit.retry-after-millis:10000}") long retryAfterMillis) {
+		this.pendingDeltas = stockPermitRepository.getPendingDeltas();
+		this.stockWriteBehindService = stockWriteBehindService;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+	
+	@Scheduled(fixedDelayString = "${stock.redisson-permit.flush-interval-millis:1000}")
+	public void flush() {
+		for(PendingDeltaBatch batch : pendingDeltas.findStale(retryAfterMillis)) {
+			apply(batch);
+		}
+		
+		PendingDeltaBatch batch = pendingDeltas.take();
+		
+		if(batch != null) {
+			apply(batch);
+		}
+	}
+	
+	private void apply(PendingDeltaBatch batch) {
+		try {
+			stockWriteBehindService.apply(batch.id(), batch.deltas());
+		} catch(RuntimeException e) {
+			// batch는 Redis에 그대로 남으므로 retry-after-millis가 지난 뒤 같은 batch id로 다시 반영한다.
+			log.error("재고 permit 감소량 반영 실패 : batchId={}", batch.id(), e);
+			return;
+		}
+		
+		pendingDeltas.complete(batch.id());
+	}
+}
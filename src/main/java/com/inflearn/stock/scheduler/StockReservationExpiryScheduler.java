@@ -0,0 +1,99 @@
+package com.inflearn.stock.scheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.inflearn.stock.datasource.ReadYourWrites;
+import com.inflearn.stock.domain.ReservationExpireResult;
+import com.inflearn.stock.domain.ReservationStatus;
+import com.inflearn.stock.domain.StockReservation;
+import com.inflearn.stock.domain.StockReservedEvent;
+import com.inflearn.stock.repository.StockReservationRepository;
+import com.inflearn.stock.service.StockReservationService;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 만료 시각이 지난 예약을 hashed timing wheel로 찾아서 재고를 돌려준다.
+ * 예약마다 스케줄 작업을 만들거나 DB를 주기적으로 조회하지 않고, 예약 등록과 만료 모두 O(1)로 처리한다.
+ * wheel 스레드는 시간만 관리하고 실제 만료 처리(DB 작업)는 virtual thread에서 실행한다.
+ */
+@Slf4j
+@Component
+public class StockReservationExpiryScheduler implements ApplicationRunner, DisposableBean {
+
+	private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+	
+	private final StockReservationService stockReservationService;
+	
+	private final StockReservationRepository stockReservationRepository;
+	
+	private final HashedWheelTimer wheel;
+	
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	
+	public StockReservationExpiryScheduler(StockReservationService stockReservationService, StockReservationRepository stockReservationRepository,
+			@Value("${stock.reservation.tick-millis:100}") long tickMillis,
+			@Value("${stock.reservation.ticks-per-wheel:512}") int ticksPerWheel) {
+		this.stockReservationService = stockReservationService;
+		this.stockReservationRepository = stockReservationRepository;
+		this.wheel = new HashedWheelTimer(new DefaultThreadFactory("stock-reservation-wheel", true), tickMillis, TimeUnit.MILLISECONDS, ticksPerWheel);
+	}
+	
+	/**
+	 * 서버가 재시작되면 wheel이 비어 있으므로 아직 HELD인 예약을 다시 등록한다.
+	 * 다른 서버에 이미 등록된 예약이 있어도 만료는 HELD일 때만 한 번 성공하므로 중복 등록해도 된다.
+	 * 여기서 빠진 예약은 다시 등록되지 않으므로 replica가 아닌 primary에서 읽는다.
+	 */
+	@Override
+	public void run(ApplicationArguments args) {
+		for(StockReservation reservation : ReadYourWrites.call(() -> stockReservationRepository.findAllByStatus(ReservationStatus.HELD))) {
+			schedule(reservation.getId(), reservation.getExpiresAt());
+		}
+	}
+	
+	@TransactionalEventListener
+	public void onReserved(StockReservedEvent event) {
+		schedule(event.reservationId(), event.expiresAt());
+	}
+	
+	public void schedule(Long reservationId, Instant expiresAt) {
+		long delayMillis = Math.max(0, Duration.between(Instant.now(), expiresAt).toMillis());
+		wheel.newTimeout(timeout -> executor.execute(() -> expire(reservationId, expiresAt)), delayMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	private void expire(Long reservationId, Instant expiresAt) {
+		try {
+			ReservationExpireResult result = stockReservationService.expire(reservationId);
+			
+			if(result == ReservationExpireResult.EXPIRED) {
+				log.debug("재고 예약 만료 : reservationId={}", reservationId);
+			} else if(result == ReservationExpireResult.NOT_YET) {
+				// wheel의 시계와 벽시계가 어긋나서 만료 시각 전에 실행되었다면 남은 시간 뒤에 다시 실행한다.
+				schedule(reservationId, expiresAt);
+			}
+		} catch(RuntimeException e) {
+			// DB에 반영하지 못했다면 잠시 뒤에 다시 시도한다.
+			log.error("재고 예약 만료 처리 실패 : reservationId={}", reservationId, e);
+			schedule(reservationId, Instant.now().plus(RETRY_DELAY));
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		wheel.stop();
+		executor.shutdown();
+	}
+}
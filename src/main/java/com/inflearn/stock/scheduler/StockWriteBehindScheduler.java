@@ -0,0 +1,66 @@
+package com.inflearn.stock.scheduler;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.repository.PendingDeltaBatch;
+import com.inflearn.stock.repository.RedisPendingDeltas;
+import com.inflearn.stock.repository.RedisStockRepository;
+import com.inflearn.stock.service.StockWriteBehindService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Redis에 누적된 감소량을 DB에 반영한다. 재고를 Redis에서 관리할 때(stock.redis-inventory.enabled)만 등록된다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stock.redis-inventory.enabled", havingValue = "true")
+public class StockWriteBehindScheduler {
+
+	private final RedisPendingDeltas pendingDeltas;
+	
+	private final StockWriteBehindService stockWriteBehindService;
+	
+	private final long retryAfterMillis;
+	
+	public StockWriteBehindScheduler(RedisStockRepository redisStockRepository, StockWriteBehindService stockWriteBehindService,
+			@Value("${stock.redis-inventory.retry-after-millis:10000}") long retryAfterMillis) {
+		this.pendingDeltas = redisStockRepository.getPendingDeltas();
+		this.stockWriteBehindService = stockWriteBehindService;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+	
+	/**
+	 * 이전에 반영하지 못한 batch를 먼저 다시 반영한 뒤 새로 누적된 감소량을 반영한다.
+	 * 서버가 시작된 직후의 첫 주기에서 이전 실행이 남긴 batch도 함께 처리된다.
+	 */
+	@Scheduled(fixedDelayString = "${stock.redis-inventory.flush-interval-millis:1000}")
+	public void flush() {
+		for(PendingDeltaBatch batch : pendingDeltas.findStale(retryAfterMillis)) {
+			apply(batch);
+		}
+		
+		PendingDeltaBatch batch = pendingDeltas.take();
+		
+		if(batch != null) {
+			apply(batch);
+		}
+	}
+	
+	private void apply(PendingDeltaBatch batch) {
+		try {
+			if(!stockWriteBehindService.apply(batch.id(), batch.deltas())) {
+				log.info("이미 반영한 재고 write-behind batch를 지웁니다. batchId={}", batch.id());
+			}
+		} catch(RuntimeException e) {
+			// batch는 Redis에 그대로 남으므로 retry-after-millis가 지난 뒤 같은 batch id로 다시 반영한다.
+			log.error("재고 write-behind 반영 실패 : batchId={}", batch.id(), e);
+			return;
+		}
+		
+		pendingDeltas.complete(batch.id());
+	}
+}
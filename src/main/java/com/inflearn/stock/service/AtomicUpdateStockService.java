@@ -0,0 +1,93 @@
+package com.inflearn.stock.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.metrics.StockMetrics;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+
+/**
+ * Stock을 조회하지 않고 조건부 UPDATE 한 번으로 재고를 감소시킨다.
+ * DB가 UPDATE 문 하나를 원자적으로 처리하므로 별도의 Lock이나 재시도 로직이 필요 없다.
+ */
+@Service
+public class AtomicUpdateStockService implements StockDecreaseStrategy {
+
+	private final StockRepository stockRepository;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final ApplicationEventPublisher eventPublisher;
+	
+	private final SoldOutRegistry soldOutRegistry;
+
+	public AtomicUpdateStockService(StockRepository stockRepository, StockMetrics stockMetrics, ApplicationEventPublisher eventPublisher, SoldOutRegistry soldOutRegistry) {
+		this.stockRepository = stockRepository;
+		this.stockMetrics = stockMetrics;
+		this.eventPublisher = eventPublisher;
+		this.soldOutRegistry = soldOutRegistry;
+	}
+
+	@Override
+	public String getName() {
+		return "atomic-update";
+	}
+	
+	@Transactional
+	@Override
+	public void decrease(Long id, Long quantity) {
+		soldOutRegistry.throwIfSoldOut(getName(), id); // 품절된 Stock이라면 DB를 조회하지 않고 바로 거절한다.
+		
+		stockMetrics.recordTransaction(getName(), id);
+		
+		int updated = stockRepository.decreaseQuantity(id, quantity);
+		
+		if(updated == 0) {
+			// 변경된 row가 없다면 Stock이 없거나 재고가 부족한 경우이다.
+			throwOutOfStock(id);
+		}
+		
+		eventPublisher.publishEvent(StockChangedEvent.of(id));
+	}
+	
+	/**
+	 * id 순서대로 조건부 UPDATE를 실행하고, 하나라도 실패하면 예외를 던져 앞서 실행한 UPDATE까지 모두 롤백한다.
+	 */
+	@Transactional
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		for(Map.Entry<Long, Long> entry : new TreeMap<>(quantities).entrySet()) {
+			if(stockRepository.decreaseQuantity(entry.getKey(), entry.getValue()) == 0) {
+				throwOutOfStock(entry.getKey());
+			}
+		}
+		
+		eventPublisher.publishEvent(new StockChangedEvent(quantities.keySet()));
+	}
+	
+	/**
+	 * 조건부 UPDATE가 실패한 이유를 확인해서 예외를 던진다. Stock이 없다면 findById가 NoSuchElementException을 던진다.
+	 * 조회한 수량은 다른 트랜잭션이 commit한 값이므로 0이라면 이 트랜잭션이 롤백되더라도 품절로 등록한다.
+	 */
+	private void throwOutOfStock(Long id) {
+		Stock stock = stockRepository.findById(id).orElseThrow();
+		
+		if(stock.getQuantity() == 0) {
+			soldOutRegistry.markSoldOut(id);
+		}
+		
+		stockMetrics.incrementOutOfStock(getName(), id);
+		throw new OutOfStockException();
+	}
+}
@@ -0,0 +1,87 @@
+package com.inflearn.stock.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.metrics.StockMetrics;
+import com.inflearn.stock.repository.StockRepository;
+
+@Service
+public class CoalescingStockService {
+
+	private final StockRepository stockRepository;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final ApplicationEventPublisher eventPublisher;
+
+	public CoalescingStockService(StockRepository stockRepository, StockMetrics stockMetrics, ApplicationEventPublisher eventPublisher) {
+		this.stockRepository = stockRepository;
+		this.stockMetrics = stockMetrics;
+		this.eventPublisher = eventPublisher;
+	}
+
+	/**
+	 * 같은 Stock에 대한 여러 요청을 하나의 트랜잭션에서 처리한다.
+	 * 요청은 도착 순서대로 재고를 할당받고, 할당된 수량의 합만큼 한 번에 감소시킨다.
+	 * 반환값은 요청 순서와 같은 순서의 성공 여부이다.
+	 */
+	@Transactional
+	public List<Boolean> decrease(Long id, List<Long> quantities) {
+		stockMetrics.recordTransaction("coalescing", id);
+		
+		StockMetrics.Stopwatch lockWait = stockMetrics.startLockWait("coalescing", id);
+		Stock stock = stockRepository.findByIdWithPessimisticLock(id);
+		lockWait.stop();
+		stockMetrics.recordLockHoldUntilTransactionCompletion("coalescing", id);
+		
+		if(stock == null) {
+			throw new NoSuchElementException("No value present");
+		}
+		
+		long remaining = stock.getQuantity();
+		long total = 0;
+		List<Boolean> results = new ArrayList<>(quantities.size());
+		
+		for(Long quantity : quantities) {
+			if(remaining >= quantity) {
+				remaining -= quantity;
+				total += quantity;
+				results.add(true);
+			} else {
+				results.add(false); // 남은 재고로 채울 수 없는 요청은 실패 처리하고 다음 요청으로 넘어간다.
+				stockMetrics.incrementOutOfStock("coalescing", id);
+			}
+		}
+		
+		if(total > 0) {
+			stock.decrease(total); // 합산된 수량으로 한 번만 감소시킨다.
+			stockRepository.saveAndFlush(stock);
+			eventPublisher.publishEvent(StockChangedEvent.of(id));
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * 여러 Stock에 걸친 요청은 모을 수 없으므로 모든 row를 id 순서대로 잠그고 바로 처리한다.
+	 */
+	@Transactional
+	public void decreaseAll(Map<Long, Long> quantities) {
+		Map<Long, Long> sorted = new TreeMap<>(quantities);
+		
+		List<Stock> stocks = stockRepository.findAllByIdWithPessimisticLock(sorted.keySet());
+		StockDecreases.decreaseAll(stocks, sorted);
+		stockRepository.saveAll(stocks);
+		eventPublisher.publishEvent(new StockChangedEvent(sorted.keySet()));
+	}
+}
@@ -1,29 +1,67 @@
 package com.inflearn.stock.service;
 
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.inflearn.stock.domain.OutOfStockException;
 import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.ledger.StockLedgerContext;
+import com.inflearn.stock.metrics.StockMetrics;
 import com.inflearn.stock.repository.StockRepository;
 
+/**
+ * Named Lock은 NamedLockManager가 별도의 connection에서 잡으므로 Lock과 상관없이 일반 트랜잭션으로 처리한다.
+ */
 @Service
 public class NamedLockStockService {
 
 	private final StockRepository stockRepository;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final ApplicationEventPublisher eventPublisher;
 
-	public NamedLockStockService(StockRepository stockRepository) {
+	public NamedLockStockService(StockRepository stockRepository, StockMetrics stockMetrics, ApplicationEventPublisher eventPublisher) {
 		this.stockRepository = stockRepository;
+		this.stockMetrics = stockMetrics;
+		this.eventPublisher = eventPublisher;
 	}
 	
-	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	@Transactional
 	public void decrease(Long id, Long quantity) { 
 		// Stock 조회
 		// 재고를 감소시킨 뒤
 		// 갱신된 값을 저장
 		
+		stockMetrics.recordTransaction("named-lock", id);
+		
 		Stock stock = stockRepository.findById(id).orElseThrow();
-		stock.decrease(quantity);
+		
+		try {
+			stock.decrease(quantity);
+		} catch(OutOfStockException e) {
+			stockMetrics.incrementOutOfStock("named-lock", id);
+			throw e;
+		}
+		
 		stockRepository.saveAndFlush(stock);
+		eventPublisher.publishEvent(StockChangedEvent.of(id));
+		StockLedgerContext.reportRemaining(stock.getQuantity());
+	}
+	
+	@Transactional
+	public void decreaseAll(Map<Long, Long> quantities) {
+		Map<Long, Long> sorted = new TreeMap<>(quantities);
+		
+		List<Stock> stocks = stockRepository.findAllById(sorted.keySet());
+		StockDecreases.decreaseAll(stocks, sorted);
+		stockRepository.saveAllAndFlush(stocks);
+		eventPublisher.publishEvent(new StockChangedEvent(sorted.keySet()));
 	}
 }
@@ -1,27 +1,60 @@
 package com.inflearn.stock.service;
 
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.inflearn.stock.domain.OutOfStockException;
 import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.ledger.StockLedgerContext;
+import com.inflearn.stock.metrics.StockMetrics;
 import com.inflearn.stock.repository.StockRepository;
 
 @Service
 public class OptimisticLockStockService {
 
 	private final StockRepository stockRepository;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final ApplicationEventPublisher eventPublisher;
 
-	public OptimisticLockStockService(StockRepository stockRepository) {
+	public OptimisticLockStockService(StockRepository stockRepository, StockMetrics stockMetrics, ApplicationEventPublisher eventPublisher) {
 		this.stockRepository = stockRepository;
+		this.stockMetrics = stockMetrics;
+		this.eventPublisher = eventPublisher;
 	}
 
 	@Transactional
 	public void decrease(Long id, Long quantity) {
+		stockMetrics.recordTransaction("optimistic", id);
+		
 		Stock stock = stockRepository.findByIdWithOptimisticLock(id);
 		
-		stock.decrease(quantity); // Optimistic Lock은 실패했을 때 재시도를 해야하므로 Facade라는 패키지를 만들고 하위에 OptimisticLockFacade라는 클래스를 생성하도록 한다.
+		try {
+			stock.decrease(quantity); // Optimistic Lock은 실패했을 때 재시도를 해야하므로 Facade라는 패키지를 만들고 하위에 OptimisticLockFacade라는 클래스를 생성하도록 한다.
+		} catch(OutOfStockException e) {
+			stockMetrics.incrementOutOfStock("optimistic", id);
+			throw e;
+		}
 		
 		stockRepository.save(stock);
+		eventPublisher.publishEvent(StockChangedEvent.of(id));
+		StockLedgerContext.reportRemaining(stock.getQuantity()); // commit에 실패하면 facade가 다시 시도하면서 덮어쓴다.
 	}
 	
+	@Transactional
+	public void decreaseAll(Map<Long, Long> quantities) {
+		Map<Long, Long> sorted = new TreeMap<>(quantities);
+		
+		List<Stock> stocks = stockRepository.findAllByIdWithOptimisticLock(sorted.keySet());
+		StockDecreases.decreaseAll(stocks, sorted);
+		stockRepository.saveAll(stocks);
+		eventPublisher.publishEvent(new StockChangedEvent(sorted.keySet()));
+	}
 }
@@ -1,26 +1,81 @@
 package com.inflearn.stock.service;
 
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.domain.OutOfStockException;
 import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.ledger.StockLedgerContext;
+import com.inflearn.stock.metrics.StockMetrics;
 import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
 
 @Service
-public class PessimisticLockStockService {
+public class PessimisticLockStockService implements StockDecreaseStrategy {
 
 	private final StockRepository stockRepository;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final ApplicationEventPublisher eventPublisher;
+	
+	private final SoldOutRegistry soldOutRegistry;
 
-	public PessimisticLockStockService(StockRepository stockRepository) {
+	public PessimisticLockStockService(StockRepository stockRepository, StockMetrics stockMetrics, ApplicationEventPublisher eventPublisher, SoldOutRegistry soldOutRegistry) {
 		this.stockRepository = stockRepository;
+		this.stockMetrics = stockMetrics;
+		this.eventPublisher = eventPublisher;
+		this.soldOutRegistry = soldOutRegistry;
 	}
 
+	@Override
+	public String getName() {
+		return "pessimistic";
+	}
+	
 	@Transactional
+	@Override
 	public void decrease(Long id, Long quantity) {
+		soldOutRegistry.throwIfSoldOut(getName(), id);
+		
+		stockMetrics.recordTransaction(getName(), id);
+		
+		StockMetrics.Stopwatch lockWait = stockMetrics.startLockWait(getName(), id);
 		Stock stock = stockRepository.findByIdWithPessimisticLock(id);
+		lockWait.stop();
+		stockMetrics.recordLockHoldUntilTransactionCompletion(getName(), id); // row lock은 트랜잭션이 끝날 때 풀린다.
 		
-		stock.decrease(quantity);
+		try {
+			stock.decrease(quantity);
+		} catch(OutOfStockException e) {
+			stockMetrics.incrementOutOfStock(getName(), id);
+			throw e;
+		}
 		
 		stockRepository.save(stock);
+		eventPublisher.publishEvent(StockChangedEvent.of(id));
+		StockLedgerContext.reportRemaining(stock.getQuantity());
+	}
+	
+	@Transactional
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		Map<Long, Long> sorted = new TreeMap<>(quantities);
+		
+		// 모든 row를 id 순서대로 하나의 SELECT ... FOR UPDATE로 잠근다.
+		List<Stock> stocks = stockRepository.findAllByIdWithPessimisticLock(sorted.keySet());
+		
+		StockDecreases.decreaseAll(stocks, sorted);
+		stockRepository.saveAll(stocks); // 변경된 row는 commit 시점에 JDBC batch로 UPDATE 된다.
+		eventPublisher.publishEvent(new StockChangedEvent(sorted.keySet()));
 	}
 }
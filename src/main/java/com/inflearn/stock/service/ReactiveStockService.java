@@ -0,0 +1,270 @@
+package com.inflearn.stock.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import com.inflearn.stock.domain.DecreaseResult;
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.metrics.StockMetrics;
+import com.inflearn.stock.repository.ReactiveRedisStockRepository;
+import com.inflearn.stock.repository.RedisStockRepository;
+import com.inflearn.stock.retry.RetryPolicy;
+import com.inflearn.stock.retry.RetryState;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * R2DBC와 Lettuce reactive 명령으로 재고를 감소시킨다.
+ * 요청을 처리하는 동안 스레드를 붙잡지 않으므로 처리량이 스레드 수에 묶이지 않는다.
+ * 
+ * - db : version 조건부 UPDATE로 감소시키고, 충돌하면 RetryPolicy가 정한 시간만큼 Mono.delay로 기다렸다가 다시 시도한다.
+ *        같은 서버에서 같은 Stock에 대한 요청은 앞선 요청이 끝난 뒤에 이어서 실행하므로 서로 충돌하지 않는다.
+ * - redis-inventory : RedisStockRepository와 같은 Lua 스크립트를 reactive 명령으로 실행한다.
+ */
+@Service
+public class ReactiveStockService {
+
+	private static final String NAME = "reactive";
+	
+	private final DatabaseClient databaseClient;
+	
+	private final TransactionalOperator transactionalOperator;
+	
+	private final ReactiveRedisStockRepository reactiveRedisStockRepository;
+	
+	private final RetryPolicy retryPolicy;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final ApplicationEventPublisher eventPublisher;
+	
+	private final boolean redisSource;
+	
+	private final int maxConcurrency;
+	
+	// Stock별로 마지막에 실행되는 요청이 끝났을 때 완료되는 Mono이다. 다음 요청은 이 Mono 뒤에 이어서 실행된다.
+	private final Map<Long, Mono<Void>> tails = new ConcurrentHashMap<>();
+	
+	public ReactiveStockService(DatabaseClient databaseClient, TransactionalOperator reactiveTransactionalOperator,
+			ReactiveRedisStockRepository reactiveRedisStockRepository, RetryPolicy retryPolicy, StockMetrics stockMetrics,
+			ApplicationEventPublisher eventPublisher,
+			@Value("${stock.reactive.source:db}") String source,
+			@Value("${stock.reactive.max-concurrency:256}") int maxConcurrency,
+			@Value("${stock.redis-inventory.enabled:false}") boolean redisInventoryEnabled) {
+		if(!source.equals("db") && !source.equals("redis-inventory")) {
+			throw new IllegalArgumentException("지원하지 않는 재고 감소 기준입니다. source=" + source);
+		}
+		
+		if(source.equals("redis-inventory") && !redisInventoryEnabled) {
+			// 감소량을 DB에 반영하는 StockWriteBehindScheduler가 꺼져 있으면 Redis에서 감소시킨 수량이 DB에 반영되지 않는다.
+			throw new IllegalArgumentException("source가 redis-inventory이면 stock.redis-inventory.enabled를 true로 설정해야 합니다.");
+		}
+		
+		this.databaseClient = databaseClient;
+		this.transactionalOperator = reactiveTransactionalOperator;
+		this.reactiveRedisStockRepository = reactiveRedisStockRepository;
+		this.retryPolicy = retryPolicy;
+		this.stockMetrics = stockMetrics;
+		this.eventPublisher = eventPublisher;
+		this.redisSource = source.equals("redis-inventory");
+		this.maxConcurrency = maxConcurrency;
+	}
+	
+	public Mono<DecreaseResult> decrease(Long id, Long quantity) {
+		if(redisSource) {
+			return decreaseInRedis(id, quantity);
+		}
+		
+		return serialize(id, Mono.defer(() -> decreaseWithRetry(id, quantity, retryPolicy.start())))
+				.doOnNext(result -> {
+					if(result == DecreaseResult.DECREASED) {
+						eventPublisher.publishEvent(StockChangedEvent.of(id));
+					}
+				});
+	}
+	
+	/**
+	 * 요청을 받은 순서대로 결과를 돌려준다.
+	 * 동시에 처리하는 요청은 max-concurrency개로 제한하고, 그 이상은 upstream에 요청하지 않으므로 요청이 쌓이지 않는다.
+	 */
+	public Flux<DecreaseResult> decrease(Publisher<DecreaseRequest> requests) {
+		return Flux.from(requests).flatMapSequential(request -> decrease(request.id(), request.quantity()), maxConcurrency);
+	}
+	
+	/**
+	 * 여러 Stock의 재고를 한 번에 감소시킨다. 하나라도 부족하면 아무것도 감소시키지 않는다.
+	 */
+	public Mono<DecreaseResult> decreaseAll(Map<Long, Long> quantities) {
+		if(redisSource) {
+			return decreaseAllInRedis(quantities);
+		}
+		
+		// id 순서대로 조건부 UPDATE를 실행하고, 하나라도 실패하면 예외로 트랜잭션 전체를 롤백한 뒤 결과로 바꾼다.
+		Mono<DecreaseResult> decreaseAll = Flux.fromIterable(new TreeMap<>(quantities).entrySet())
+				.concatMap(entry -> decreaseIfEnough(entry.getKey(), entry.getValue()))
+				.then(Mono.just(DecreaseResult.DECREASED));
+		
+		return transactionalOperator.transactional(decreaseAll)
+				.doOnNext(result -> eventPublisher.publishEvent(new StockChangedEvent(quantities.keySet())))
+				.onErrorResume(OutOfStockException.class, e -> Mono.just(DecreaseResult.OUT_OF_STOCK))
+				.onErrorResume(NoSuchElementException.class, e -> Mono.just(DecreaseResult.NOT_FOUND));
+	}
+	
+	/**
+	 * 같은 Stock에 대한 요청을 앞선 요청이 끝난 뒤에 실행한다. 기다리는 동안 스레드를 붙잡지 않는다.
+	 * 구독하는 시점에 줄을 서므로 구독하지 않은 Mono 때문에 뒤의 요청이 멈추지 않는다.
+	 */
+	private <T> Mono<T> serialize(Long id, Mono<T> action) {
+		return Mono.defer(() -> {
+			Sinks.Empty<Void> done = Sinks.empty();
+			Mono<Void> tail = done.asMono();
+			Mono<Void> previous = tails.put(id, tail);
+			Mono<Void> waitFor = previous == null ? Mono.empty() : previous;
+			
+			// 앞선 요청을 기다리다 취소되더라도 앞선 요청이 끝난 뒤에 다음 요청을 실행한다.
+			return waitFor.then(action)
+					.doFinally(signal -> waitFor.subscribe(null, null, () -> {
+						done.tryEmitEmpty();
+						tails.remove(id, tail);
+					}));
+		});
+	}
+	
+	private Mono<DecreaseResult> decreaseWithRetry(Long id, Long quantity, RetryState state) {
+		state.attempt();
+		
+		return transactionalOperator.transactional(decreaseWithVersion(id, quantity))
+				.onErrorResume(retryPolicy::isRetryable, e -> {
+					long delay = retryPolicy.nextDelayMillis(state);
+					
+					if(delay < 0) {
+						return Mono.just(DecreaseResult.CONFLICT);
+					}
+					
+					stockMetrics.incrementRetry(NAME, id);
+					return Mono.delay(Duration.ofMillis(delay)).then(Mono.defer(() -> decreaseWithRetry(id, quantity, state)));
+				});
+	}
+	
+	private Mono<DecreaseResult> decreaseWithVersion(Long id, Long quantity) {
+		return databaseClient.sql("SELECT quantity, version FROM stock WHERE id = :id")
+				.bind("id", id)
+				.map((row, metadata) -> new StockRow(row.get("quantity", Long.class), row.get("version", Long.class)))
+				.one()
+				.flatMap(stock -> {
+					if(stock.quantity() < quantity) {
+						stockMetrics.incrementOutOfStock(NAME, id);
+						return Mono.just(DecreaseResult.OUT_OF_STOCK);
+					}
+					
+					return databaseClient.sql("UPDATE stock SET quantity = :quantity, version = :version + 1 WHERE id = :id AND version = :version")
+							.bind("quantity", stock.quantity() - quantity)
+							.bind("version", stock.version())
+							.bind("id", id)
+							.fetch()
+							.rowsUpdated()
+							.flatMap(updated -> {
+								if(updated == 0) {
+									return Mono.error(new OptimisticLockingFailureException("재고 version 충돌 : " + id));
+								}
+								
+								return Mono.just(DecreaseResult.DECREASED);
+							});
+				})
+				.defaultIfEmpty(DecreaseResult.NOT_FOUND);
+	}
+	
+	private Mono<Void> decreaseIfEnough(Long id, Long quantity) {
+		return databaseClient.sql("UPDATE stock SET quantity = quantity - :quantity, version = version + 1 WHERE id = :id AND quantity >= :quantity")
+				.bind("quantity", quantity)
+				.bind("id", id)
+				.fetch()
+				.rowsUpdated()
+				.flatMap(updated -> {
+					if(updated > 0) {
+						return Mono.empty();
+					}
+					
+					// 변경된 row가 없다면 Stock이 없거나 재고가 부족한 경우이다.
+					return selectQuantity(id)
+							.flatMap(current -> {
+								stockMetrics.incrementOutOfStock(NAME, id);
+								return Mono.<Void>error(new OutOfStockException());
+							})
+							.switchIfEmpty(Mono.error(new NoSuchElementException("No value present")));
+				});
+	}
+	
+	private Mono<DecreaseResult> decreaseInRedis(Long id, Long quantity) {
+		return reactiveRedisStockRepository.decrease(id, quantity)
+				.flatMap(remaining -> {
+					if(remaining != RedisStockRepository.NOT_LOADED) {
+						return Mono.just(remaining);
+					}
+					
+					// Redis에 아직 적재되지 않은 Stock이라면 DB에서 적재한 뒤 다시 시도한다.
+					return selectQuantity(id)
+							.flatMap(current -> reactiveRedisStockRepository.loadIfAbsent(id, current))
+							.flatMap(loaded -> reactiveRedisStockRepository.decrease(id, quantity));
+				})
+				.map(remaining -> toResult(id, remaining))
+				.defaultIfEmpty(DecreaseResult.NOT_FOUND);
+	}
+	
+	private Mono<DecreaseResult> decreaseAllInRedis(Map<Long, Long> quantities) {
+		return reactiveRedisStockRepository.decreaseAll(quantities)
+				.flatMap(result -> {
+					if(result != RedisStockRepository.NOT_LOADED) {
+						return Mono.just(result);
+					}
+					
+					return databaseClient.sql("SELECT id, quantity FROM stock WHERE id IN (:ids)")
+							.bind("ids", quantities.keySet())
+							.map((row, metadata) -> Map.entry(row.get("id", Long.class), row.get("quantity", Long.class)))
+							.all()
+							.concatMap(stock -> reactiveRedisStockRepository.loadIfAbsent(stock.getKey(), stock.getValue()))
+							.then(reactiveRedisStockRepository.decreaseAll(quantities));
+				})
+				.map(result -> toResult(null, result));
+	}
+	
+	private DecreaseResult toResult(Long id, Long remaining) {
+		if(remaining == RedisStockRepository.NOT_LOADED) {
+			return DecreaseResult.NOT_FOUND; // DB에도 없는 Stock이 포함되어 있다.
+		}
+		
+		if(remaining == RedisStockRepository.OUT_OF_STOCK) {
+			stockMetrics.incrementOutOfStock(NAME, id);
+			return DecreaseResult.OUT_OF_STOCK;
+		}
+		
+		return DecreaseResult.DECREASED;
+	}
+	
+	private Mono<Long> selectQuantity(Long id) {
+		return databaseClient.sql("SELECT quantity FROM stock WHERE id = :id")
+				.bind("id", id)
+				.map((row, metadata) -> row.get("quantity", Long.class))
+				.one();
+	}
+	
+	public record DecreaseRequest(Long id, Long quantity) {
+	}
+	
+	private record StockRow(long quantity, long version) {
+	}
+}
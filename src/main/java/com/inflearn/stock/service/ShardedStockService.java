@@ -0,0 +1,173 @@
+package com.inflearn.stock.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.inflearn.stock.datasource.ReadYourWrites;
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.StockBucket;
+import com.inflearn.stock.repository.StockBucketRepository;
+
+/**
+ * 상품의 재고를 N개의 bucket row로 나누어 관리한다.
+ * 감소는 임의의 bucket부터 조건부 UPDATE를 시도하고 재고가 부족하면 다음 bucket으로 넘어간다.
+ * 하나의 row에 대한 Lock 대기가 bucket 수만큼 분산되므로 한 상품의 처리량이 row 하나의 한계를 넘어설 수 있다.
+ * id가 Stock id가 아닌 productId이므로 SoldOutRegistry 대신 모든 bucket이 0인 상품을 따로 기억해두고 bucket을 조회하지 않고 거절한다.
+ */
+@Service
+public class ShardedStockService {
+
+	private final StockBucketRepository stockBucketRepository;
+	
+	private final TransactionTemplate transactionTemplate;
+	
+	private final ConcurrentHashMap<Long, Integer> bucketCounts = new ConcurrentHashMap<>();
+	
+	// 품절된 productId. 품절 표시와 같이 ttl이 지나면 다음 요청이 bucket에서 다시 확인한다.
+	private final Cache<Long, Boolean> soldOutProducts;
+
+	public ShardedStockService(StockBucketRepository stockBucketRepository, TransactionTemplate transactionTemplate,
+			@Value("${stock.sold-out.ttl-millis:5000}") long soldOutTtlMillis,
+			@Value("${stock.cache.maximum-size:100000}") long maximumSize) {
+		this.stockBucketRepository = stockBucketRepository;
+		this.transactionTemplate = transactionTemplate;
+		this.soldOutProducts = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(Duration.ofMillis(soldOutTtlMillis))
+				.build();
+	}
+	
+	/**
+	 * 상품의 재고를 bucketCount개의 row로 나누어 생성한다. 나누어 떨어지지 않는 수량은 앞쪽 bucket부터 하나씩 더 가져간다.
+	 */
+	public void create(Long productId, Long quantity, int bucketCount) {
+		List<StockBucket> buckets = new ArrayList<>(bucketCount);
+		
+		for(int bucketNo=0; bucketNo<bucketCount; bucketNo++) {
+			buckets.add(new StockBucket(productId, bucketNo, share(quantity, bucketCount, bucketNo)));
+		}
+		
+		stockBucketRepository.saveAllAndFlush(buckets);
+		bucketCounts.put(productId, bucketCount);
+		soldOutProducts.invalidate(productId);
+	}
+	
+	public void decrease(Long productId, Long quantity) {
+		if(soldOutProducts.getIfPresent(productId) != null) {
+			throw new OutOfStockException(); // 품절된 상품이라면 bucket을 조회하지 않고 바로 거절한다.
+		}
+		
+		int bucketCount = getBucketCount(productId);
+		int start = ThreadLocalRandom.current().nextInt(bucketCount);
+		
+		for(int i=0; i<bucketCount; i++) {
+			int bucketNo = (start + i) % bucketCount;
+			
+			if(stockBucketRepository.decreaseQuantity(productId, bucketNo, quantity) == 1) {
+				return;
+			}
+		}
+		
+		// 하나의 bucket으로는 부족하다면 모든 bucket을 잠그고 여러 bucket에서 나누어 감소시킨다.
+		transactionTemplate.executeWithoutResult(status -> decreaseAcrossBuckets(productId, quantity));
+	}
+	
+	public Long getQuantity(Long productId) {
+		return stockBucketRepository.sumQuantityByProductId(productId);
+	}
+	
+	/**
+	 * bucket 사이의 재고 차이가 bucket 수보다 크다면 전체 재고를 다시 고르게 나눈다.
+	 * 먼저 Lock 없이 확인하고 필요한 경우에만 모든 bucket을 잠근다.
+	 */
+	public boolean rebalance(Long productId) {
+		if(isBalanced(stockBucketRepository.findAllByProductId(productId))) {
+			return false;
+		}
+		
+		return transactionTemplate.execute(status -> {
+			List<StockBucket> buckets = stockBucketRepository.findAllByProductIdWithPessimisticLock(productId);
+			
+			if(isBalanced(buckets)) {
+				return false;
+			}
+			
+			long total = buckets.stream().mapToLong(StockBucket::getQuantity).sum();
+			
+			for(int i=0; i<buckets.size(); i++) {
+				buckets.get(i).changeQuantity(share(total, buckets.size(), i));
+			}
+			
+			return true;
+		});
+	}
+	
+	public List<Long> getProductIds() {
+		return stockBucketRepository.findAllProductIds();
+	}
+	
+	private void decreaseAcrossBuckets(Long productId, Long quantity) {
+		List<StockBucket> buckets = stockBucketRepository.findAllByProductIdWithPessimisticLock(productId);
+		
+		if(buckets.isEmpty()) {
+			throw new IllegalArgumentException("bucket이 없는 상품입니다. productId=" + productId);
+		}
+		
+		long total = buckets.stream().mapToLong(StockBucket::getQuantity).sum();
+		
+		if(total < quantity) {
+			if(total == 0) {
+				soldOutProducts.put(productId, Boolean.TRUE);
+			}
+			
+			throw new OutOfStockException();
+		}
+		
+		long remaining = quantity;
+		List<StockBucket> largestFirst = new ArrayList<>(buckets);
+		largestFirst.sort(Comparator.comparing(StockBucket::getQuantity).reversed());
+		
+		for(StockBucket bucket : largestFirst) {
+			long taken = Math.min(remaining, bucket.getQuantity());
+			bucket.decrease(taken);
+			remaining -= taken;
+			
+			if(remaining == 0) {
+				break;
+			}
+		}
+	}
+	
+	private int getBucketCount(Long productId) {
+		// bucket 구성은 생성 이후 바뀌지 않으므로 한 번만 조회한다. 조회한 값을 계속 사용하므로 복제가 덜 된 replica가 아닌 primary에서 읽는다.
+		int bucketCount = bucketCounts.computeIfAbsent(productId, key -> (int) ReadYourWrites.call(() -> stockBucketRepository.countByProductId(key)));
+		
+		if(bucketCount == 0) {
+			bucketCounts.remove(productId);
+			throw new IllegalArgumentException("bucket이 없는 상품입니다. productId=" + productId);
+		}
+		
+		return bucketCount;
+	}
+	
+	private boolean isBalanced(List<StockBucket> buckets) {
+		long max = buckets.stream().mapToLong(StockBucket::getQuantity).max().orElse(0);
+		long min = buckets.stream().mapToLong(StockBucket::getQuantity).min().orElse(0);
+		
+		return max - min <= buckets.size();
+	}
+	
+	private long share(long total, int bucketCount, int bucketNo) {
+		return total / bucketCount + (bucketNo < total % bucketCount ? 1 : 0);
+	}
+}
@@ -0,0 +1,122 @@
+package com.inflearn.stock.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.inflearn.stock.cache.StockAvailabilities;
+import com.inflearn.stock.cache.StockAvailability;
+import com.inflearn.stock.cache.StockAvailabilityCache;
+import com.inflearn.stock.datasource.ReadYourWrites;
+import com.inflearn.stock.repository.RedisStockRepository;
+import com.inflearn.stock.repository.StockRepository;
+
+/**
+ * 상품 페이지와 장바구니에서 사용하는 재고 조회이다.
+ * 먼저 StockAvailabilityCache에서 찾고, 캐시에 없는 상품만 모아서 Lock 없이 수량만 조회한다.
+ * DB는 IN 쿼리를 in-chunk-size개씩 나누어 조회하고, source가 redis-inventory이면 Redis의 수량을 MGET으로 읽어 덮어쓴다.
+ * 장바구니의 상품 수와 관계없이 DB 한 번, Redis 한 번이면 확인할 수 있다.
+ */
+@Service
+public class StockAvailabilityService {
+
+	private final StockRepository stockRepository;
+	
+	private final RedisStockRepository redisStockRepository;
+	
+	private final StockAvailabilityCache stockAvailabilityCache;
+	
+	private final boolean redisSource;
+	
+	private final int inChunkSize;
+	
+	public StockAvailabilityService(StockRepository stockRepository, RedisStockRepository redisStockRepository, StockAvailabilityCache stockAvailabilityCache,
+			@Value("${stock.availability.source:db}") String source,
+			@Value("${stock.availability.in-chunk-size:500}") int inChunkSize) {
+		this.stockRepository = stockRepository;
+		this.redisStockRepository = redisStockRepository;
+		this.stockAvailabilityCache = stockAvailabilityCache;
+		this.redisSource = "redis-inventory".equals(source);
+		this.inChunkSize = inChunkSize;
+	}
+	
+	public StockAvailability getAvailability(Long productId) {
+		return stockAvailabilityCache.get(productId, key -> loadAll(Set.of(key)).get(key));
+	}
+	
+	/**
+	 * readYourWrites가 true이면 캐시와 replica를 거치지 않고 primary에서 조회한다. 방금 재고를 변경한 사용자에게 보여줄 때 사용한다.
+	 */
+	public StockAvailability getAvailability(Long productId, boolean readYourWrites) {
+		if(!readYourWrites) {
+			return getAvailability(productId);
+		}
+		
+		return ReadYourWrites.call(() -> loadAll(Set.of(productId)).get(productId));
+	}
+	
+	public StockAvailabilities getAvailability(Collection<Long> productIds) {
+		List<Long> ids = productIds.stream().distinct().toList();
+		Map<Long, StockAvailability> availabilities = stockAvailabilityCache.getAll(ids, this::loadAll);
+		
+		long[] resultIds = new long[ids.size()];
+		long[] quantities = new long[ids.size()];
+		
+		for(int i=0; i<ids.size(); i++) {
+			StockAvailability availability = availabilities.get(ids.get(i));
+			resultIds[i] = ids.get(i);
+			quantities[i] = availability == null ? 0 : availability.quantity();
+		}
+		
+		return new StockAvailabilities(resultIds, quantities);
+	}
+	
+	private Map<Long, StockAvailability> loadAll(Set<? extends Long> productIds) {
+		List<Long> ids = new ArrayList<>(productIds);
+		List<Object[]> rows = new ArrayList<>();
+		
+		for(int from=0; from<ids.size(); from += inChunkSize) {
+			rows.addAll(stockRepository.findQuantitiesByProductIdIn(ids.subList(from, Math.min(from + inChunkSize, ids.size()))));
+		}
+		
+		List<Long> stockIds = new ArrayList<>(rows.size());
+		long[] quantities = new long[rows.size()];
+		
+		for(int i=0; i<rows.size(); i++) {
+			Object[] row = rows.get(i);
+			stockIds.add((Long) row[0]);
+			quantities[i] = (Long) row[2];
+			stockAvailabilityCache.registerStock((Long) row[0], (Long) row[1]);
+		}
+		
+		if(redisSource && !stockIds.isEmpty()) {
+			// Redis가 재고의 기준이면 DB는 write-behind만큼 늦으므로 Redis에 적재된 수량을 사용한다.
+			long[] redisQuantities = redisStockRepository.getQuantities(stockIds);
+			
+			for(int i=0; i<redisQuantities.length; i++) {
+				if(redisQuantities[i] != RedisStockRepository.NOT_LOADED) {
+					quantities[i] = redisQuantities[i];
+				}
+			}
+		}
+		
+		// 재고가 없는 상품도 0으로 캐시해서 다시 조회하지 않도록 한다.
+		Map<Long, Long> totals = new HashMap<>();
+		ids.forEach(id -> totals.put(id, 0L));
+		
+		for(int i=0; i<rows.size(); i++) {
+			totals.merge((Long) rows.get(i)[1], quantities[i], Long::sum);
+		}
+		
+		Map<Long, StockAvailability> result = new HashMap<>();
+		totals.forEach((productId, quantity) -> result.put(productId, new StockAvailability(productId, quantity)));
+		
+		return result;
+	}
+}
@@ -0,0 +1,34 @@
+package com.inflearn.stock.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.Stock;
+
+/**
+ * 여러 Stock을 한 번에 감소시킬 때 사용한다.
+ * 모든 Stock의 재고가 충분한지 먼저 확인한 뒤 감소시키므로 하나라도 부족하면 어떤 Stock도 변경되지 않는다.
+ */
+final class StockDecreases {
+
+	private StockDecreases() {
+	}
+	
+	static void decreaseAll(List<Stock> stocks, Map<Long, Long> quantities) {
+		if(stocks.size() != quantities.size()) {
+			throw new NoSuchElementException("No value present");
+		}
+		
+		for(Stock stock : stocks) {
+			if(stock.getQuantity() < quantities.get(stock.getId())) {
+				throw new OutOfStockException();
+			}
+		}
+		
+		for(Stock stock : stocks) {
+			stock.decrease(quantities.get(stock.getId()));
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.inflearn.stock.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.NoSuchElementException;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.ReservationExpireResult;
+import com.inflearn.stock.domain.ReservationStateException;
+import com.inflearn.stock.domain.ReservationStatus;
+import com.inflearn.stock.domain.StockAdjustedEvent;
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.domain.StockQuantity;
+import com.inflearn.stock.domain.StockReservation;
+import com.inflearn.stock.domain.StockReservedEvent;
+import com.inflearn.stock.domain.StockRestockedEvent;
+import com.inflearn.stock.ledger.StockLedger;
+import com.inflearn.stock.metrics.StockMetrics;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.repository.StockReservationRepository;
+
+/**
+ * 결제가 끝날 때까지 재고를 잡아두고(reserve), 결제 결과에 따라 확정(confirm)하거나 돌려준다(release).
+ * 각 단계는 조건부 UPDATE 한 번으로 끝나므로 결제가 진행되는 동안 Lock이나 트랜잭션을 유지하지 않는다.
+ * 시간 안에 확정되지 않은 예약은 StockReservationExpiryScheduler가 만료시킨다.
+ * 잡아두거나 돌려준 수량은 StockAdjustedEvent로 발행하므로 permit, Redis, StockEngine에 적재된 재고에도 commit된 뒤 같은 만큼 반영된다.
+ * 잡아둘 수 있는지는 DB 수량으로 판단하므로, 그 방식으로 감소시켰지만 아직 DB에 반영되지 않은 수량은 고려하지 않는다.
+ * 잡아둔 수량과 돌려준 수량(음수)은 commit된 뒤 StockLedger에 기록한다. 확정은 수량을 바꾸지 않으므로 0으로 기록해서 예약이 끝났음을 남긴다.
+ */
+@Service
+public class StockReservationService {
+
+	private final StockRepository stockRepository;
+	
+	private final StockReservationRepository stockReservationRepository;
+	
+	private final ApplicationEventPublisher eventPublisher;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final StockLedger stockLedger;
+	
+	public StockReservationService(StockRepository stockRepository, StockReservationRepository stockReservationRepository,
+			ApplicationEventPublisher eventPublisher, StockMetrics stockMetrics, StockLedger stockLedger) {
+		this.stockRepository = stockRepository;
+		this.stockReservationRepository = stockReservationRepository;
+		this.eventPublisher = eventPublisher;
+		this.stockMetrics = stockMetrics;
+		this.stockLedger = stockLedger;
+	}
+	
+	/**
+	 * 재고를 잡아두고 예약 id를 반환한다. 잡아둔 수량은 바로 Stock의 수량에서 빠지므로 다른 주문이 가져갈 수 없다.
+	 */
+	@Transactional
+	public Long reserve(Long id, Long quantity, Duration ttl) {
+		StockQuantity.requirePositive(quantity); // 음수를 잡아두면 조건부 UPDATE가 재고를 늘린다.
+		
+		stockMetrics.recordTransaction("reservation", id);
+		
+		if(stockRepository.decreaseQuantity(id, quantity) == 0) {
+			if(!stockRepository.existsById(id)) {
+				throw new NoSuchElementException("No value present");
+			}
+			
+			stockMetrics.incrementOutOfStock("reservation", id);
+			throw new OutOfStockException();
+		}
+		
+		StockReservation reservation = stockReservationRepository.save(new StockReservation(id, quantity, Instant.now().plus(ttl)));
+		
+		// commit된 예약만 만료 시각을 등록하도록 이벤트로 전달한다.
+		eventPublisher.publishEvent(new StockReservedEvent(reservation.getId(), reservation.getExpiresAt()));
+		eventPublisher.publishEvent(StockChangedEvent.of(id));
+		eventPublisher.publishEvent(StockAdjustedEvent.of(id, -quantity));
+		stockLedger.recordAfterCommit("reservation", id, quantity);
+		
+		return reservation.getId();
+	}
+	
+	@Transactional
+	public void confirm(Long reservationId) {
+		if(stockReservationRepository.confirmIfHeld(reservationId, Instant.now()) == 0) {
+			throw new ReservationStateException("확정할 수 없는 예약입니다. reservationId=" + reservationId);
+		}
+		
+		StockReservation reservation = stockReservationRepository.findById(reservationId).orElseThrow();
+		stockLedger.recordAfterCommit("reservation-confirmed", reservation.getStockId(), 0L);
+	}
+	
+	@Transactional
+	public void release(Long reservationId) {
+		StockReservation reservation = stockReservationRepository.findById(reservationId).orElseThrow();
+		
+		if(!restore(reservation, ReservationStatus.RELEASED)) {
+			throw new ReservationStateException("취소할 수 없는 예약입니다. reservationId=" + reservationId);
+		}
+	}
+	
+	/**
+	 * 만료 시각이 지난 예약의 재고를 돌려준다.
+	 * 만료 시각 전에 호출되면 NOT_YET을 반환하므로 호출한 쪽이 남은 시간 뒤에 다시 호출해야 한다.
+	 */
+	@Transactional
+	public ReservationExpireResult expire(Long reservationId) {
+		StockReservation reservation = stockReservationRepository.findById(reservationId).orElse(null);
+		
+		if(reservation == null || reservation.getStatus() != ReservationStatus.HELD) {
+			return ReservationExpireResult.SKIPPED;
+		}
+		
+		if(reservation.getExpiresAt().isAfter(Instant.now())) {
+			return ReservationExpireResult.NOT_YET;
+		}
+		
+		return restore(reservation, ReservationStatus.EXPIRED) ? ReservationExpireResult.EXPIRED : ReservationExpireResult.SKIPPED;
+	}
+	
+	private boolean restore(StockReservation reservation, ReservationStatus status) {
+		if(stockReservationRepository.changeStatusIfHeld(reservation.getId(), status) == 0) {
+			return false;
+		}
+		
+		stockRepository.increaseQuantity(reservation.getStockId(), reservation.getQuantity());
+		eventPublisher.publishEvent(StockChangedEvent.of(reservation.getStockId()));
+		eventPublisher.publishEvent(StockRestockedEvent.of(reservation.getStockId()));
+		eventPublisher.publishEvent(StockAdjustedEvent.of(reservation.getStockId(), reservation.getQuantity()));
+		stockLedger.recordAfterCommit("reservation-" + status.name().toLowerCase(), reservation.getStockId(), -reservation.getQuantity());
+		return true;
+	}
+}
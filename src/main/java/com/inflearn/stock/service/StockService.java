@@ -1,25 +1,78 @@
 package com.inflearn.stock.service;
 
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.domain.OutOfStockException;
 import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.ledger.StockLedgerContext;
+import com.inflearn.stock.metrics.StockMetrics;
 import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
 
 @Service
-public class StockService {
+public class StockService implements StockDecreaseStrategy {
 
 	private final StockRepository stockRepository;
+	
+	private final StockMetrics stockMetrics;
+	
+	private final ApplicationEventPublisher eventPublisher;
+	
+	private final SoldOutRegistry soldOutRegistry;
 
-	public StockService(StockRepository stockRepository) {
+	public StockService(StockRepository stockRepository, StockMetrics stockMetrics, ApplicationEventPublisher eventPublisher, SoldOutRegistry soldOutRegistry) {
 		this.stockRepository = stockRepository;
+		this.stockMetrics = stockMetrics;
+		this.eventPublisher = eventPublisher;
+		this.soldOutRegistry = soldOutRegistry;
+	}
+	
+	@Override
+	public String getName() {
+		return "plain";
 	}
 	
 	@Transactional
+	@Override
 	public void decrease(Long id, Long quantity) {
+		// Lock 방식이 호출한 경우에는 Lock을 잡은 뒤 한 번 더 확인하는 것과 같다.
+		soldOutRegistry.throwIfSoldOut(getName(), id);
+		
+		stockMetrics.recordTransaction(getName(), id);
+		
 		Stock stock = stockRepository.findById(id).orElseThrow(); // Stock 조회
-		stock.decrease(quantity); // 재고를 감소시킨 뒤
+		
+		try {
+			stock.decrease(quantity); // 재고를 감소시킨 뒤
+		} catch(OutOfStockException e) {
+			stockMetrics.incrementOutOfStock(getName(), id);
+			throw e;
+		}
+		
 		stockRepository.saveAndFlush(stock); // 갱신된 값을 저장
+		eventPublisher.publishEvent(StockChangedEvent.of(id));
+		StockLedgerContext.reportRemaining(stock.getQuantity());
+	}
+	
+	@Transactional
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) {
+		soldOutRegistry.throwIfAnySoldOut(getName(), quantities.keySet());
+		
+		Map<Long, Long> sorted = new TreeMap<>(quantities);
+		
+		List<Stock> stocks = stockRepository.findAllById(sorted.keySet());
+		StockDecreases.decreaseAll(stocks, sorted);
+		stockRepository.saveAllAndFlush(stocks);
+		eventPublisher.publishEvent(new StockChangedEvent(sorted.keySet()));
 	}
 	
 //	//@Transactional
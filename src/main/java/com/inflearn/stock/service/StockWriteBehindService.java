@@ -0,0 +1,109 @@
+package com.inflearn.stock.service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.inflearn.stock.domain.StockChangedEvent;
+import com.inflearn.stock.domain.StockDeadLetter;
+import com.inflearn.stock.domain.StockWriteBehindBatch;
+import com.inflearn.stock.repository.StockDeadLetterRepository;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.repository.StockWriteBehindBatchRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Service
+public class StockWriteBehindService {
+
+	private final StockRepository stockRepository;
+	
+	private final StockWriteBehindBatchRepository stockWriteBehindBatchRepository;
+	
+	private final StockDeadLetterRepository stockDeadLetterRepository;
+	
+	private final ApplicationEventPublisher eventPublisher;
+	
+	public StockWriteBehindService(StockRepository stockRepository, StockWriteBehindBatchRepository stockWriteBehindBatchRepository,
+			StockDeadLetterRepository stockDeadLetterRepository, ApplicationEventPublisher eventPublisher) {
+		this.stockRepository = stockRepository;
+		this.stockWriteBehindBatchRepository = stockWriteBehindBatchRepository;
+		this.stockDeadLetterRepository = stockDeadLetterRepository;
+		this.eventPublisher = eventPublisher;
+	}
+	
+	/**
+	 * Redis에서 꺼낸 batch를 한 번만 반영한다. 이미 반영한 batch라면 아무것도 하지 않고 false를 반환한다.
+	 * batch id를 감소량과 같은 트랜잭션에 기록하므로, commit한 뒤 Redis에서 batch를 지우기 전에 종료되어 다시 반영하더라도 두 번 감소하지 않는다.
+	 * 두 서버가 같은 batch를 동시에 반영하면 batch id가 PK이므로 한쪽은 commit하지 못하고 롤백된다.
+	 */
+	@Transactional
+	public boolean apply(String batchId, Map<Long, Long> deltas) {
+		if(stockWriteBehindBatchRepository.existsById(batchId)) {
+			return false;
+		}
+		
+		stockWriteBehindBatchRepository.save(new StockWriteBehindBatch(batchId));
+		applyDeltas(batchId, deltas);
+		
+		return true;
+	}
+	
+	/**
+	 * 누적된 id별 감소량을 하나의 트랜잭션으로 DB에 반영한다.
+	 */
+	@Transactional
+	public void apply(Map<Long, Long> deltas) {
+		applyDeltas(null, deltas);
+	}
+	
+	/**
+	 * 반영할 수 없는 감소량을 dead letter로 옮긴다. 반영하는 쪽의 트랜잭션에 참여하므로 나머지 감소량과 함께 commit된다.
+	 */
+	@Transactional
+	public void quarantine(Map<Long, Long> deltas, String batchId) {
+		deltas.forEach((stockId, quantity) -> stockDeadLetterRepository.save(new StockDeadLetter(stockId, quantity, batchId)));
+	}
+	
+	@Transactional
+	public int deleteBatchesAppliedBefore(Instant before) {
+		return stockWriteBehindBatchRepository.deleteAppliedBefore(before);
+	}
+	
+	/**
+	 * 여러 노드가 동시에 반영해도 deadlock이 생기지 않도록 id 순서대로 UPDATE 한다.
+	 * 반영되지 않는 감소량은 dead letter로 옮기고 나머지는 그대로 commit하므로, Stock 하나 때문에 다른 Stock의 반영이 멈추지 않는다.
+	 */
+	private void applyDeltas(String batchId, Map<Long, Long> deltas) {
+		Set<Long> changed = new TreeSet<>();
+		
+		for(Map.Entry<Long, Long> delta : new TreeMap<>(deltas).entrySet()) {
+			if(delta.getValue() == 0) {
+				continue;
+			}
+			
+			int updated = stockRepository.decreaseQuantity(delta.getKey(), delta.getValue());
+			
+			if(updated == 0) {
+				// Redis에서 확인을 마친 감소량이므로 DB에 반영되지 않는다면 Redis와 DB가 어긋난 것이다. (Stock이 삭제되었거나 DB 재고를 직접 바꾼 경우)
+				log.error("Redis 재고와 DB 재고가 일치하지 않아 감소량을 dead letter로 옮깁니다. stockId={}, quantity={}, batchId={}",
+						delta.getKey(), delta.getValue(), batchId);
+				stockDeadLetterRepository.save(new StockDeadLetter(delta.getKey(), delta.getValue(), batchId));
+				continue;
+			}
+			
+			changed.add(delta.getKey());
+		}
+		
+		if(!changed.isEmpty()) {
+			eventPublisher.publishEvent(new StockChangedEvent(changed));
+		}
+	}
+}
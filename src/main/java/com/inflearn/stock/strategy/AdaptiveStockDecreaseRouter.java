@@ -0,0 +1,211 @@
+package com.inflearn.stock.strategy;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.inflearn.stock.facade.OptimisticLockStockFacade;
+import com.inflearn.stock.ledger.StockLedgerContext;
+
+/**
+ * 상품별 충돌 정도에 따라 재고 감소 방식을 바꾼다.
+ * 
+ * - OPTIMISTIC : 충돌이 적은 상품은 Lock 없이 Optimistic Lock으로 처리한다. 요청당 재시도 횟수의 평균이 escalate-retries를 넘으면 PESSIMISTIC으로 바꾼다.
+ * - PESSIMISTIC : row lock으로 처리한다. 요청당 처리 시간의 평균이 escalate-latency-millis를 넘으면 DISTRIBUTED로 바꾸고, deescalate-latency-millis 아래로 내려가면 OPTIMISTIC으로 돌아간다.
+ *   처리 시간은 Lock 대기 시간만이 아니라 감소 요청 전체의 시간이다. 경합이 없을 때의 처리 시간보다 충분히 크게 설정해야 한다.
+ * - DISTRIBUTED : 분산 Lock으로 DB 앞에서 요청을 줄 세운다. 처리 시간의 평균이 deescalate-latency-millis 아래로 내려가면 PESSIMISTIC으로 돌아간다.
+ * 
+ * 평균은 EWMA로 계산하고, 방식이 바뀐 뒤 min-samples개의 요청이 처리되기 전까지는 다시 바꾸지 않는다.
+ * 상품별 통계는 최대 state-maximum-size개까지 보관하고, state-idle-millis 동안 요청이 없으면 지운다. 지운 상품은 다시 OPTIMISTIC부터 시작한다.
+ */
+@Component
+public class AdaptiveStockDecreaseRouter implements StockDecreaseStrategy {
+
+	private static final double ALPHA = 0.2; // EWMA에서 최근 값의 가중치
+	
+	private final OptimisticLockStockFacade optimisticLockStockFacade;
+	
+	private final StockDecreaseStrategyRegistry strategyRegistry;
+	
+	private final String pessimisticStrategyName;
+	
+	private final String distributedStrategyName;
+	
+	private final double escalateRetries;
+	
+	private final long escalateLatencyMillis;
+	
+	private final long deescalateLatencyMillis;
+	
+	private final int minSamples;
+	
+	private final Cache<Long, ContentionState> states;
+
+	public AdaptiveStockDecreaseRouter(OptimisticLockStockFacade optimisticLockStockFacade, StockDecreaseStrategyRegistry strategyRegistry,
+			@Value("${stock.router.pessimistic-strategy:pessimistic}") String pessimisticStrategyName,
+			@Value("${stock.router.distributed-strategy:redisson-lock}") String distributedStrategyName,
+			@Value("${stock.router.escalate-retries:1.0}") double escalateRetries,
+			@Value("${stock.router.escalate-latency-millis:50}") long escalateLatencyMillis,
+			@Value("${stock.router.deescalate-latency-millis:5}") long deescalateLatencyMillis,
+			@Value("${stock.router.min-samples:20}") int minSamples,
+			@Value("${stock.router.state-maximum-size:100000}") long stateMaximumSize,
+			@Value("${stock.router.state-idle-millis:600000}") long stateIdleMillis) {
+		this.optimisticLockStockFacade = optimisticLockStockFacade;
+		this.strategyRegistry = strategyRegistry;
+		this.pessimisticStrategyName = pessimisticStrategyName;
+		this.distributedStrategyName = distributedStrategyName;
+		this.escalateRetries = escalateRetries;
+		this.escalateLatencyMillis = escalateLatencyMillis;
+		this.deescalateLatencyMillis = deescalateLatencyMillis;
+		this.minSamples = minSamples;
+		this.states = Caffeine.newBuilder()
+				.maximumSize(stateMaximumSize)
+				.expireAfterAccess(Duration.ofMillis(stateIdleMillis))
+				.build();
+	}
+
+	@Override
+	public String getName() {
+		return "adaptive";
+	}
+
+	@Override
+	public void decrease(Long id, Long quantity) throws InterruptedException {
+		ContentionState state = states.get(id, key -> new ContentionState());
+		Mode mode = state.mode;
+		
+		if(mode == Mode.OPTIMISTIC) {
+			try {
+				int attempts = optimisticLockStockFacade.decreaseAndGetAttempts(id, quantity);
+				state.recordRetries(attempts - 1);
+				StockLedgerContext.reportStrategy(optimisticLockStockFacade.getName()); // 등록된 방식을 거치지 않았으므로 기록할 방식을 알려준다.
+			} catch(OptimisticLockingFailureException e) {
+				state.recordRetryExhausted();
+				throw e;
+			}
+			
+			return;
+		}
+		
+		long startedAt = System.nanoTime();
+		
+		try {
+			strategyRegistry.get(mode == Mode.PESSIMISTIC ? pessimisticStrategyName : distributedStrategyName).decrease(id, quantity);
+		} finally {
+			state.recordLatencyMillis((System.nanoTime() - startedAt) / 1_000_000.0);
+		}
+	}
+	
+	/**
+	 * 여러 상품을 한 번에 감소시킬 때는 충돌 여부와 관계없이 Lock을 사용한다.
+	 * 하나라도 분산 Lock으로 처리하고 있는 상품이 있다면 분산 Lock을, 아니라면 Pessimistic Lock을 사용한다.
+	 */
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) throws InterruptedException {
+		boolean distributed = quantities.keySet().stream().anyMatch(id -> getMode(id) == Mode.DISTRIBUTED);
+		
+		strategyRegistry.get(distributed ? distributedStrategyName : pessimisticStrategyName).decreaseAll(quantities);
+	}
+	
+	/**
+	 * 요청을 보내지 않고 표본을 직접 남긴다. 테스트에서 평균이 바뀔 때 방식이 바뀌는지 확인할 때 사용한다.
+	 */
+	void recordRetries(Long id, int retries) {
+		states.get(id, key -> new ContentionState()).recordRetries(retries);
+	}
+	
+	void recordLatencyMillis(Long id, double latencyMillis) {
+		states.get(id, key -> new ContentionState()).recordLatencyMillis(latencyMillis);
+	}
+	
+	public Mode getMode(Long id) {
+		ContentionState state = states.getIfPresent(id);
+		
+		return state == null ? Mode.OPTIMISTIC : state.mode;
+	}
+	
+	public enum Mode {
+		OPTIMISTIC, PESSIMISTIC, DISTRIBUTED
+	}
+	
+	private final class ContentionState {
+		
+		// 통계를 갱신하는 동안에만 잡고, 다른 스레드가 갱신 중이라면 기다리지 않고 표본을 버린다.
+		private final ReentrantLock lock = new ReentrantLock();
+		
+		private volatile Mode mode = Mode.OPTIMISTIC;
+		
+		private double retries;
+		
+		private double latencyMillis;
+		
+		private int samples;
+		
+		private void recordRetries(int value) {
+			if(!lock.tryLock()) {
+				return;
+			}
+			
+			try {
+				retries = samples == 0 ? value : ALPHA * value + (1 - ALPHA) * retries;
+				samples++;
+				
+				if(mode == Mode.OPTIMISTIC && samples >= minSamples && retries > escalateRetries) {
+					switchTo(Mode.PESSIMISTIC);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		private void recordRetryExhausted() {
+			lock.lock();
+			
+			try {
+				if(mode == Mode.OPTIMISTIC) {
+					switchTo(Mode.PESSIMISTIC); // 재시도 한도를 넘어설 정도의 충돌이므로 표본 수와 관계없이 바로 방식을 바꾼다.
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		private void recordLatencyMillis(double value) {
+			if(!lock.tryLock()) {
+				return;
+			}
+			
+			try {
+				latencyMillis = samples == 0 ? value : ALPHA * value + (1 - ALPHA) * latencyMillis;
+				samples++;
+				
+				if(samples < minSamples) {
+					return;
+				}
+				
+				if(mode == Mode.PESSIMISTIC && latencyMillis > escalateLatencyMillis) {
+					switchTo(Mode.DISTRIBUTED);
+				} else if(mode == Mode.PESSIMISTIC && latencyMillis < deescalateLatencyMillis) {
+					switchTo(Mode.OPTIMISTIC);
+				} else if(mode == Mode.DISTRIBUTED && latencyMillis < deescalateLatencyMillis) {
+					switchTo(Mode.PESSIMISTIC);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		private void switchTo(Mode next) {
+			mode = next;
+			retries = 0;
+			latencyMillis = 0;
+			samples = 0;
+		}
+	}
+}
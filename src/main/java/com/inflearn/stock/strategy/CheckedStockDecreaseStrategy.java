@@ -0,0 +1,37 @@
+package com.inflearn.stock.strategy;
+
+import java.util.Map;
+
+import com.inflearn.stock.domain.StockQuantity;
+
+/**
+ * StockDecreaseStrategyRegistry가 반환하는 모든 방식에 공통으로 적용하는 검사이다.
+ * HTTP 밖에서 호출하더라도 0 이하의 수량이 감소 방식에 전달되지 않도록 한다.
+ */
+class CheckedStockDecreaseStrategy implements StockDecreaseStrategy {
+
+	private final StockDecreaseStrategy delegate;
+	
+	CheckedStockDecreaseStrategy(StockDecreaseStrategy delegate) {
+		this.delegate = delegate;
+	}
+	
+	@Override
+	public String getName() {
+		return delegate.getName();
+	}
+	
+	@Override
+	public void decrease(Long id, Long quantity) throws InterruptedException {
+		StockQuantity.requirePositive(quantity);
+		
+		delegate.decrease(id, quantity);
+	}
+	
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) throws InterruptedException {
+		StockQuantity.requirePositive(quantities);
+		
+		delegate.decreaseAll(quantities);
+	}
+}
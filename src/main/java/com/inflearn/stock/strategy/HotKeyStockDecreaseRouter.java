@@ -0,0 +1,62 @@
+package com.inflearn.stock.strategy;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.hotkey.HotKeyDetector;
+
+/**
+ * 요청이 몰리는 Stock만 경합에 강한 방식으로 보내고, 나머지는 가벼운 방식으로 처리한다.
+ * 요청마다 HotKeyDetector에 기록하므로 이 라우터를 거친 요청은 한 번씩만 집계된다.
+ * 
+ * 같은 Stock이 hot key가 되거나 벗어나는 동안에는 두 방식이 동시에 실행될 수 있으므로
+ * 두 방식 모두 다른 방식의 변경을 덮어쓰지 않아야 한다. (조건부 UPDATE, row lock 등)
+ */
+@Component
+public class HotKeyStockDecreaseRouter implements StockDecreaseStrategy {
+
+	private final HotKeyDetector hotKeyDetector;
+	
+	private final StockDecreaseStrategyRegistry strategyRegistry;
+	
+	private final String hotStrategyName;
+	
+	private final String coldStrategyName;
+	
+	public HotKeyStockDecreaseRouter(HotKeyDetector hotKeyDetector, StockDecreaseStrategyRegistry strategyRegistry,
+			@Value("${stock.hot-key.hot-strategy:coalescing}") String hotStrategyName,
+			@Value("${stock.hot-key.cold-strategy:atomic-update}") String coldStrategyName) {
+		this.hotKeyDetector = hotKeyDetector;
+		this.strategyRegistry = strategyRegistry;
+		this.hotStrategyName = hotStrategyName;
+		this.coldStrategyName = coldStrategyName;
+	}
+	
+	@Override
+	public String getName() {
+		return "hot-key";
+	}
+	
+	@Override
+	public void decrease(Long id, Long quantity) throws InterruptedException {
+		boolean hot = hotKeyDetector.record(id);
+		
+		strategyRegistry.get(hot ? hotStrategyName : coldStrategyName).decrease(id, quantity);
+	}
+	
+	/**
+	 * 하나라도 hot key가 포함되어 있다면 전체를 hot key 방식으로 처리한다.
+	 */
+	@Override
+	public void decreaseAll(Map<Long, Long> quantities) throws InterruptedException {
+		boolean hot = false;
+		
+		for(Long id : quantities.keySet()) {
+			hot |= hotKeyDetector.record(id);
+		}
+		
+		strategyRegistry.get(hot ? hotStrategyName : coldStrategyName).decreaseAll(quantities);
+	}
+}
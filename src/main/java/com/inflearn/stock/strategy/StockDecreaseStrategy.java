@@ -0,0 +1,23 @@
+package com.inflearn.stock.strategy;
+
+import java.util.Map;
+
+/**
+ * 재고 감소 방식의 공통 인터페이스이다.
+ * 호출하는 쪽은 구현체를 직접 알 필요 없이 이름으로 방식을 선택할 수 있다. (StockDecreaseStrategyRegistry)
+ */
+public interface StockDecreaseStrategy {
+
+	/**
+	 * 설정이나 StockDecreaseStrategyRegistry에서 방식을 찾을 때 사용하는 이름이다.
+	 */
+	String getName();
+	
+	void decrease(Long id, Long quantity) throws InterruptedException;
+	
+	/**
+	 * 여러 Stock의 재고를 한 번에 감소시킨다. (key : Stock id, value : 감소시킬 수량)
+	 * 하나라도 재고가 부족하면 아무것도 감소시키지 않는다. Lock은 항상 id 순서대로 잡는다.
+	 */
+	void decreaseAll(Map<Long, Long> quantities) throws InterruptedException;
+}
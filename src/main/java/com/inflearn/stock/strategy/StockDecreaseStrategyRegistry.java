@@ -0,0 +1,61 @@
+package com.inflearn.stock.strategy;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import com.inflearn.stock.ledger.LedgerRecordingStockDecreaseStrategy;
+import com.inflearn.stock.ledger.StockLedger;
+
+/**
+ * 등록된 StockDecreaseStrategy를 이름으로 찾는다.
+ * 라우터처럼 다른 방식을 감싸는 구현체도 StockDecreaseStrategy이므로 생성 시점에 순환 참조가 생기지 않도록 처음 사용할 때 목록을 만든다.
+ * 반환하는 방식은 0 이하의 수량을 거절하고(CheckedStockDecreaseStrategy), 감소에 성공하면 StockLedger에 기록하도록 감싸져 있다.
+ */
+@Component
+public class StockDecreaseStrategyRegistry {
+
+	private final ObjectProvider<StockDecreaseStrategy> strategyProvider;
+	
+	private final StockLedger stockLedger;
+	
+	private volatile Map<String, StockDecreaseStrategy> strategies;
+
+	public StockDecreaseStrategyRegistry(ObjectProvider<StockDecreaseStrategy> strategyProvider, StockLedger stockLedger) {
+		this.strategyProvider = strategyProvider;
+		this.stockLedger = stockLedger;
+	}
+	
+	public StockDecreaseStrategy get(String name) {
+		StockDecreaseStrategy strategy = getStrategies().get(name);
+		
+		if(strategy == null) {
+			throw new IllegalArgumentException("등록되지 않은 재고 감소 방식입니다. name=" + name);
+		}
+		
+		return strategy;
+	}
+	
+	public Collection<StockDecreaseStrategy> getAll() {
+		return getStrategies().values();
+	}
+	
+	private Map<String, StockDecreaseStrategy> getStrategies() {
+		Map<String, StockDecreaseStrategy> result = strategies;
+		
+		if(result == null) {
+			result = new LinkedHashMap<>();
+			
+			for(StockDecreaseStrategy strategy : strategyProvider.orderedStream().toList()) {
+				result.put(strategy.getName(), new CheckedStockDecreaseStrategy(new LedgerRecordingStockDecreaseStrategy(strategy, stockLedger)));
+			}
+			
+			strategies = result;
+		}
+		
+		return result;
+	}
+}
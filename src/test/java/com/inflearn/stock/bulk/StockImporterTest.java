@@ -0,0 +1,187 @@
+package com.inflearn.stock.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.cache.SoldOutRegistry;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockBulkRepository;
+import com.inflearn.stock.repository.StockRepository;
+
+/**
+ * JDBC batch 대량 적재
+ *
+ * 장점
+ * - 행마다 INSERT를 보내지 않고 chunk마다 batch 하나와 commit 하나로 반영하므로 수백만 건도 빠르게 적재한다.
+ * - 반영을 마친 chunk를 같은 트랜잭션에서 기록하므로 중간에 실패해도 남은 chunk부터 다시 적재할 수 있다.
+ * - 같은 상품은 항상 같은 part에서 순서대로 반영하므로 파일에 여러 번 나와도 Stock이 하나만 만들어진다.
+ *
+ * 단점
+ * - 엔티티를 거치지 않으므로 StockEntityListener 같은 JPA 콜백이 실행되지 않는다.
+ * - Redis나 StockEngine에 이미 적재된 재고는 따로 맞춰야 한다.
+ */
+@SpringBootTest(properties = {
+		"stock.import.chunk-size=1000", // CHUNK_SIZE
+		"stock.import.parallelism=4" // PARTS
+})
+public class StockImporterTest {
+
+	private static final int PRODUCTS = 10_000;
+	
+	private static final int CHUNK_SIZE = 1000;
+	
+	private static final int PARTS = 4;
+	
+	@Autowired
+	private StockImporter stockImporter;
+	
+	@Autowired
+	private StockBulkRepository stockBulkRepository;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	@Autowired
+	private SoldOutRegistry soldOutRegistry;
+	
+	@TempDir
+	private Path directory;
+	
+	@AfterEach
+	public void after() {
+		soldOutRegistry.clearAll();
+		stockRepository.deleteAllInBatch();
+	}
+	
+	@Test
+	public void CSV_상품_목록을_적재한다() throws IOException, InterruptedException {
+		Path file = writeCatalog(10L);
+		
+		StockImportResult result = stockImporter.importFile("catalog", file, StockImportMode.CATALOG);
+		
+		assertEquals(PRODUCTS, result.records());
+		assertEquals(0, result.skippedChunks());
+		assertEquals(PRODUCTS, stockRepository.count());
+		assertEquals(PRODUCTS * 10L, totalQuantity());
+		
+		// 같은 상품 목록을 다시 적재하면 Stock을 추가하지 않고 수량만 덮어쓴다.
+		stockImporter.importFile("catalog", writeCatalog(20L), StockImportMode.CATALOG);
+		
+		assertEquals(PRODUCTS, stockRepository.count());
+		assertEquals(PRODUCTS * 20L, totalQuantity());
+	}
+	
+	@Test
+	public void 이미_반영한_chunk는_다시_적재하지_않는다() throws IOException, InterruptedException {
+		Path file = writeCatalog(10L);
+		
+		// 이전 실행에서 0번 part의 chunk를 모두 반영하고 종료된 상황
+		long completedProducts = LongStream.rangeClosed(1, PRODUCTS).filter(productId -> StockImporter.partOf(productId, PARTS) == 0).count();
+		long completedChunks = (completedProducts + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		
+		for(long chunkNo=0; chunkNo<completedChunks; chunkNo++) {
+			stockBulkRepository.completeChunk("restart", 0, chunkNo, CHUNK_SIZE, CHUNK_SIZE, PARTS);
+		}
+		
+		StockImportResult result = stockImporter.importFile("restart", file, StockImportMode.CATALOG);
+		
+		assertEquals(completedChunks, result.skippedChunks());
+		assertEquals(PRODUCTS - completedProducts, stockRepository.count());
+		assertTrue(stockBulkRepository.findCompletedChunks("restart", CHUNK_SIZE, PARTS).stream().allMatch(chunks -> chunks.isEmpty()));
+	}
+	
+	@Test
+	public void 다른_chunk_size로_다시_실행하면_적재하지_않는다() throws IOException {
+		Path file = writeCatalog(10L);
+		
+		// 이전 실행은 500행씩 나누었으므로 같은 chunk 번호가 다른 행을 가리킨다.
+		stockBulkRepository.completeChunk("resized", 0, 0, 500, 500, PARTS);
+		
+		assertThrows(IllegalStateException.class, () -> stockImporter.importFile("resized", file, StockImportMode.CATALOG));
+		assertEquals(0, stockRepository.count());
+		
+		stockBulkRepository.deleteCompletedChunks("resized");
+	}
+	
+	@Test
+	public void 같은_상품이_여러_chunk에_나와도_Stock은_하나만_만든다() throws IOException, InterruptedException {
+		Path file = directory.resolve("duplicated.csv");
+		
+		try(BufferedWriter writer = Files.newBufferedWriter(file)) {
+			writer.write("productId,quantity\n");
+			
+			// 같은 상품이 서로 다른 chunk에 세 번 나온다. 마지막 수량이 남아야 한다.
+			for(long quantity=1; quantity<=3; quantity++) {
+				for(long productId=1; productId<=PRODUCTS; productId++) {
+					writer.write(productId + "," + quantity + "\n");
+				}
+			}
+		}
+		
+		StockImportResult result = stockImporter.importFile("duplicated", file, StockImportMode.CATALOG);
+		
+		assertEquals(PRODUCTS * 3L, result.records());
+		assertEquals(PRODUCTS, stockRepository.count());
+		assertEquals(PRODUCTS * 3L, totalQuantity());
+	}
+	
+	@Test
+	public void binary_파일로_재입고하면_품절이_해제된다() throws IOException, InterruptedException {
+		Long stockId = stockRepository.saveAndFlush(new Stock(1L, 0L)).getId();
+		soldOutRegistry.markSoldOut(stockId);
+		
+		Path file = directory.resolve("restock.bin");
+		
+		try(DataOutputStream output = new DataOutputStream(Files.newOutputStream(file))) {
+			for(int i=0; i<3; i++) {
+				output.writeLong(stockId);
+				output.writeLong(10L);
+			}
+			
+			output.writeLong(Long.MAX_VALUE); // 없는 Stock은 건너뛴다.
+			output.writeLong(10L);
+		}
+		
+		StockImportResult result = stockImporter.importFile("restock", file, StockImportMode.RESTOCK);
+		
+		assertEquals(4, result.records());
+		assertEquals(1, result.changedStocks());
+		assertEquals(30, stockRepository.findById(stockId).orElseThrow().getQuantity());
+		assertFalse(soldOutRegistry.isSoldOut(stockId));
+	}
+	
+	private Path writeCatalog(long quantity) throws IOException {
+		Path file = directory.resolve("catalog-" + quantity + ".csv");
+		
+		try(BufferedWriter writer = Files.newBufferedWriter(file)) {
+			writer.write("productId,quantity\n");
+			
+			for(long productId=1; productId<=PRODUCTS; productId++) {
+				writer.write(productId + "," + quantity + "\n");
+			}
+		}
+		
+		return file;
+	}
+	
+	private long totalQuantity() {
+		List<Stock> stocks = stockRepository.findAll();
+		return stocks.stream().mapToLong(Stock::getQuantity).sum();
+	}
+}
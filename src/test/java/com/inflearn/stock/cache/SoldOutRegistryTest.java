@@ -0,0 +1,114 @@
+package com.inflearn.stock.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockRestockedEvent;
+import com.inflearn.stock.facade.RedissonLockStockFacade;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.StockDecreaseStrategyRegistry;
+
+/**
+ * 품절 표시
+ * 
+ * 재고보다 많은 요청이 몰리면 재고가 0이 된 뒤의 요청은 Lock을 잡지 않고 바로 거절되어야 한다.
+ */
+@SpringBootTest
+public class SoldOutRegistryTest {
+
+	@Autowired
+	private RedissonLockStockFacade redissonLockStockFacade;
+	
+	@Autowired
+	private SoldOutRegistry soldOutRegistry;
+	
+	@Autowired
+	private StockDecreaseStrategyRegistry strategyRegistry;
+	
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+
+	@AfterEach
+	public void after() {
+		soldOutRegistry.clearAll();
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 재고보다_많은_150개의_요청() throws InterruptedException {
+		int threadCount = 150;
+
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		AtomicInteger outOfStock = new AtomicInteger();
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					redissonLockStockFacade.decrease(stockId, 1L);
+				} catch(OutOfStockException e) {
+					outOfStock.incrementAndGet();
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await();
+		
+		Stock stock = stockRepository.findById(stockId).orElseThrow();
+		
+		assertEquals(0, stock.getQuantity());
+		assertEquals(50, outOfStock.get());
+		assertTrue(soldOutRegistry.isSoldOut(stockId));
+		
+		// 품절 이후의 요청은 Lock을 잡지 않고 거절된다.
+		assertThrows(OutOfStockException.class, () -> redissonLockStockFacade.decrease(stockId, 1L));
+		
+		// 재고가 다시 들어오면 품절 표시가 지워진다.
+		eventPublisher.publishEvent(StockRestockedEvent.of(stockId));
+		assertFalse(soldOutRegistry.isSoldOut(stockId));
+	}
+	
+	@Test
+	public void Lock을_사용하지_않는_방식도_품절이면_DB를_조회하지_않는다() {
+		// 실제로는 재고가 남아 있지만 품절로 표시되어 있으므로 DB까지 가지 않고 거절되어야 한다.
+		soldOutRegistry.markSoldOut(stockId);
+		
+		for(String strategy : List.of("atomic-update", "plain")) {
+			assertThrows(OutOfStockException.class, () -> strategyRegistry.get(strategy).decrease(stockId, 1L));
+			assertThrows(OutOfStockException.class, () -> strategyRegistry.get(strategy).decreaseAll(Map.of(stockId, 1L)));
+		}
+		
+		assertEquals(100, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+}
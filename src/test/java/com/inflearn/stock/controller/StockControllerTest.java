@@ -0,0 +1,105 @@
+package com.inflearn.stock.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockRepository;
+
+/**
+ * virtual thread에서 재고 감소 API 호출
+ * 
+ * 장점
+ * - 요청마다 virtual thread를 사용하므로 Lock이나 재시도를 기다리는 요청이 많아도 플랫폼 스레드가 부족해지지 않는다.
+ * - Stock별, 전체 동시 실행 수를 제한하므로 기다리는 요청이 DB Connection을 모두 차지하지 않는다.
+ *
+ * 단점
+ * - 정해진 시간 안에 차례를 얻지 못한 요청은 429로 실패한다.
+ */
+@SpringBootTest(properties = "stock.api.strategy=atomic-update")
+@AutoConfigureMockMvc
+public class StockControllerTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+	
+	@AfterEach
+	public void after() {
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100;
+		
+		// 실제 요청 처리와 같이 요청마다 virtual thread를 사용한다.
+		ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					mockMvc.perform(post("/stocks/{id}/decrease", stockId).param("quantity", "1"))
+						.andExpect(status().isNoContent());
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+		
+		latch.await();
+		
+		Stock stock = stockRepository.findById(stockId).orElseThrow();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		assertEquals(0, stock.getQuantity());
+	}
+	
+	@Test
+	public void 재고가_부족하면_409() throws Exception {
+		mockMvc.perform(post("/stocks/{id}/decrease", stockId).param("quantity", "101"))
+			.andExpect(status().isConflict());
+	}
+	
+	@Test
+	public void 수량이_0_이하이면_400() throws Exception {
+		// 음수를 감소시키면 재고 부족 검사를 통과하고 재고가 늘어난다.
+		mockMvc.perform(post("/stocks/{id}/decrease", stockId).param("quantity", "-100"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/stocks/{id}/decrease", stockId).param("quantity", "0"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/stocks/decrease").contentType(MediaType.APPLICATION_JSON).content("{\"" + stockId + "\": -100}"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/stocks/{id}/reservations", stockId).param("quantity", "-100"))
+			.andExpect(status().isBadRequest());
+		
+		assertEquals(100, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+}
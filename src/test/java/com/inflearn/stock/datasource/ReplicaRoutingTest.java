@@ -0,0 +1,113 @@
+package com.inflearn.stock.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.cache.StockAvailabilityCache;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockBucket;
+import com.inflearn.stock.repository.StockBucketRepository;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.service.AtomicUpdateStockService;
+import com.inflearn.stock.service.StockAvailabilityService;
+
+/**
+ * 읽기/쓰기 DataSource 분리
+ *
+ * 장점
+ * - readOnly 트랜잭션의 조회가 replica에서 처리되므로 primary는 재고 감소에 집중할 수 있다.
+ * - 복제 지연이 허용 범위를 넘으면 조회도 primary로 보내므로 오래된 수량을 보여주는 시간이 제한된다.
+ *
+ * 단점
+ * - 복제가 끝나기 전에는 replica에서 이전 수량이 조회된다. 방금 재고를 변경한 사용자에게는 read-your-writes 조회가 필요하다.
+ */
+@SpringBootTest(properties = {
+		"stock.replica.enabled=true",
+		"stock.replica.stand-in-interval-millis=3600000", // 테스트에서 직접 복제한다.
+		"stock.replica.max-lag-millis=3600000"
+})
+public class ReplicaRoutingTest {
+
+	@Autowired
+	private StockAvailabilityService stockAvailabilityService;
+	
+	@Autowired
+	private StockAvailabilityCache stockAvailabilityCache;
+	
+	@Autowired
+	private AtomicUpdateStockService atomicUpdateStockService;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	@Autowired
+	private StockBucketRepository stockBucketRepository;
+	
+	@Autowired
+	private ReplicaLagMonitor replicaLagMonitor;
+	
+	@Autowired
+	private H2ReplicationStandIn h2ReplicationStandIn;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockAvailabilityCache.invalidateAll();
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+		replicate();
+	}
+	
+	@AfterEach
+	public void after() {
+		stockBucketRepository.deleteAll();
+		stockRepository.deleteAll();
+		replicate();
+	}
+	
+	@Test
+	public void 복제되기_전에는_replica에서_이전_수량이_조회된다() {
+		atomicUpdateStockService.decrease(stockId, 30L);
+		
+		assertEquals(100, stockAvailabilityService.getAvailability(1L).quantity());
+		
+		replicate();
+		stockAvailabilityCache.invalidateAll();
+		
+		assertEquals(70, stockAvailabilityService.getAvailability(1L).quantity());
+	}
+	
+	@Test
+	public void read_your_writes_조회는_primary에서_처리된다() {
+		atomicUpdateStockService.decrease(stockId, 30L);
+		
+		assertEquals(70, stockAvailabilityService.getAvailability(1L, true).quantity());
+		assertEquals(70, ReadYourWrites.call(() -> stockRepository.findById(stockId).orElseThrow()).getQuantity());
+	}
+	
+	@Test
+	public void stock_외의_테이블도_replica에_복제된다() {
+		for(int bucketNo=0; bucketNo<4; bucketNo++) {
+			stockBucketRepository.saveAndFlush(new StockBucket(1L, bucketNo, 25L));
+		}
+		
+		assertEquals(0, stockBucketRepository.countByProductId(1L));
+		assertEquals(4, ReadYourWrites.call(() -> stockBucketRepository.countByProductId(1L)));
+		
+		replicate();
+		
+		assertEquals(4, stockBucketRepository.countByProductId(1L));
+		assertEquals(100, stockBucketRepository.sumQuantityByProductId(1L));
+	}
+	
+	private void replicate() {
+		replicaLagMonitor.heartbeat();
+		h2ReplicationStandIn.replicate();
+		replicaLagMonitor.heartbeat();
+	}
+}
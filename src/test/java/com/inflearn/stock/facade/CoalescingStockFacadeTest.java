@@ -0,0 +1,117 @@
+package com.inflearn.stock.facade;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockRepository;
+
+/**
+ * Coalescing
+ * 
+ * 같은 Stock에 대한 동시 요청을 모아서 하나의 트랜잭션에서 합산된 수량으로 한 번만 감소시킨다.
+ * 요청마다 row lock을 잡고 commit하는 대신 여러 요청이 하나의 row lock과 commit을 공유하므로 같은 상품에 요청이 몰릴 때 처리량이 높아진다.
+ */
+@SpringBootTest
+public class CoalescingStockFacadeTest {
+
+	@Autowired
+	private CoalescingStockFacade coalescingStockFacade;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+
+	@AfterEach
+	public void after() {
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100;
+
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					coalescingStockFacade.decrease(1L, 1L);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await();
+		
+		Stock stock = stockRepository.findById(1L).orElseThrow();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		System.out.println("stock.getQuantity() : " + stock.getQuantity());
+		assertEquals(0, stock.getQuantity());
+	}
+	
+	@Test
+	public void 처리를_마친_Stock의_큐는_정리된다() throws InterruptedException {
+		coalescingStockFacade.decrease(stockId, 1L);
+		
+		// 요청한 스레드가 직접 combiner가 되어 처리했으므로 반환될 때 큐도 정리되어 있다.
+		assertEquals(0, coalescingStockFacade.getQueueCount());
+		assertEquals(99, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+	
+	@Test
+	public void 재고보다_많은_요청() throws InterruptedException {
+		int threadCount = 150; // 재고(100개)보다 많은 요청을 보내면 초과한 요청은 각자 실패 결과를 받아야 한다.
+
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		AtomicInteger outOfStockCount = new AtomicInteger();
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					coalescingStockFacade.decrease(1L, 1L);
+				} catch (OutOfStockException e) {
+					outOfStockCount.incrementAndGet();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await();
+		
+		Stock stock = stockRepository.findById(1L).orElseThrow();
+		
+		// 예상 재고 : 0, 실패한 요청 : 150 - 100 = 50
+		assertEquals(0, stock.getQuantity());
+		assertEquals(50, outOfStockCount.get());
+	}
+}
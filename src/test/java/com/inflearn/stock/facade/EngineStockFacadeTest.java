@@ -0,0 +1,130 @@
+package com.inflearn.stock.facade;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.engine.StockEngine;
+import com.inflearn.stock.repository.StockRepository;
+
+/**
+ * 파티션 단일 스레드 엔진
+ * 
+ * 장점
+ * - 같은 Stock의 요청은 한 스레드가 메모리에서 순서대로 처리하므로 Lock, 트랜잭션, DB 왕복이 없다.
+ * - journal과 snapshot으로 재시작해도 재고가 복구된다.
+ *
+ * 단점
+ * - DB에는 flush-interval만큼 늦게 반영된다.
+ * - 한 서버에서만 실행해야 하고, 엔진이 관리하는 Stock은 엔진을 통해서만 변경해야 한다.
+ */
+@SpringBootTest(properties = { "stock.engine.enabled=true", "stock.engine.flush-interval-millis=100" })
+public class EngineStockFacadeTest {
+
+	@TempDir
+	static Path directory;
+	
+	@DynamicPropertySource
+	static void engineProperties(DynamicPropertyRegistry registry) {
+		registry.add("stock.engine.directory", () -> directory.toString());
+	}
+	
+	@Autowired
+	private EngineStockFacade engineStockFacade;
+	
+	@Autowired
+	private StockEngine stockEngine;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+	
+	@AfterEach
+	public void after() {
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100;
+		
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					engineStockFacade.decrease(stockId, 1L);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+		
+		latch.await();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		assertEquals(0, stockEngine.getQuantity(stockId));
+		
+		// DB에는 비동기로 반영되므로 반영될 때까지 기다린다.
+		for(int i=0; i<100 && stockRepository.findById(stockId).orElseThrow().getQuantity() != 0; i++) {
+			Thread.sleep(50);
+		}
+		
+		assertEquals(0, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+	
+	@Test
+	public void 재시작하면_journal로_복구한다() {
+		engineStockFacade.decrease(stockId, 30L);
+		
+		stockEngine.stop();
+		stockEngine.start();
+		
+		assertEquals(70, stockEngine.getQuantity(stockId));
+		assertEquals(70, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+	
+	@Test
+	public void checkpoint_파일을_쓰지_못해도_DB에_두_번_반영하지_않는다() throws IOException {
+		engineStockFacade.decrease(stockId, 30L);
+		
+		stockEngine.stop();
+		
+		// DB에 commit한 뒤 checkpoint 파일을 쓰기 전에 종료된 상황
+		try(Stream<Path> files = Files.walk(directory)) {
+			for(Path file : files.filter(path -> path.getFileName().toString().equals("checkpoint.bin")).toList()) {
+				Files.delete(file);
+			}
+		}
+		
+		stockEngine.start();
+		stockEngine.flush();
+		
+		assertEquals(70, stockEngine.getQuantity(stockId));
+		assertEquals(70, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+}
@@ -0,0 +1,89 @@
+package com.inflearn.stock.facade;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockRepository;
+
+/**
+ * 로컬 Lock + 분산 Lock
+ * 
+ * 장점
+ * - 서버마다 한 스레드만 Redis Lock을 시도하므로 Redis에 보내는 요청과 Lock을 넘겨주는 시간이 서버당 요청 스레드 수만큼 줄어든다.
+ * - 같은 서버에서 기다리던 요청은 분산 Lock을 다시 잡지 않고 이어서 처리된다.
+ *
+ * 단점
+ * - 한 서버가 분산 Lock을 오래 잡고 있으면 다른 서버의 요청은 그만큼 오래 기다린다. (max-batch-size로 제한한다)
+ */
+@SpringBootTest
+public class HybridLockStockFacadeTest {
+	
+	@Autowired
+	private HybridLockStockFacade hybridLockStockFacade;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+
+	@AfterEach
+	public void after() {
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100; // 동시에 여러개의 요청을 보내야 하기 때문에 멀티 스레드를 사용해야 한다.(100개의 요청을 보낼 것이다)
+
+		// 멀티스레드를 이용해야 하기 때문에 Executors 서비스를 사용한다. Executors 서비스는 비동기로 실행하는 작업을 단순화하여 사용할 수 있게 도와주는 자바의 API이다.
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		// 100개의 요청이 모두 끝날 때까지 기다려야 하므로 CountDownLatch를 활용한다.
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					hybridLockStockFacade.decrease(1L, 1L);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await(); // CountDownLatch는 다른 스레드에서 수행 중인 작업이 완료될 때까지 대기할 수 있도록 도와주는 클래스다.
+		
+		// 모든 요청이 완료가 된다면 stockRepository를 활용해서 stock을 가지고 온 이후에 실행을 비교해주도록 한다.
+		Stock stock = stockRepository.findById(1L).orElseThrow();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		System.out.println("stock.getQuantity() : " + stock.getQuantity());
+		assertEquals(0, stock.getQuantity());
+	}
+	
+	@Test
+	public void 처리를_마친_Stock의_큐는_정리된다() throws InterruptedException {
+		hybridLockStockFacade.decrease(stockId, 1L);
+		
+		// 요청한 스레드가 직접 로컬 Lock을 잡고 처리했으므로 반환될 때 큐도 정리되어 있다.
+		assertEquals(0, hybridLockStockFacade.getQueueCount());
+		assertEquals(99, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+}
@@ -0,0 +1,117 @@
+package com.inflearn.stock.facade;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockPermitRepository;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.repository.StockReservationRepository;
+import com.inflearn.stock.scheduler.StockPermitFlushScheduler;
+import com.inflearn.stock.service.StockReservationService;
+
+/**
+ * Redisson permit 재고
+ * 
+ * 장점
+ * - Lock을 기다리지 않고 RSemaphore에서 permit을 가져가는 것만으로 재고를 감소시킬 수 있다.
+ * - 여러 서버의 감소량이 RAtomicLong에 더해지므로 어느 서버가 DB에 반영해도 된다.
+ *
+ * 단점
+ * - DB에는 나중에 반영되므로 그 사이에는 DB 재고가 실제 재고보다 많아 보일 수 있다.
+ * - permit을 가져간 뒤 감소량을 기록하기 전에 서버가 종료되면 DB 기준으로 다시 맞추는 작업이 필요하다.
+ */
+@SpringBootTest
+public class RedissonPermitStockFacadeTest {
+
+	@Autowired
+	private RedissonPermitStockFacade redissonPermitStockFacade;
+	
+	@Autowired
+	private StockPermitFlushScheduler stockPermitFlushScheduler;
+	
+	@Autowired
+	private StockPermitRepository stockPermitRepository;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	@Autowired
+	private StockReservationService stockReservationService;
+	
+	@Autowired
+	private StockReservationRepository stockReservationRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+		stockPermitRepository.delete(stockId);
+	}
+
+	@AfterEach
+	public void after() {
+		stockPermitRepository.delete(stockId);
+		stockReservationRepository.deleteAll();
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100;
+
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					redissonPermitStockFacade.decrease(stockId, 1L);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await();
+		
+		// permit은 바로 감소한다.
+		assertEquals(0, stockPermitRepository.availablePermits(stockId));
+		
+		// DB 재고는 누적된 감소량이 반영된 이후에 감소한다.
+		stockPermitFlushScheduler.flush();
+		
+		Stock stock = stockRepository.findById(stockId).orElseThrow();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		System.out.println("stock.getQuantity() : " + stock.getQuantity());
+		assertEquals(0, stock.getQuantity());
+	}
+	
+	@Test
+	public void 예약으로_바뀐_DB_수량은_채워진_permit에도_반영된다() {
+		redissonPermitStockFacade.decrease(stockId, 10L);
+		stockPermitFlushScheduler.flush();
+		assertEquals(90, stockPermitRepository.availablePermits(stockId));
+		
+		// 예약은 DB 수량을 직접 줄이고 늘리므로 commit된 뒤 permit도 같은 만큼 바뀐다.
+		Long reservationId = stockReservationService.reserve(stockId, 5L, Duration.ofMinutes(10));
+		assertEquals(85, stockPermitRepository.availablePermits(stockId));
+		
+		stockReservationService.release(reservationId);
+		assertEquals(90, stockPermitRepository.availablePermits(stockId));
+		assertEquals(90, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+}
@@ -0,0 +1,193 @@
+package com.inflearn.stock.ledger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockLedgerEntry;
+import com.inflearn.stock.repository.StockLedgerEntryRepository;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.repository.StockReservationRepository;
+import com.inflearn.stock.service.StockReservationService;
+import com.inflearn.stock.strategy.StockDecreaseStrategyRegistry;
+
+/**
+ * 재고 변경 기록
+ *
+ * 장점
+ * - 기록을 queue에 넣기만 하므로 재고 감소 트랜잭션에 INSERT가 추가되지 않는다.
+ * - writer가 모아서 batch로 INSERT 하므로 요청이 몰려도 기록하는 쿼리 수는 늘지 않는다.
+ *
+ * 단점
+ * - async이면 서버가 종료될 때 아직 쓰지 못한 기록을 잃을 수 있다. (sync이면 기록이 commit될 때까지 기다린다)
+ * - 감소 후 수량은 감소 방식이 조회한 경우에만 남는다.
+ */
+@SpringBootTest(properties = "stock.ledger.durability=sync")
+public class StockLedgerTest {
+
+	@Autowired
+	private StockDecreaseStrategyRegistry strategyRegistry;
+	
+	@Autowired
+	private StockLedgerEntryRepository stockLedgerEntryRepository;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	@Autowired
+	private StockReservationService stockReservationService;
+	
+	@Autowired
+	private StockReservationRepository stockReservationRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+	
+	@AfterEach
+	public void after() {
+		stockLedgerEntryRepository.deleteAllInBatch();
+		stockReservationRepository.deleteAll();
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100;
+		
+		ExecutorService executorService = Executors.newFixedThreadPool(32);
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				StockLedgerContext.setActor("user-" + Thread.currentThread().threadId());
+				
+				try {
+					strategyRegistry.get("pessimistic").decrease(stockId, 1L);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					StockLedgerContext.clearActor();
+					latch.countDown();
+				}
+			});
+		}
+		
+		latch.await();
+		
+		// sync이므로 감소가 끝났다면 기록도 commit되어 있다.
+		List<StockLedgerEntry> entries = stockLedgerEntryRepository.findAllByStockIdOrderById(stockId);
+		
+		assertEquals(100, entries.size());
+		assertEquals(0, stockRepository.findById(stockId).orElseThrow().getQuantity());
+		
+		// 감소 후 수량은 99부터 0까지 한 번씩 기록된다.
+		Set<Long> resultingQuantities = entries.stream().map(StockLedgerEntry::getResultingQuantity).collect(Collectors.toSet());
+		assertEquals(LongStream.range(0, 100).boxed().collect(Collectors.toSet()), resultingQuantities);
+		
+		for(StockLedgerEntry entry : entries) {
+			assertEquals("pessimistic", entry.getStrategy());
+			assertEquals(1, entry.getQuantity());
+			assertTrue(entry.getActor().startsWith("user-"));
+		}
+	}
+	
+	@Test
+	public void 라우터를_거친_감소는_실제로_처리한_방식으로_한_번만_기록된다() throws InterruptedException {
+		strategyRegistry.get("hot-key").decrease(stockId, 1L);
+		
+		List<StockLedgerEntry> entries = stockLedgerEntryRepository.findAllByStockIdOrderById(stockId);
+		
+		assertEquals(1, entries.size());
+		assertEquals("atomic-update", entries.get(0).getStrategy()); // hot key가 아닌 Stock은 조건부 UPDATE로 처리한다.
+		assertEquals(StockLedgerContext.SYSTEM_ACTOR, entries.get(0).getActor());
+		assertNull(entries.get(0).getResultingQuantity()); // 조건부 UPDATE는 감소 후 수량을 조회하지 않는다.
+	}
+	
+	@Test
+	public void 다른_스레드가_대신_처리한_감소도_요청한_감소의_기록에_남는다() throws InterruptedException {
+		int threadCount = 100;
+		
+		ExecutorService executorService = Executors.newFixedThreadPool(32);
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					strategyRegistry.get("hybrid-lock").decrease(stockId, 1L);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+		
+		latch.await();
+		
+		List<StockLedgerEntry> entries = stockLedgerEntryRepository.findAllByStockIdOrderById(stockId);
+		
+		// 분산 Lock을 잡은 스레드가 대신 처리한 요청도 각자의 감소 후 수량이 기록된다.
+		assertEquals(100, entries.size());
+		Set<Long> resultingQuantities = entries.stream().map(StockLedgerEntry::getResultingQuantity).collect(Collectors.toSet());
+		assertEquals(LongStream.range(0, 100).boxed().collect(Collectors.toSet()), resultingQuantities);
+	}
+	
+	@Test
+	public void 라우터가_직접_호출한_방식도_그_방식으로_기록된다() throws InterruptedException {
+		strategyRegistry.get("adaptive").decrease(stockId, 1L);
+		
+		List<StockLedgerEntry> entries = stockLedgerEntryRepository.findAllByStockIdOrderById(stockId);
+		
+		assertEquals(1, entries.size());
+		assertEquals("optimistic", entries.get(0).getStrategy()); // 충돌이 없는 Stock은 Optimistic Lock으로 처리한다.
+		assertEquals(99, entries.get(0).getResultingQuantity());
+	}
+	
+	@Test
+	public void 예약과_취소는_commit된_뒤에_기록된다() {
+		Long reservationId = stockReservationService.reserve(stockId, 10L, Duration.ofMinutes(10));
+		stockReservationService.release(reservationId);
+		
+		List<StockLedgerEntry> entries = stockLedgerEntryRepository.findAllByStockIdOrderById(stockId);
+		
+		assertEquals(2, entries.size());
+		assertEquals("reservation", entries.get(0).getStrategy());
+		assertEquals(10, entries.get(0).getQuantity());
+		assertEquals("reservation-released", entries.get(1).getStrategy());
+		assertEquals(-10, entries.get(1).getQuantity()); // 돌려준 수량은 음수로 기록한다.
+	}
+	
+	@Test
+	public void 예약_확정은_수량_0으로_기록된다() {
+		Long reservationId = stockReservationService.reserve(stockId, 10L, Duration.ofMinutes(10));
+		stockReservationService.confirm(reservationId);
+		
+		List<StockLedgerEntry> entries = stockLedgerEntryRepository.findAllByStockIdOrderById(stockId);
+		
+		assertEquals(2, entries.size());
+		assertEquals("reservation-confirmed", entries.get(1).getStrategy());
+		assertEquals(0, entries.get(1).getQuantity());
+	}
+}
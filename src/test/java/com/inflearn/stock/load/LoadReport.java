@@ -0,0 +1,91 @@
+package com.inflearn.stock.load;
+
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * 부하 실행 결과이다.
+ * 지연 시간은 요청이 실제로 시작된 시점이 아니라 도착했어야 하는 시점부터 측정하므로 처리가 밀려 대기한 시간도 포함된다.
+ */
+public class LoadReport {
+
+	private final String strategy;
+	
+	private final Histogram latency;
+	
+	private final long succeeded;
+	
+	private final long outOfStock;
+	
+	private final long failed;
+	
+	private final Map<Long, Long> decreasedByStock;
+	
+	private long lostUpdates;
+	
+	private long oversold;
+
+	public LoadReport(String strategy, Histogram latency, long succeeded, long outOfStock, long failed, Map<Long, Long> decreasedByStock) {
+		this.strategy = strategy;
+		this.latency = latency;
+		this.succeeded = succeeded;
+		this.outOfStock = outOfStock;
+		this.failed = failed;
+		this.decreasedByStock = decreasedByStock;
+	}
+	
+	/**
+	 * 성공한 요청으로 계산한 재고와 실제 재고를 비교한다.
+	 * 실제 재고가 더 많다면 감소가 누락된 것(lost update)이고, 더 적다면 성공 응답보다 많이 팔린 것(oversell)이다.
+	 */
+	public void verify(Map<Long, Long> initialQuantities, Map<Long, Long> actualQuantities) {
+		lostUpdates = 0;
+		oversold = 0;
+		
+		for(Map.Entry<Long, Long> initial : initialQuantities.entrySet()) {
+			long expected = initial.getValue() - decreasedByStock.getOrDefault(initial.getKey(), 0L);
+			long actual = actualQuantities.get(initial.getKey());
+			
+			if(actual > expected) {
+				lostUpdates += actual - expected;
+			} else if(actual < expected) {
+				oversold += expected - actual;
+			}
+		}
+	}
+	
+	public long getSucceeded() {
+		return succeeded;
+	}
+	
+	public long getOutOfStock() {
+		return outOfStock;
+	}
+	
+	public long getFailed() {
+		return failed;
+	}
+	
+	public long getLostUpdates() {
+		return lostUpdates;
+	}
+	
+	public long getOversold() {
+		return oversold;
+	}
+	
+	public Histogram getLatency() {
+		return latency;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s succeeded=%d outOfStock=%d failed=%d lostUpdates=%d oversold=%d "
+				+ "latency(ms) mean=%.2f p50=%.2f p99=%.2f p999=%.2f max=%.2f",
+				strategy, succeeded, outOfStock, failed, lostUpdates, oversold,
+				latency.getMean() / 1_000, latency.getValueAtPercentile(50) / 1_000.0,
+				latency.getValueAtPercentile(99) / 1_000.0, latency.getValueAtPercentile(99.9) / 1_000.0,
+				latency.getMaxValue() / 1_000.0);
+	}
+}
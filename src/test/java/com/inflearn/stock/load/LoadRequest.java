@@ -0,0 +1,7 @@
+package com.inflearn.stock.load;
+
+/**
+ * 부하 발생기가 보낼 요청 하나이다. offsetMicros는 부하 시작 시점으로부터 요청이 도착해야 하는 시간이다.
+ */
+public record LoadRequest(long offsetMicros, long stockId, long quantity) {
+}
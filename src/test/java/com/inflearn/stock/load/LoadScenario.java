@@ -0,0 +1,99 @@
+package com.inflearn.stock.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * open-loop 부하를 만든다.
+ * 요청은 초당 arrivalRate개의 포아송 과정으로 도착하므로 이전 요청이 끝났는지와 관계없이 정해진 시간에 보내진다.
+ * 상품은 zipfSkew가 0이면 고르게, 클수록 앞쪽 상품에 몰리도록 고르고, 수량은 quantities에서 quantityWeights의 비율로 고른다.
+ */
+public class LoadScenario {
+
+	private final double arrivalRate;
+	
+	private final long durationMillis;
+	
+	private final long[] stockIds;
+	
+	private final double zipfSkew;
+	
+	private final long[] quantities;
+	
+	private final double[] quantityWeights;
+	
+	private final long seed;
+
+	public LoadScenario(double arrivalRate, long durationMillis, long[] stockIds, double zipfSkew,
+			long[] quantities, double[] quantityWeights, long seed) {
+		this.arrivalRate = arrivalRate;
+		this.durationMillis = durationMillis;
+		this.stockIds = stockIds;
+		this.zipfSkew = zipfSkew;
+		this.quantities = quantities;
+		this.quantityWeights = quantityWeights;
+		this.seed = seed;
+	}
+	
+	public List<LoadRequest> generate() {
+		SplittableRandom random = new SplittableRandom(seed);
+		double[] stockCumulative = cumulative(zipfWeights(stockIds.length, zipfSkew));
+		double[] quantityCumulative = cumulative(quantityWeights);
+		
+		List<LoadRequest> requests = new ArrayList<>();
+		double offsetMicros = 0;
+		
+		while(true) {
+			offsetMicros += -Math.log(1 - random.nextDouble()) / arrivalRate * 1_000_000; // 지수 분포를 따르는 도착 간격
+			
+			if(offsetMicros >= durationMillis * 1_000) {
+				return requests;
+			}
+			
+			requests.add(new LoadRequest((long) offsetMicros,
+					stockIds[pick(stockCumulative, random)],
+					quantities[pick(quantityCumulative, random)]));
+		}
+	}
+	
+	private static double[] zipfWeights(int size, double skew) {
+		double[] weights = new double[size];
+		
+		for(int i=0; i<size; i++) {
+			weights[i] = 1.0 / Math.pow(i + 1, skew);
+		}
+		
+		return weights;
+	}
+	
+	private static double[] cumulative(double[] weights) {
+		double[] cumulative = new double[weights.length];
+		double total = 0;
+		
+		for(double weight : weights) {
+			total += weight;
+		}
+		
+		double sum = 0;
+		
+		for(int i=0; i<weights.length; i++) {
+			sum += weights[i];
+			cumulative[i] = sum / total;
+		}
+		
+		return cumulative;
+	}
+	
+	private static int pick(double[] cumulative, SplittableRandom random) {
+		double value = random.nextDouble();
+		
+		for(int i=0; i<cumulative.length; i++) {
+			if(value <= cumulative[i]) {
+				return i;
+			}
+		}
+		
+		return cumulative.length - 1;
+	}
+}
@@ -0,0 +1,50 @@
+package com.inflearn.stock.load;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 요청 기록을 파일로 저장하고 다시 읽는다. 한 줄에 요청 하나를 "offsetMicros,stockId,quantity" 형식으로 기록한다.
+ * 운영에서 기록한 요청 흐름을 그대로 재현하여 여러 방식을 같은 부하로 비교할 때 사용한다.
+ */
+public class LoadTrace {
+
+	private LoadTrace() {
+	}
+	
+	public static List<LoadRequest> read(Path path) throws IOException {
+		List<LoadRequest> requests = new ArrayList<>();
+		
+		try(BufferedReader reader = Files.newBufferedReader(path)) {
+			String line;
+			
+			while((line = reader.readLine()) != null) {
+				if(line.isBlank() || line.startsWith("#")) {
+					continue;
+				}
+				
+				String[] columns = line.split(",");
+				requests.add(new LoadRequest(Long.parseLong(columns[0].trim()), Long.parseLong(columns[1].trim()), Long.parseLong(columns[2].trim())));
+			}
+		}
+		
+		return requests;
+	}
+	
+	public static void write(Path path, List<LoadRequest> requests) throws IOException {
+		try(BufferedWriter writer = Files.newBufferedWriter(path)) {
+			writer.write("# offsetMicros,stockId,quantity");
+			writer.newLine();
+			
+			for(LoadRequest request : requests) {
+				writer.write(request.offsetMicros() + "," + request.stockId() + "," + request.quantity());
+				writer.newLine();
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.inflearn.stock.load;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.inflearn.stock.domain.OutOfStockException;
+import com.inflearn.stock.strategy.StockDecreaseStrategy;
+
+/**
+ * 테스트에서 사용하던 ExecutorService + CountDownLatch 방식을 그대로 사용하되,
+ * 요청을 한꺼번에 보내지 않고 각 요청이 정해진 시간에 도착하도록 보내는 open-loop 부하 발생기이다.
+ */
+public class StockLoadGenerator {
+
+	private final int threadCount;
+
+	public StockLoadGenerator(int threadCount) {
+		this.threadCount = threadCount;
+	}
+	
+	public LoadReport run(StockDecreaseStrategy strategy, List<LoadRequest> requests) throws InterruptedException {
+		ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+		CountDownLatch latch = new CountDownLatch(requests.size());
+		
+		Histogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3); // 마이크로초 단위로 최대 1분까지 기록한다.
+		LongAdder succeeded = new LongAdder();
+		LongAdder outOfStock = new LongAdder();
+		LongAdder failed = new LongAdder();
+		Map<Long, LongAdder> decreasedByStock = new ConcurrentHashMap<>();
+		
+		long startedAt = System.nanoTime();
+		
+		for(LoadRequest request : requests) {
+			long intendedAt = startedAt + TimeUnit.MICROSECONDS.toNanos(request.offsetMicros());
+			
+			// 요청이 도착해야 하는 시간까지 기다렸다가 보낸다. 이전 요청의 처리 여부와는 관계없다.
+			long waitNanos;
+			
+			while((waitNanos = intendedAt - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(waitNanos);
+			}
+			
+			executorService.submit(() -> {
+				try {
+					strategy.decrease(request.stockId(), request.quantity());
+					succeeded.increment();
+					decreasedByStock.computeIfAbsent(request.stockId(), key -> new LongAdder()).add(request.quantity());
+				} catch(OutOfStockException e) {
+					outOfStock.increment();
+				} catch(Exception e) {
+					failed.increment();
+				} finally {
+					latency.recordValue(Math.max(0, (System.nanoTime() - intendedAt) / 1_000));
+					latch.countDown();
+				}
+			});
+		}
+		
+		latch.await();
+		executorService.shutdown();
+		
+		return new LoadReport(strategy.getName(), latency, succeeded.sum(), outOfStock.sum(), failed.sum(),
+				decreasedByStock.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum())));
+	}
+}
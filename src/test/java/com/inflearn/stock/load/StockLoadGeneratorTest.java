@@ -0,0 +1,109 @@
+package com.inflearn.stock.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.StockDecreaseStrategyRegistry;
+
+/**
+ * 같은 부하를 여러 방식에 보내고 지연 시간, lost update, oversell을 비교한다.
+ * 10개 상품 중 앞쪽 상품에 요청이 몰리도록(zipf) 초당 500개의 요청을 2초 동안 보낸다.
+ */
+@SpringBootTest
+public class StockLoadGeneratorTest {
+
+	@Autowired
+	private StockDecreaseStrategyRegistry strategyRegistry;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	@TempDir
+	private Path tempDir;
+	
+	private final Map<Long, Long> initialQuantities = new HashMap<>();
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		for(long productId=1; productId<=10; productId++) {
+			Stock stock = stockRepository.saveAndFlush(new Stock(productId, 300L));
+			initialQuantities.put(stock.getId(), stock.getQuantity());
+		}
+	}
+
+	@AfterEach
+	public void after() {
+		stockRepository.deleteAll();
+		initialQuantities.clear();
+	}
+	
+	@Test
+	public void 같은_부하로_방식_비교() throws InterruptedException {
+		for(String strategy : List.of("pessimistic", "atomic-update")) {
+			resetQuantities();
+			
+			// 같은 seed를 사용하므로 방식마다 도착 시간, 상품 순위, 수량이 같은 요청을 보낸다.
+			List<LoadRequest> requests = scenario().generate();
+			LoadReport report = new StockLoadGenerator(32).run(strategyRegistry.get(strategy), requests);
+			report.verify(initialQuantities, actualQuantities());
+			
+			System.out.println(report);
+			assertEquals(0, report.getLostUpdates());
+			assertEquals(0, report.getOversold());
+		}
+	}
+	
+	@Test
+	public void 기록한_요청_재현() throws InterruptedException, IOException {
+		Path trace = Files.createFile(tempDir.resolve("trace.csv"));
+		LoadTrace.write(trace, scenario().generate());
+		
+		List<LoadRequest> replayed = LoadTrace.read(trace);
+		
+		assertEquals(scenario().generate(), replayed);
+		
+		LoadReport report = new StockLoadGenerator(32).run(strategyRegistry.get("pessimistic"), replayed);
+		report.verify(initialQuantities, actualQuantities());
+		
+		System.out.println(report);
+		assertEquals(0, report.getLostUpdates());
+		assertEquals(0, report.getOversold());
+	}
+	
+	private LoadScenario scenario() {
+		long[] stockIds = initialQuantities.keySet().stream().sorted().mapToLong(Long::longValue).toArray();
+		
+		return new LoadScenario(500, 2_000, stockIds, 1.0, new long[] {1, 2, 5}, new double[] {0.8, 0.15, 0.05}, 42L);
+	}
+	
+	private void resetQuantities() {
+		stockRepository.deleteAll();
+		initialQuantities.clear();
+		before();
+	}
+	
+	private Map<Long, Long> actualQuantities() {
+		Map<Long, Long> quantities = new HashMap<>();
+		
+		for(Stock stock : stockRepository.findAll()) {
+			quantities.put(stock.getId(), stock.getQuantity());
+		}
+		
+		return quantities;
+	}
+}
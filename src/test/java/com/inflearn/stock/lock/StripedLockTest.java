@@ -0,0 +1,38 @@
+package com.inflearn.stock.lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 여러 id의 로컬 Lock을 잡는 순서
+ * 
+ * id 순서대로 잡으면 stripe 수를 넘는 id에서 Lock 순서가 뒤집혀 deadlock이 생길 수 있으므로 Lock 번호 순서대로 잡아야 한다.
+ */
+public class StripedLockTest {
+
+	private final StripedLock stripedLock = new StripedLock(1024);
+	
+	@Test
+	public void id_순서와_상관없이_Lock_번호_순서대로_반환한다() {
+		// 1028은 4번, 1029는 5번 Lock을 사용한다. id 순서대로 잡으면 {5, 1028}은 5 -> 4, {4, 1029}는 4 -> 5 순서가 된다.
+		List<ReentrantLock> first = stripedLock.getAll(Set.of(5L, 1028L));
+		List<ReentrantLock> second = stripedLock.getAll(Set.of(4L, 1029L));
+		
+		assertEquals(List.of(stripedLock.get(4L), stripedLock.get(5L)), first);
+		assertEquals(first, second);
+	}
+	
+	@Test
+	public void 같은_Lock을_사용하는_id는_한_번만_반환한다() {
+		List<ReentrantLock> locks = stripedLock.getAll(Set.of(4L, 1028L));
+		
+		assertEquals(1, locks.size());
+		assertSame(stripedLock.get(4L), locks.get(0));
+	}
+}
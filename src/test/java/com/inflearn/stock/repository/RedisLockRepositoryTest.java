@@ -0,0 +1,81 @@
+package com.inflearn.stock.repository;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * SETNX 기반 Lock
+ * 
+ * 해제는 Lock을 잡은 토큰으로만 할 수 있고, 기다리는 스레드는 polling 주기(LEASE_TIME)를 기다리지 않고 해제 신호를 받는 즉시 다시 시도한다.
+ */
+@SpringBootTest
+public class RedisLockRepositoryTest {
+
+	private static final Long KEY = 1L;
+	
+	@Autowired
+	private RedisLockRepository redisLockRepository;
+	
+	@Autowired
+	private RedisTemplate<String, String> redisTemplate;
+	
+	@AfterEach
+	public void after() {
+		redisTemplate.delete("stock:lock:" + KEY);
+	}
+	
+	@Test
+	public void Lock을_잡지_않은_쪽은_해제할_수_없다() {
+		String token = redisLockRepository.lock(KEY);
+		assertNotNull(token);
+		
+		assertFalse(redisLockRepository.unlock(KEY, "other-token"));
+		assertNull(redisLockRepository.lock(KEY)); // 아직 처음 잡은 쪽이 Lock을 가지고 있다.
+		
+		assertTrue(redisLockRepository.unlock(KEY, token));
+		assertFalse(redisLockRepository.unlock(KEY, token)); // 이미 해제한 Lock은 다시 해제되지 않는다.
+	}
+	
+	@Test
+	public void 해제_신호를_받으면_polling_주기_전에_Lock을_잡는다() throws Exception {
+		String token = redisLockRepository.lock(KEY);
+		assertNotNull(token);
+		
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		
+		try {
+			Future<String> waiter = executorService.submit(() -> redisLockRepository.tryLock(KEY, Duration.ofSeconds(10)));
+			
+			// 기다리는 쪽이 한 번 실패하고 해제 신호를 기다리기 시작할 시간을 준다.
+			Thread.sleep(200);
+			assertFalse(waiter.isDone());
+			
+			long releasedAt = System.nanoTime();
+			assertTrue(redisLockRepository.unlock(KEY, token));
+			
+			String waiterToken = waiter.get(10, TimeUnit.SECONDS);
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - releasedAt);
+			
+			assertNotNull(waiterToken);
+			// 신호가 없다면 Lock 만료 시간(3초)까지 기다린 뒤에야 다시 시도한다.
+			assertTrue(elapsedMillis < 1000, "elapsedMillis=" + elapsedMillis);
+			assertTrue(redisLockRepository.unlock(KEY, waiterToken));
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+}
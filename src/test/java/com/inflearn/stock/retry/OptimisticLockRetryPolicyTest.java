@@ -0,0 +1,104 @@
+package com.inflearn.stock.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import com.inflearn.stock.domain.OutOfStockException;
+
+/**
+ * Optimistic Lock 재시도 정책
+ * 
+ * 대기 시간은 baseDelay 이상, 이전 대기 시간의 3배와 maxDelay 이하로 흩어지고,
+ * 재시도 횟수, 전체 소요 시간, 전체 재시도 예산 중 하나라도 넘어서면 재시도하지 않는다.
+ */
+public class OptimisticLockRetryPolicyTest {
+
+	@Test
+	public void 대기_시간은_baseDelay와_이전_대기_시간의_3배_사이이고_maxDelay를_넘지_않는다() {
+		OptimisticLockRetryPolicy policy = new OptimisticLockRetryPolicy(10, 1000, 1000, 60_000, 100_000, 0.5);
+		
+		for(int i=0; i<100; i++) {
+			RetryState state = policy.start();
+			long previous = 0;
+			
+			for(int attempt=0; attempt<20; attempt++) {
+				state.attempt();
+				long delay = policy.nextDelayMillis(state);
+				
+				assertTrue(delay >= 10, "delay=" + delay);
+				assertTrue(delay <= Math.max(10, previous * 3), "delay=" + delay + ", previous=" + previous);
+				assertTrue(delay <= 1000, "delay=" + delay);
+				
+				previous = delay;
+			}
+		}
+	}
+	
+	@Test
+	public void 최대_시도_횟수에_도달하면_재시도하지_않는다() {
+		OptimisticLockRetryPolicy policy = new OptimisticLockRetryPolicy(0, 0, 3, 60_000, 1000, 0.5);
+		RetryState state = policy.start();
+		
+		for(int attempt=1; attempt<3; attempt++) {
+			state.attempt();
+			assertEquals(0, policy.nextDelayMillis(state));
+		}
+		
+		state.attempt();
+		assertTrue(policy.nextDelayMillis(state) < 0);
+	}
+	
+	@Test
+	public void 재시도_시간이_지나면_재시도하지_않는다() {
+		OptimisticLockRetryPolicy policy = new OptimisticLockRetryPolicy(10, 1000, 1000, 0, 1000, 0.5);
+		RetryState state = policy.start();
+		
+		state.attempt();
+		assertTrue(policy.nextDelayMillis(state) < 0);
+	}
+	
+	@Test
+	public void 남은_재시도_시간보다_오래_기다리지_않는다() {
+		OptimisticLockRetryPolicy policy = new OptimisticLockRetryPolicy(5000, 5000, 1000, 1000, 1000, 0.5);
+		RetryState state = policy.start();
+		
+		state.attempt();
+		long delay = policy.nextDelayMillis(state);
+		
+		assertTrue(delay >= 0 && delay <= 1000, "delay=" + delay);
+	}
+	
+	@Test
+	public void 재시도_예산이_바닥나면_재시도하지_않는다() {
+		// 토큰 2개로 시작하고 요청마다 0.5개씩 쌓인다.
+		OptimisticLockRetryPolicy policy = new OptimisticLockRetryPolicy(0, 0, 1000, 60_000, 2, 0.5);
+		RetryState state = policy.start();
+		
+		state.attempt();
+		assertEquals(0, policy.nextDelayMillis(state));
+		state.attempt();
+		assertEquals(0, policy.nextDelayMillis(state));
+		state.attempt();
+		assertTrue(policy.nextDelayMillis(state) < 0);
+		assertEquals(0, policy.getAvailableRetryBudget());
+		
+		// 새 요청 두 개가 토큰 하나를 채우면 다시 한 번 재시도할 수 있다.
+		policy.start();
+		policy.start();
+		assertEquals(0, policy.nextDelayMillis(state));
+		assertTrue(policy.nextDelayMillis(state) < 0);
+	}
+	
+	@Test
+	public void 재고_부족은_재시도하지_않는다() {
+		OptimisticLockRetryPolicy policy = new OptimisticLockRetryPolicy(10, 1000, 100, 10_000, 2000, 0.5);
+		
+		assertFalse(policy.isRetryable(new OutOfStockException()));
+		assertFalse(policy.isRetryable(new IllegalArgumentException()));
+		assertTrue(policy.isRetryable(new OptimisticLockingFailureException("충돌")));
+	}
+}
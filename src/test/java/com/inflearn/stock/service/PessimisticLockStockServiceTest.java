@@ -1,7 +1,9 @@
 package com.inflearn.stock.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -12,6 +14,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import com.inflearn.stock.domain.OutOfStockException;
 import com.inflearn.stock.domain.Stock;
 import com.inflearn.stock.repository.StockRepository;
 
@@ -36,9 +39,11 @@ public class PessimisticLockStockServiceTest {
 	@Autowired
 	private StockRepository stockRepository;
 	
+	private Long stockId; // 여러 상품을 주문하는 테스트에서 사용한다.
+	
 	@BeforeEach // 테스트가 실행되기 전
 	public void before() {
-		stockRepository.saveAndFlush(new Stock(1L, 100L));
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
 	}
 
 	@AfterEach
@@ -75,4 +80,54 @@ public class PessimisticLockStockServiceTest {
 		System.out.println("stock.getQuantity() : " + stock.getQuantity());
 		assertEquals(0, stock.getQuantity());
 	}
+	
+	/**
+	 * 두 상품을 함께 주문하는 요청을 서로 다른 순서로 동시에 보낸다.
+	 * 요청마다 Lock을 잡는 순서가 다르다면 서로의 Lock을 기다리는 deadlock이 생기지만, decreaseAll은 항상 id 순서대로 잠그므로 모두 성공해야 한다.
+	 */
+	@Test
+	public void 여러_상품을_동시에_주문() throws InterruptedException {
+		Long first = stockId;
+		Long second = stockRepository.saveAndFlush(new Stock(2L, 100L)).getId();
+		
+		int threadCount = 100;
+
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			int index = i;
+			
+			executorService.submit(() -> {
+				try {
+					if(index % 2 == 0) {
+						stockService.decreaseAll(Map.of(first, 1L, second, 1L));
+					} else {
+						stockService.decreaseAll(Map.of(second, 1L, first, 1L));
+					}
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await();
+		
+		// 예상 재고 : 두 상품 모두 100 - (1 * 100) = 0
+		assertEquals(0, stockRepository.findById(first).orElseThrow().getQuantity());
+		assertEquals(0, stockRepository.findById(second).orElseThrow().getQuantity());
+	}
+	
+	@Test
+	public void 하나라도_재고가_부족하면_전체_취소() {
+		Long first = stockId;
+		Long second = stockRepository.saveAndFlush(new Stock(2L, 1L)).getId();
+		
+		assertThrows(OutOfStockException.class, () -> stockService.decreaseAll(Map.of(first, 10L, second, 2L)));
+		
+		// 재고가 충분했던 상품도 감소하지 않아야 한다.
+		assertEquals(100, stockRepository.findById(first).orElseThrow().getQuantity());
+		assertEquals(1, stockRepository.findById(second).orElseThrow().getQuantity());
+	}
 }
\ No newline at end of file
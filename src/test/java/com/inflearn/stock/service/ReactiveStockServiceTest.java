@@ -0,0 +1,100 @@
+package com.inflearn.stock.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.DecreaseResult;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.facade.ReactiveStockFacade;
+import com.inflearn.stock.repository.StockRepository;
+
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+/**
+ * Reactive (R2DBC)
+ * 
+ * 장점
+ * - DB 응답이나 재시도를 기다리는 동안 스레드를 붙잡지 않으므로 처리량이 스레드 수에 묶이지 않는다.
+ * - 같은 서버에서 같은 Stock에 대한 요청은 이어서 실행하므로 version 충돌이 서버 사이에서만 생긴다.
+ *
+ * 단점
+ * - JPA 엔티티와 영속성 컨텍스트를 사용할 수 없어서 SQL을 직접 작성해야 한다.
+ * - 호출하는 쪽도 Mono를 이어서 처리해야 효과가 있고, block()으로 기다리면 blocking 방식과 다르지 않다.
+ */
+@SpringBootTest
+public class ReactiveStockServiceTest {
+
+	@Autowired
+	private ReactiveStockService reactiveStockService;
+	
+	@Autowired
+	private ReactiveStockFacade reactiveStockFacade;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+
+	@AfterEach
+	public void after() {
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100;
+
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					reactiveStockFacade.decrease(stockId, 1L);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await();
+		
+		Stock stock = stockRepository.findById(stockId).orElseThrow();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		System.out.println("stock.getQuantity() : " + stock.getQuantity());
+		assertEquals(0, stock.getQuantity());
+	}
+	
+	@Test
+	public void 스레드를_기다리지_않고_101개의_요청() {
+		Flux<ReactiveStockService.DecreaseRequest> requests = Flux.range(0, 101)
+				.map(i -> new ReactiveStockService.DecreaseRequest(stockId, 1L));
+		
+		// 결과는 요청한 순서대로 돌아오므로 마지막 요청만 재고가 부족하다.
+		StepVerifier.create(reactiveStockService.decrease(requests))
+				.expectNextCount(100)
+				.expectNext(DecreaseResult.OUT_OF_STOCK)
+				.verifyComplete();
+		
+		Stock stock = stockRepository.findById(stockId).orElseThrow();
+		
+		assertEquals(0, stock.getQuantity());
+	}
+}
@@ -0,0 +1,78 @@
+package com.inflearn.stock.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.repository.StockBucketRepository;
+
+/**
+ * Sharded Stock
+ * 
+ * 장점
+ * - 한 상품의 재고를 여러 row로 나누므로 row 하나에 Lock이 몰리지 않는다.
+ *
+ * 단점
+ * - 재고를 조회할 때 모든 bucket을 합산해야 한다.
+ * - 한 bucket으로 부족한 요청은 모든 bucket을 잠가야 하므로 재고가 얼마 남지 않았을 때는 이점이 줄어든다.
+ */
+@SpringBootTest
+public class ShardedStockServiceTest {
+
+	@Autowired
+	private ShardedStockService shardedStockService;
+	
+	@Autowired
+	private StockBucketRepository stockBucketRepository;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		shardedStockService.create(1L, 100L, 4);
+	}
+
+	@AfterEach
+	public void after() {
+		stockBucketRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100;
+
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					shardedStockService.decrease(1L, 1L);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		System.out.println("quantity : " + shardedStockService.getQuantity(1L));
+		assertEquals(0, shardedStockService.getQuantity(1L));
+	}
+	
+	@Test
+	public void 하나의_bucket보다_많은_수량_감소() {
+		// 각 bucket에는 25개씩 있으므로 30개는 여러 bucket에서 나누어 감소해야 한다.
+		shardedStockService.decrease(1L, 30L);
+		
+		assertEquals(70, shardedStockService.getQuantity(1L));
+	}
+}
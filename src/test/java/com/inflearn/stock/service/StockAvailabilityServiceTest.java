@@ -0,0 +1,109 @@
+package com.inflearn.stock.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.cache.StockAvailabilities;
+import com.inflearn.stock.cache.StockAvailabilityCache;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockRepository;
+
+/**
+ * 재고 조회 near cache
+ * 
+ * 장점
+ * - 상품 페이지의 재고 조회가 DB에 가지 않고 서버 메모리에서 처리된다.
+ * - 재고가 변경되면 commit 직후에 캐시가 지워지므로 변경된 수량을 바로 조회할 수 있다.
+ *
+ * 단점
+ * - 다른 서버의 캐시는 무효화 메시지가 도착할 때까지(최대 max-staleness) 이전 수량을 보여줄 수 있다.
+ */
+@SpringBootTest
+public class StockAvailabilityServiceTest {
+
+	@Autowired
+	private StockAvailabilityService stockAvailabilityService;
+	
+	@Autowired
+	private StockAvailabilityCache stockAvailabilityCache;
+	
+	@Autowired
+	private AtomicUpdateStockService atomicUpdateStockService;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockAvailabilityCache.invalidateAll();
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+	
+	@AfterEach
+	public void after() {
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 재고가_감소하면_캐시가_갱신된다() {
+		assertEquals(100, stockAvailabilityService.getAvailability(1L).quantity());
+		
+		atomicUpdateStockService.decrease(stockId, 30L);
+		
+		assertEquals(70, stockAvailabilityService.getAvailability(1L).quantity());
+	}
+	
+	@Test
+	public void 재고가_없으면_구매할_수_없다() {
+		atomicUpdateStockService.decrease(stockId, 100L);
+		
+		assertFalse(stockAvailabilityService.getAvailability(1L).isAvailable());
+	}
+	
+	@Test
+	public void 장바구니의_상품을_한_번에_조회() {
+		List<Long> productIds = new ArrayList<>();
+		productIds.add(1L);
+		
+		for(long productId=2; productId<=30; productId++) {
+			stockRepository.save(new Stock(productId, productId));
+			productIds.add(productId);
+		}
+		
+		productIds.add(999L); // 재고가 없는 상품
+		
+		StockAvailabilities availabilities = stockAvailabilityService.getAvailability(productIds);
+		
+		assertEquals(31, availabilities.size());
+		assertEquals(100, availabilities.quantityOf(1L));
+		assertEquals(30, availabilities.quantityOf(30L));
+		assertEquals(0, availabilities.quantityOf(999L));
+		assertTrue(availabilities.quantities()[0] > 0);
+	}
+	
+	@Test
+	public void 같은_상품을_여러_번_요청해도_상품별_수량으로_확인한다() {
+		stockRepository.save(new Stock(2L, 5L));
+		
+		// 중복된 상품은 한 번만 조회하므로 결과의 순서는 요청한 순서와 다르다.
+		StockAvailabilities availabilities = stockAvailabilityService.getAvailability(List.of(2L, 1L, 2L));
+		
+		assertEquals(2, availabilities.size());
+		assertTrue(availabilities.isAvailable(Map.of(1L, 100L, 2L, 5L)));
+		assertFalse(availabilities.isAvailable(Map.of(1L, 6L, 2L, 6L)));
+		assertFalse(availabilities.isAvailable(Map.of(999L, 1L))); // 조회하지 않은 상품
+	}
+}
@@ -0,0 +1,128 @@
+package com.inflearn.stock.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.ReservationExpireResult;
+import com.inflearn.stock.domain.ReservationStateException;
+import com.inflearn.stock.domain.ReservationStatus;
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.repository.StockReservationRepository;
+
+/**
+ * 재고 예약 (reserve / confirm / release)
+ * 
+ * 장점
+ * - 결제가 진행되는 동안 Lock이나 트랜잭션을 유지하지 않아도 초과 판매가 일어나지 않는다.
+ * - 확정되지 않은 예약은 timing wheel이 만료시켜 재고를 돌려준다.
+ *
+ * 단점
+ * - 만료 시각은 wheel 한 칸(tick-millis)만큼 늦게 처리될 수 있다.
+ */
+@SpringBootTest(properties = "stock.reservation.tick-millis=10")
+public class StockReservationServiceTest {
+
+	@Autowired
+	private StockReservationService stockReservationService;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	@Autowired
+	private StockReservationRepository stockReservationRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+	
+	@AfterEach
+	public void after() {
+		stockReservationRepository.deleteAll();
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_예약() throws InterruptedException {
+		int threadCount = 100;
+		
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					stockReservationService.reserve(stockId, 1L, Duration.ofMinutes(10));
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+		
+		latch.await();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		assertEquals(0, stockRepository.findById(stockId).orElseThrow().getQuantity());
+		assertEquals(100, stockReservationRepository.findAllByStatus(ReservationStatus.HELD).size());
+	}
+	
+	@Test
+	public void 확정된_예약은_취소할_수_없다() {
+		Long reservationId = stockReservationService.reserve(stockId, 10L, Duration.ofMinutes(10));
+		
+		stockReservationService.confirm(reservationId);
+		
+		assertThrows(ReservationStateException.class, () -> stockReservationService.release(reservationId));
+		assertEquals(90, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+	
+	@Test
+	public void 취소하면_재고를_돌려준다() {
+		Long reservationId = stockReservationService.reserve(stockId, 10L, Duration.ofMinutes(10));
+		
+		stockReservationService.release(reservationId);
+		
+		assertEquals(100, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+	
+	@Test
+	public void 만료된_예약은_재고를_돌려준다() throws InterruptedException {
+		Long reservationId = stockReservationService.reserve(stockId, 10L, Duration.ofMillis(100));
+		
+		// timing wheel이 만료 처리할 때까지 기다린다.
+		for(int i=0; i<100 && stockReservationRepository.findById(reservationId).orElseThrow().getStatus() == ReservationStatus.HELD; i++) {
+			Thread.sleep(50);
+		}
+		
+		assertEquals(ReservationStatus.EXPIRED, stockReservationRepository.findById(reservationId).orElseThrow().getStatus());
+		assertEquals(100, stockRepository.findById(stockId).orElseThrow().getQuantity());
+		assertThrows(ReservationStateException.class, () -> stockReservationService.confirm(reservationId));
+	}
+	
+	@Test
+	public void 만료_시각_전에는_만료시키지_않는다() {
+		Long reservationId = stockReservationService.reserve(stockId, 10L, Duration.ofMinutes(10));
+		
+		assertEquals(ReservationExpireResult.NOT_YET, stockReservationService.expire(reservationId));
+		assertEquals(ReservationStatus.HELD, stockReservationRepository.findById(reservationId).orElseThrow().getStatus());
+		
+		stockReservationService.release(reservationId);
+		
+		assertEquals(ReservationExpireResult.SKIPPED, stockReservationService.expire(reservationId));
+	}
+}
@@ -0,0 +1,85 @@
+package com.inflearn.stock.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.domain.StockDeadLetter;
+import com.inflearn.stock.repository.StockDeadLetterRepository;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.repository.StockWriteBehindBatchRepository;
+
+/**
+ * write-behind 반영
+ *
+ * 장점
+ * - 반영한 batch id를 같은 트랜잭션에 기록하므로 같은 batch를 다시 반영해도 두 번 감소하지 않는다.
+ * - 반영되지 않는 Stock만 dead letter로 옮기므로 다른 Stock의 반영은 멈추지 않는다.
+ *
+ * 단점
+ * - dead letter로 옮긴 감소량은 Redis와 DB가 어긋난 채로 남으므로 직접 맞춰야 한다.
+ * - batch id 기록이 보관 시간만큼 쌓인다.
+ */
+@SpringBootTest
+public class StockWriteBehindServiceTest {
+
+	@Autowired
+	private StockWriteBehindService stockWriteBehindService;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	@Autowired
+	private StockDeadLetterRepository stockDeadLetterRepository;
+	
+	@Autowired
+	private StockWriteBehindBatchRepository stockWriteBehindBatchRepository;
+	
+	private Long stockId;
+	
+	@BeforeEach
+	public void before() {
+		stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+	}
+	
+	@AfterEach
+	public void after() {
+		stockDeadLetterRepository.deleteAllInBatch();
+		stockWriteBehindBatchRepository.deleteAllInBatch();
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 반영되지_않는_Stock만_dead_letter로_옮긴다() {
+		Long missingId = stockId + 1000;
+		
+		assertTrue(stockWriteBehindService.apply("batch-1", Map.of(stockId, 10L, missingId, 5L)));
+		
+		assertEquals(90, stockRepository.findById(stockId).orElseThrow().getQuantity());
+		
+		List<StockDeadLetter> deadLetters = stockDeadLetterRepository.findAllByStockId(missingId);
+		assertEquals(1, deadLetters.size());
+		assertEquals(5, deadLetters.get(0).getQuantity());
+		assertEquals("batch-1", deadLetters.get(0).getBatchId());
+	}
+	
+	@Test
+	public void 같은_batch는_한_번만_반영한다() {
+		assertTrue(stockWriteBehindService.apply("batch-2", Map.of(stockId, 10L)));
+		
+		// commit한 뒤 Redis에서 batch를 지우기 전에 종료되어 다시 반영하는 상황
+		assertFalse(stockWriteBehindService.apply("batch-2", Map.of(stockId, 10L)));
+		
+		assertEquals(90, stockRepository.findById(stockId).orElseThrow().getQuantity());
+	}
+}
@@ -0,0 +1,121 @@
+package com.inflearn.stock.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.repository.StockRepository;
+import com.inflearn.stock.strategy.AdaptiveStockDecreaseRouter.Mode;
+
+/**
+ * Adaptive
+ * 
+ * 충돌이 적은 상품은 Optimistic Lock으로 처리하고, 충돌이 늘어나면 Pessimistic Lock, 분산 Lock 순서로 방식을 바꾼다.
+ * 100개의 요청이 한 상품에 몰리므로 처리 도중 방식이 바뀌더라도 재고는 정확하게 감소해야 한다.
+ */
+@SpringBootTest
+public class AdaptiveStockDecreaseRouterTest {
+
+	@Autowired
+	private AdaptiveStockDecreaseRouter adaptiveStockDecreaseRouter;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		stockRepository.saveAndFlush(new Stock(1L, 100L));
+	}
+
+	@AfterEach
+	public void after() {
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100; // 동시에 여러개의 요청을 보내야 하기 때문에 멀티 스레드를 사용해야 한다.(100개의 요청을 보낼 것이다)
+
+		// 멀티스레드를 이용해야 하기 때문에 Executors 서비스를 사용한다. Executors 서비스는 비동기로 실행하는 작업을 단순화하여 사용할 수 있게 도와주는 자바의 API이다.
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		// 100개의 요청이 모두 끝날 때까지 기다려야 하므로 CountDownLatch를 활용한다.
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					adaptiveStockDecreaseRouter.decrease(1L, 1L);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await(); // CountDownLatch는 다른 스레드에서 수행 중인 작업이 완료될 때까지 대기할 수 있도록 도와주는 클래스다.
+		
+		// 모든 요청이 완료가 된다면 stockRepository를 활용해서 stock을 가지고 온 이후에 실행을 비교해주도록 한다.
+		Stock stock = stockRepository.findById(1L).orElseThrow();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		System.out.println("stock.getQuantity() : " + stock.getQuantity());
+		assertEquals(0, stock.getQuantity());
+	}
+	
+	@Test
+	public void 재시도가_늘어나면_min_samples개의_표본_뒤에_Pessimistic_Lock으로_바꾼다() {
+		Long id = 1001L; // 다른 테스트의 통계와 섞이지 않도록 요청을 보내지 않은 id를 사용한다.
+		
+		assertEquals(Mode.OPTIMISTIC, adaptiveStockDecreaseRouter.getMode(id));
+		
+		// min-samples(20)개가 쌓이기 전에는 평균 재시도 횟수가 escalate-retries(1.0)를 넘어도 바꾸지 않는다.
+		record(19, () -> adaptiveStockDecreaseRouter.recordRetries(id, 3));
+		assertEquals(Mode.OPTIMISTIC, adaptiveStockDecreaseRouter.getMode(id));
+		
+		adaptiveStockDecreaseRouter.recordRetries(id, 3);
+		assertEquals(Mode.PESSIMISTIC, adaptiveStockDecreaseRouter.getMode(id));
+		
+		// 평균 처리 시간이 deescalate-latency-millis(5)와 escalate-latency-millis(50) 사이라면 그대로 둔다.
+		record(40, () -> adaptiveStockDecreaseRouter.recordLatencyMillis(id, 20));
+		assertEquals(Mode.PESSIMISTIC, adaptiveStockDecreaseRouter.getMode(id));
+	}
+	
+	@Test
+	public void 처리_시간에_따라_분산_Lock으로_올라갔다가_단계적으로_돌아온다() {
+		Long id = 1002L;
+		
+		record(20, () -> adaptiveStockDecreaseRouter.recordRetries(id, 3));
+		assertEquals(Mode.PESSIMISTIC, adaptiveStockDecreaseRouter.getMode(id));
+		
+		// 평균이 escalate-latency-millis(50)를 넘으면 분산 Lock으로 올라간다.
+		record(20, () -> adaptiveStockDecreaseRouter.recordLatencyMillis(id, 100));
+		assertEquals(Mode.DISTRIBUTED, adaptiveStockDecreaseRouter.getMode(id));
+		
+		// 바꾼 뒤에는 표본을 새로 모으므로 평균이 deescalate-latency-millis 아래여도 min-samples개가 쌓이기 전에는 돌아가지 않는다.
+		record(19, () -> adaptiveStockDecreaseRouter.recordLatencyMillis(id, 1));
+		assertEquals(Mode.DISTRIBUTED, adaptiveStockDecreaseRouter.getMode(id));
+		
+		adaptiveStockDecreaseRouter.recordLatencyMillis(id, 1);
+		assertEquals(Mode.PESSIMISTIC, adaptiveStockDecreaseRouter.getMode(id));
+		
+		record(20, () -> adaptiveStockDecreaseRouter.recordLatencyMillis(id, 1));
+		assertEquals(Mode.OPTIMISTIC, adaptiveStockDecreaseRouter.getMode(id));
+	}
+	
+	private void record(int samples, Runnable sample) {
+		for(int i=0; i<samples; i++) {
+			sample.run();
+		}
+	}
+}
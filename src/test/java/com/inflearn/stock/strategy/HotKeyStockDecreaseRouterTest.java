@@ -0,0 +1,88 @@
+package com.inflearn.stock.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.inflearn.stock.domain.Stock;
+import com.inflearn.stock.hotkey.HotKeyDetector;
+import com.inflearn.stock.repository.StockRepository;
+
+/**
+ * Hot key
+ * 
+ * 요청이 threshold를 넘은 Stock만 hot-strategy(coalescing)로 보내고 나머지는 cold-strategy(atomic-update)로 처리한다.
+ * 100개의 요청 중 앞의 요청은 조건부 UPDATE로, threshold를 넘은 뒤의 요청은 모아서 처리되지만 재고는 정확하게 감소해야 한다.
+ */
+@SpringBootTest(properties = "stock.hot-key.threshold=20")
+public class HotKeyStockDecreaseRouterTest {
+
+	@Autowired
+	private HotKeyStockDecreaseRouter hotKeyStockDecreaseRouter;
+	
+	@Autowired
+	private HotKeyDetector hotKeyDetector;
+	
+	@Autowired
+	private StockRepository stockRepository;
+	
+	private Long hotStockId;
+	
+	private Long coldStockId;
+	
+	@BeforeEach // 테스트가 실행되기 전
+	public void before() {
+		hotStockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+		coldStockId = stockRepository.saveAndFlush(new Stock(2L, 100L)).getId();
+	}
+
+	@AfterEach
+	public void after() {
+		stockRepository.deleteAll();
+	}
+	
+	@Test
+	public void 동시에_100개의_요청() throws InterruptedException {
+		int threadCount = 100;
+
+		ExecutorService executorService = Executors.newFixedThreadPool(32); 
+		
+		CountDownLatch latch = new CountDownLatch(threadCount);
+		
+		for(int i=0; i<threadCount; i++) {
+			executorService.submit(() -> {
+				try {
+					hotKeyStockDecreaseRouter.decrease(hotStockId, 1L);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+
+		latch.await();
+		
+		hotKeyStockDecreaseRouter.decrease(coldStockId, 1L);
+		
+		Stock stock = stockRepository.findById(hotStockId).orElseThrow();
+		
+		// 예상 재고 : 100 - (1 * 100) = 0
+		System.out.println("stock.getQuantity() : " + stock.getQuantity());
+		assertEquals(0, stock.getQuantity());
+		assertEquals(99, stockRepository.findById(coldStockId).orElseThrow().getQuantity());
+		
+		assertTrue(hotKeyDetector.isHot(hotStockId));
+		assertFalse(hotKeyDetector.isHot(coldStockId));
+	}
+}